@@ -0,0 +1,102 @@
+package com.jamierf.dbtable.benchmarks;
+
+import com.jamierf.dbtable.core.DbTable;
+import com.jamierf.dbtable.core.async.AsyncDbTable;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Compares 1000 concurrent callers blocking on the table directly, each holding its own pooled connection, against
+ * the same callers going through an {@link AsyncDbTable} with a fixed number of worker threads.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Threads(1000)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class AsyncDbTableBenchmark {
+
+    private static final int ROW_COUNT = 10000;
+    private static final int WORKER_THREADS = 32;
+    private static final int MAX_IN_FLIGHT = 1024;
+    private static final String DATABASE_NAME = "benchmark";
+    private static final byte[] COLUMN = "column".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] VALUE = "value".getBytes(StandardCharsets.UTF_8);
+
+    private JdbcConnectionPool pool;
+    private Handle handle;
+    private DbTable table;
+    private AsyncDbTable asyncTable;
+    private byte[][] rows;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pool = JdbcConnectionPool.create("jdbc:h2:mem:benchmark", "sa", "");
+        // H2's pool only checks for returned connections once a second, so give every blocking caller its own
+        pool.setMaxConnections(MAX_IN_FLIGHT);
+
+        final DBI dbi = new DBI(pool);
+        // Keeps the in-memory database open between pooled handles
+        handle = dbi.open();
+
+        table = new DbTable(DATABASE_NAME, dbi);
+        asyncTable = AsyncDbTable.create(table, WORKER_THREADS, MAX_IN_FLIGHT);
+
+        rows = new byte[ROW_COUNT][];
+        for (int i = 0; i < ROW_COUNT; i++) {
+            rows[i] = String.valueOf(i).getBytes(StandardCharsets.UTF_8);
+            table.set(rows[i], COLUMN, VALUE);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        asyncTable.close();
+
+        handle.execute("DROP TABLE benchmark");
+        handle.close();
+        pool.dispose();
+    }
+
+    private byte[] randomRow() {
+        return rows[ThreadLocalRandom.current().nextInt(ROW_COUNT)];
+    }
+
+    @Benchmark
+    public byte[] blockingGet() {
+        return table.get(randomRow(), COLUMN);
+    }
+
+    @Benchmark
+    public byte[] asyncGet() throws InterruptedException, ExecutionException {
+        return asyncTable.get(randomRow(), COLUMN).get();
+    }
+
+    @Benchmark
+    public byte[] blockingPut() {
+        return table.put(randomRow(), COLUMN, VALUE);
+    }
+
+    @Benchmark
+    public byte[] asyncPut() throws InterruptedException, ExecutionException {
+        return asyncTable.put(randomRow(), COLUMN, VALUE).get();
+    }
+}
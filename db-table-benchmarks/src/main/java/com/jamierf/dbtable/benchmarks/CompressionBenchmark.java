@@ -0,0 +1,99 @@
+package com.jamierf.dbtable.benchmarks;
+
+import com.jamierf.dbtable.core.DbTable;
+import com.jamierf.dbtable.core.DbTableBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.util.LongMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads of JSON-like values with and without compression, by payload size. The bytes stored for each table are
+ * printed when the trial ends.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CompressionBenchmark {
+
+    private static final int KEY_COUNT = 100;
+    private static final int COMPRESSION_THRESHOLD = 1024;
+    private static final byte[] ROW = "row".getBytes(StandardCharsets.UTF_8);
+
+    @Param({"2048", "16384", "51200"})
+    public int payloadSize;
+
+    @Param({"false", "true"})
+    public boolean compressed;
+
+    private Handle handle;
+    private DbTable table;
+    private byte[][] columns;
+    private int index;
+
+    private static byte[] payload(Random random, int size) {
+        final StringBuilder json = new StringBuilder("[");
+        while (json.length() < size) {
+            json.append(String.format("{\"id\":%d,\"name\":\"user%d\",\"score\":%.4f,\"active\":%b},",
+                    random.nextInt(), random.nextInt(10000), random.nextDouble(), random.nextBoolean()));
+        }
+
+        json.setLength(size - 1);
+        return json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        handle = DBI.open("jdbc:h2:mem:benchmark");
+
+        final DbTableBuilder builder = new DbTableBuilder(handle);
+        if (compressed) {
+            builder.withValueCompression(COMPRESSION_THRESHOLD);
+        }
+
+        table = builder.build("benchmark");
+
+        final Random random = new Random(0);
+        columns = new byte[KEY_COUNT][];
+        for (int i = 0; i < KEY_COUNT; i++) {
+            columns[i] = String.valueOf(i).getBytes(StandardCharsets.UTF_8);
+            table.put(ROW, columns[i], payload(random, payloadSize));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        final long stored = handle.createQuery("SELECT SUM(LENGTH(value_field)) FROM benchmark")
+                .map(LongMapper.FIRST)
+                .first();
+        System.out.printf("%nStored %d bytes per %d byte value%n", stored / KEY_COUNT, payloadSize);
+
+        handle.execute("DROP TABLE benchmark");
+        handle.close();
+    }
+
+    @Benchmark
+    public byte[] get() {
+        index = (index + 1) % KEY_COUNT;
+        return table.get(ROW, columns[index]);
+    }
+}
@@ -0,0 +1,116 @@
+package com.jamierf.dbtable.benchmarks;
+
+import com.jamierf.dbtable.core.DbTable;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.h2.tools.DeleteDbFiles;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Compares a table borrowing a pooled handle per operation against a single shared handle behind a lock, both
+ * against a file backed database. Run with -t to vary the number of threads.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Threads(8)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class ConcurrentDbTableBenchmark {
+
+    private static final int ROW_COUNT = 10000;
+    private static final int MAX_CONNECTIONS = 64;
+    private static final String DATABASE_NAME = "benchmark";
+    private static final byte[] COLUMN = "column".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] VALUE = "value".getBytes(StandardCharsets.UTF_8);
+
+    private Path directory;
+    private JdbcConnectionPool pool;
+    private Handle sharedHandle;
+    private DbTable pooledTable;
+    private DbTable sharedTable;
+    private byte[][] rows;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory(DATABASE_NAME);
+        pool = JdbcConnectionPool.create(String.format("jdbc:h2:file:%s/%s", directory, DATABASE_NAME), "sa", "");
+        pool.setMaxConnections(MAX_CONNECTIONS);
+
+        final DBI dbi = new DBI(pool);
+        pooledTable = new DbTable(DATABASE_NAME, dbi);
+
+        sharedHandle = dbi.open();
+        sharedTable = new DbTable(DATABASE_NAME, sharedHandle);
+
+        rows = new byte[ROW_COUNT][];
+        for (int i = 0; i < ROW_COUNT; i++) {
+            rows[i] = String.valueOf(i).getBytes(StandardCharsets.UTF_8);
+            pooledTable.set(rows[i], COLUMN, VALUE);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        sharedHandle.close();
+        pool.dispose();
+
+        DeleteDbFiles.execute(directory.toString(), DATABASE_NAME, true);
+        Files.deleteIfExists(directory);
+    }
+
+    private byte[] randomRow() {
+        return rows[ThreadLocalRandom.current().nextInt(ROW_COUNT)];
+    }
+
+    @Benchmark
+    public byte[] pooledGet() {
+        return pooledTable.get(randomRow(), COLUMN);
+    }
+
+    @Benchmark
+    public void pooledSet() {
+        pooledTable.set(randomRow(), COLUMN, VALUE);
+    }
+
+    @Benchmark
+    public byte[] pooledRowGet() {
+        return pooledTable.row(randomRow()).get(COLUMN);
+    }
+
+    @Benchmark
+    public byte[] sharedGet() {
+        synchronized (sharedTable) {
+            return sharedTable.get(randomRow(), COLUMN);
+        }
+    }
+
+    @Benchmark
+    public void sharedSet() {
+        synchronized (sharedTable) {
+            sharedTable.set(randomRow(), COLUMN, VALUE);
+        }
+    }
+
+    @Benchmark
+    public byte[] sharedRowGet() {
+        synchronized (sharedTable) {
+            return sharedTable.row(randomRow()).get(COLUMN);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.jamierf.dbtable.benchmarks;
+
+import com.jamierf.dbtable.core.DbTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class DbTableBenchmark {
+
+    private static final int ROW_COUNT = 1000;
+    private static final byte[] COLUMN = "column".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] VALUE = "value".getBytes(StandardCharsets.UTF_8);
+
+    private Handle handle;
+    private DbTable table;
+    private byte[][] rows;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        handle = DBI.open("jdbc:h2:mem:benchmark");
+        table = new DbTable("benchmark", handle);
+
+        rows = new byte[ROW_COUNT][];
+        for (int i = 0; i < ROW_COUNT; i++) {
+            rows[i] = String.valueOf(i).getBytes(StandardCharsets.UTF_8);
+            table.put(rows[i], COLUMN, VALUE);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        handle.execute("DROP TABLE benchmark");
+        handle.close();
+    }
+
+    private byte[] nextRow() {
+        index = (index + 1) % ROW_COUNT;
+        return rows[index];
+    }
+
+    @Benchmark
+    public byte[] get() {
+        return table.get(nextRow(), COLUMN);
+    }
+
+    @Benchmark
+    public boolean contains() {
+        return table.contains(nextRow(), COLUMN);
+    }
+
+    @Benchmark
+    public byte[] put() {
+        return table.put(nextRow(), COLUMN, VALUE);
+    }
+
+    @Benchmark
+    public void set() {
+        table.set(nextRow(), COLUMN, VALUE);
+    }
+
+    @Benchmark
+    public byte[] rowGet() {
+        final Map<byte[], byte[]> row = table.row(nextRow());
+        return row.get(COLUMN);
+    }
+
+    @Benchmark
+    public boolean columnContainsKey() {
+        return table.column(COLUMN).containsKey(nextRow());
+    }
+}
@@ -0,0 +1,88 @@
+package com.jamierf.dbtable.benchmarks;
+
+import com.jamierf.dbtable.core.DbTable;
+import com.jamierf.dbtable.core.DbTableBuilder;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.h2.tools.DeleteDbFiles;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.skife.jdbi.v2.DBI;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Acknowledged puts per second against a file backed database, with each put committing its own transaction or
+ * sharing a group commit with the other callers. Run with -t to vary the number of callers.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Threads(8)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class GroupCommitBenchmark {
+
+    private static final int ROW_COUNT = 10000;
+    private static final int MAX_CONNECTIONS = 256;
+    private static final String DATABASE_NAME = "benchmark";
+    private static final byte[] COLUMN = "column".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] VALUE = "value".getBytes(StandardCharsets.UTF_8);
+
+    private Path directory;
+    private JdbcConnectionPool pool;
+    private DbTable table;
+    private DbTable groupedTable;
+    private byte[][] rows;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory(DATABASE_NAME);
+        pool = JdbcConnectionPool.create(String.format("jdbc:h2:file:%s/%s", directory, DATABASE_NAME), "sa", "");
+        pool.setMaxConnections(MAX_CONNECTIONS);
+
+        final DBI dbi = new DBI(pool);
+        table = new DbTable(DATABASE_NAME, dbi);
+        groupedTable = new DbTableBuilder(dbi)
+                .withGroupCommit(0, TimeUnit.MILLISECONDS)
+                .build(DATABASE_NAME);
+
+        rows = new byte[ROW_COUNT][];
+        for (int i = 0; i < ROW_COUNT; i++) {
+            rows[i] = String.valueOf(i).getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        pool.dispose();
+
+        DeleteDbFiles.execute(directory.toString(), DATABASE_NAME, true);
+        Files.deleteIfExists(directory);
+    }
+
+    private byte[] randomRow() {
+        return rows[ThreadLocalRandom.current().nextInt(ROW_COUNT)];
+    }
+
+    @Benchmark
+    public byte[] put() {
+        return table.put(randomRow(), COLUMN, VALUE);
+    }
+
+    @Benchmark
+    public byte[] groupedPut() {
+        return groupedTable.put(randomRow(), COLUMN, VALUE);
+    }
+}
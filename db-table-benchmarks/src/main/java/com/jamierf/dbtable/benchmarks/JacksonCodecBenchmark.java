@@ -0,0 +1,98 @@
+package com.jamierf.dbtable.benchmarks;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
+import com.google.common.base.Function;
+import com.jamierf.dbtable.jackson.codec.ObjectMapperCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of a typical value through the Jackson codec, by format and with or without Afterburner.
+ * The encoded size is printed when the trial starts.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class JacksonCodecBenchmark {
+
+    public static class User {
+        @JsonProperty
+        public long id;
+        @JsonProperty
+        public String name;
+        @JsonProperty
+        public double score;
+        @JsonProperty
+        public boolean active;
+        @JsonProperty
+        public List<String> tags;
+    }
+
+    @Param({"json", "smile"})
+    public String format;
+
+    @Param({"false", "true"})
+    public boolean afterburner;
+
+    private Function<User, byte[]> encoder;
+    private Function<byte[], User> decoder;
+    private User value;
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final ObjectMapper mapper = "smile".equals(format) ? new ObjectMapper(new SmileFactory()) : new ObjectMapper();
+        if (afterburner) {
+            mapper.registerModule(new AfterburnerModule());
+        }
+
+        final ObjectMapperCodec codec = new ObjectMapperCodec(mapper);
+        encoder = codec.newEncoder();
+        decoder = codec.newDecoder(User.class);
+
+        final Random random = new Random(0);
+        value = new User();
+        value.id = random.nextLong();
+        value.name = "user" + random.nextInt(10000);
+        value.score = random.nextDouble();
+        value.active = random.nextBoolean();
+        value.tags = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            value.tags.add("tag" + random.nextInt(100));
+        }
+
+        encoded = encoder.apply(value);
+        System.out.printf("%nEncoded %s value is %d bytes%n", format, encoded.length);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return encoder.apply(value);
+    }
+
+    @Benchmark
+    public User decode() {
+        return decoder.apply(encoded);
+    }
+}
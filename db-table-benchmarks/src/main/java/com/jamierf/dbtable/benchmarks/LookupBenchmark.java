@@ -0,0 +1,93 @@
+package com.jamierf.dbtable.benchmarks;
+
+import com.google.common.collect.Table;
+import com.google.common.collect.Tables;
+import com.jamierf.dbtable.core.DbTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Point lookups through views that are created once, so only the cost of selecting and binding each key is
+ * measured. Run with -prof gc to compare the bytes allocated per lookup.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class LookupBenchmark {
+
+    private static final int KEY_COUNT = 1000;
+    private static final byte[] ROW = "row".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] VALUE = "value".getBytes(StandardCharsets.UTF_8);
+
+    private Handle handle;
+    private Map<byte[], byte[]> row;
+    private Set<byte[]> columnKeys;
+    private Set<Table.Cell<byte[], byte[], byte[]>> cells;
+    private byte[][] columns;
+    private Table.Cell<byte[], byte[], byte[]>[] cellKeys;
+    private int index;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        handle = DBI.open("jdbc:h2:mem:benchmark");
+        final DbTable table = new DbTable("benchmark", handle);
+
+        columns = new byte[KEY_COUNT][];
+        cellKeys = new Table.Cell[KEY_COUNT];
+        for (int i = 0; i < KEY_COUNT; i++) {
+            columns[i] = String.valueOf(i).getBytes(StandardCharsets.UTF_8);
+            cellKeys[i] = Tables.immutableCell(ROW, columns[i], VALUE);
+            table.put(ROW, columns[i], VALUE);
+        }
+
+        row = table.row(ROW);
+        columnKeys = table.row(ROW).keySet();
+        cells = table.cellSet();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        handle.execute("DROP TABLE benchmark");
+        handle.close();
+    }
+
+    private int nextIndex() {
+        index = (index + 1) % KEY_COUNT;
+        return index;
+    }
+
+    @Benchmark
+    public byte[] rowGet() {
+        return row.get(columns[nextIndex()]);
+    }
+
+    @Benchmark
+    public boolean rowContainsKey() {
+        return row.containsKey(columns[nextIndex()]);
+    }
+
+    @Benchmark
+    public boolean keySetContains() {
+        return columnKeys.contains(columns[nextIndex()]);
+    }
+
+    @Benchmark
+    public boolean cellSetContains() {
+        return cells.contains(cellKeys[nextIndex()]);
+    }
+}
@@ -0,0 +1,71 @@
+package com.jamierf.dbtable.benchmarks;
+
+import com.google.common.collect.ImmutableTable;
+import com.google.common.collect.Table;
+import com.jamierf.dbtable.core.DbTable;
+import com.jamierf.dbtable.core.DbTableBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+
+import java.nio.charset.StandardCharsets;
+
+// Scores are cells per second, as each invocation writes CELL_COUNT cells
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class PutAllBenchmark {
+
+    private static final int CELL_COUNT = 50000;
+    private static final byte[] COLUMN = "column".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] VALUE = new byte[256];
+
+    @Param({"100", "1000", "10000", "50000"})
+    private int batchSize;
+
+    @Param({"false", "true"})
+    private boolean multiRowInserts;
+
+    private Handle handle;
+    private DbTable table;
+    private Table<byte[], byte[], byte[]> cells;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        handle = DBI.open("jdbc:h2:mem:benchmark");
+        table = new DbTableBuilder(handle)
+                .withBatchSize(batchSize)
+                .withMultiRowInserts(multiRowInserts)
+                .build("benchmark");
+
+        final ImmutableTable.Builder<byte[], byte[], byte[]> builder = ImmutableTable.builder();
+        for (int i = 0; i < CELL_COUNT; i++) {
+            builder.put(String.valueOf(i).getBytes(StandardCharsets.UTF_8), COLUMN, VALUE);
+        }
+
+        cells = builder.build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        handle.execute("DROP TABLE benchmark");
+        handle.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CELL_COUNT)
+    public void putAll() {
+        table.putAll(cells);
+    }
+}
@@ -0,0 +1,79 @@
+package com.jamierf.dbtable.benchmarks;
+
+import com.jamierf.dbtable.core.DbTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads of large values as byte arrays against streaming them through a fixed buffer. Run with {@code -prof gc}
+ * to compare allocation per read.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StreamingBenchmark {
+
+    private static final byte[] ROW = "row".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] COLUMN = "column".getBytes(StandardCharsets.UTF_8);
+
+    @Param({"1048576", "8388608"})
+    public int payloadSize;
+
+    private Handle handle;
+    private DbTable table;
+    private final byte[] buffer = new byte[8192];
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        handle = DBI.open("jdbc:h2:mem:benchmark");
+        table = new DbTable("benchmark", handle);
+
+        final byte[] payload = new byte[payloadSize];
+        new Random(0).nextBytes(payload);
+        table.put(ROW, COLUMN, payload);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        handle.execute("DROP TABLE benchmark");
+        handle.close();
+    }
+
+    @Benchmark
+    public byte[] get() {
+        return table.get(ROW, COLUMN);
+    }
+
+    @Benchmark
+    public void openValue(Blackhole blackhole) throws IOException {
+        try (InputStream in = table.openValue(ROW, COLUMN)) {
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                blackhole.consume(read);
+            }
+        }
+    }
+}
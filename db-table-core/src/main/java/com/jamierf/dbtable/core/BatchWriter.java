@@ -0,0 +1,172 @@
+package com.jamierf.dbtable.core;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Table;
+import com.jamierf.dbtable.core.sql.FieldType;
+import com.jamierf.dbtable.core.sql.SqlDialect;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.PreparedBatch;
+import org.skife.jdbi.v2.Query;
+import org.skife.jdbi.v2.Update;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+class BatchWriter {
+
+    static final int UNBOUNDED = Integer.MAX_VALUE;
+
+    private static final String MULTI_ROW_VALUES = "(?, ?, ?)";
+    private static final Joiner VALUES_JOINER = Joiner.on(", ");
+
+    private final DbHandles handles;
+    private final DbSizes sizes;
+    private final String tableName;
+    private final SqlDialect dialect;
+    private final FieldType rowType;
+    private final FieldType columnType;
+    private final String replaceSql;
+    private final int batchSize;
+    private final boolean batchCommits;
+    private final boolean multiRowInserts;
+    private final String multiRowReplaceSql;
+
+    BatchWriter(DbHandles handles, DbSizes sizes, String tableName, SqlDialect dialect, FieldType rowType, FieldType columnType,
+                int batchSize, boolean batchCommits, boolean multiRowInserts) {
+        this.handles = handles;
+        this.sizes = sizes;
+        this.tableName = tableName;
+        this.dialect = dialect;
+        this.rowType = rowType;
+        this.columnType = columnType;
+        this.batchSize = batchSize;
+        this.batchCommits = batchCommits;
+        this.multiRowInserts = multiRowInserts;
+
+        replaceSql = dialect.upsert(tableName, "(:row_field, :column_field, :value_field)");
+        multiRowReplaceSql = multiRowInserts && batchSize != UNBOUNDED ? multiRowReplaceSql(batchSize) : null;
+    }
+
+    private String multiRowReplaceSql(int rows) {
+        final String values = VALUES_JOINER.join(Collections.nCopies(rows, MULTI_ROW_VALUES));
+        return dialect.upsert(tableName, values);
+    }
+
+    public void putAll(Iterable<? extends Table.Cell<?, ?, ?>> cells) {
+        try (HandleLease lease = handles.lease()) {
+            putAll(lease.handle(), cells);
+        }
+    }
+
+    private void putAll(final Handle handle, final Iterable<? extends Table.Cell<?, ?, ?>> cells) {
+        if (batchSize == UNBOUNDED) {
+            Transactions.inTransaction(handle, new Callable<Void>() {
+                @Override
+                public Void call() {
+                    writeCounted(handle, cells);
+                    return null;
+                }
+            });
+
+            return;
+        }
+
+        // Each batch's sizes are updated in the batch's own transaction, so stay right if a later batch fails
+        if (batchCommits) {
+            for (final List<? extends Table.Cell<?, ?, ?>> batch : Iterables.partition(cells, batchSize)) {
+                Transactions.inTransaction(handle, new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        writeCounted(handle, batch);
+                        return null;
+                    }
+                });
+            }
+
+            return;
+        }
+
+        Transactions.inTransaction(handle, new Callable<Void>() {
+            @Override
+            public Void call() {
+                for (List<? extends Table.Cell<?, ?, ?>> batch : Iterables.partition(cells, batchSize)) {
+                    writeCounted(handle, batch);
+                }
+
+                return null;
+            }
+        });
+    }
+
+    private void writeCounted(Handle handle, Iterable<? extends Table.Cell<?, ?, ?>> batch) {
+        sizes.lock();
+        final List<Map.Entry<Object, Object>> added = sizes.isMaintained() ? newCells(handle, batch) : Collections.<Map.Entry<Object, Object>>emptyList();
+        write(handle, batch);
+        sizes.changed(added, Collections.<Map.Entry<Object, Object>>emptyList());
+    }
+
+    // The keys of the cells in the batch that aren't yet stored, each once, looked up before the batch is written
+    private List<Map.Entry<Object, Object>> newCells(Handle handle, Iterable<? extends Table.Cell<?, ?, ?>> batch) {
+        final Map<Map.Entry<Object, Object>, Map.Entry<Object, Object>> cells = Maps.newLinkedHashMap();
+        for (Table.Cell<?, ?, ?> cell : batch) {
+            cells.put(contentKey(cell.getRowKey(), cell.getColumnKey()), Maps.<Object, Object>immutableEntry(cell.getRowKey(), cell.getColumnKey()));
+        }
+
+        for (List<Map.Entry<Object, Object>> keys : Iterables.partition(ImmutableList.copyOf(cells.values()), TypedDbTable.MAX_KEYS_PER_QUERY)) {
+            final Query<Map<String, Object>> query = handle.createQuery(dialect.selectKeys(tableName, keys.size(), rowType, columnType));
+            dialect.bindKeys(query, keys);
+
+            for (Map.Entry<Object, Object> stored : query.map(DbSizes.CELL_KEYS).list()) {
+                cells.remove(contentKey(stored.getKey(), stored.getValue()));
+            }
+        }
+
+        return ImmutableList.copyOf(cells.values());
+    }
+
+    private static Map.Entry<Object, Object> contentKey(Object row, Object column) {
+        return Maps.immutableEntry(DbSizes.contentKey(row), DbSizes.contentKey(column));
+    }
+
+    private void write(Handle handle, Iterable<? extends Table.Cell<?, ?, ?>> batch) {
+        if (multiRowInserts) {
+            writeMultiRow(handle, batch);
+            return;
+        }
+
+        final PreparedBatch statement = handle.prepareBatch(replaceSql);
+        for (Table.Cell<?, ?, ?> cell : batch) {
+            statement.add()
+                    .bind("row_field", cell.getRowKey())
+                    .bind("column_field", cell.getColumnKey())
+                    .bind("value_field", cell.getValue());
+        }
+
+        if (statement.size() > 0) {
+            statement.execute();
+        }
+    }
+
+    private void writeMultiRow(Handle handle, Iterable<? extends Table.Cell<?, ?, ?>> batch) {
+        final int size = Iterables.size(batch);
+        if (size == 0) {
+            return;
+        }
+
+        final Update statement = handle.createStatement(size == batchSize ? multiRowReplaceSql : multiRowReplaceSql(size));
+
+        int position = 0;
+        for (Table.Cell<?, ?, ?> cell : batch) {
+            statement.bind(position++, cell.getRowKey());
+            statement.bind(position++, cell.getColumnKey());
+            statement.bind(position++, cell.getValue());
+        }
+
+        statement.execute();
+    }
+}
@@ -0,0 +1,14 @@
+package com.jamierf.dbtable.core;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * An iterator over an open database cursor. The cursor is released once the iterator is exhausted, but callers
+ * that stop early should close it rather than waiting for it to be garbage collected.
+ */
+public interface CloseableIterator<T> extends Iterator<T>, Closeable {
+
+    @Override
+    void close();
+}
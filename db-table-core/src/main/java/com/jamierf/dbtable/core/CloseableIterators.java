@@ -0,0 +1,39 @@
+package com.jamierf.dbtable.core;
+
+import com.google.common.base.Function;
+import com.google.common.collect.UnmodifiableIterator;
+
+final class CloseableIterators {
+
+    public static <F, T> CloseableIterator<T> transform(final CloseableIterator<F> iterator, final Function<? super F, ? extends T> function) {
+        return new TransformingIterator<>(iterator, function);
+    }
+
+    private static final class TransformingIterator<F, T> extends UnmodifiableIterator<T> implements CloseableIterator<T> {
+
+        private final CloseableIterator<F> iterator;
+        private final Function<? super F, ? extends T> function;
+
+        private TransformingIterator(CloseableIterator<F> iterator, Function<? super F, ? extends T> function) {
+            this.iterator = iterator;
+            this.function = function;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public T next() {
+            return function.apply(iterator.next());
+        }
+
+        @Override
+        public void close() {
+            iterator.close();
+        }
+    }
+
+    private CloseableIterators() {}
+}
@@ -0,0 +1,98 @@
+package com.jamierf.dbtable.core;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * The position of a paginated scan: the key of the last element it returned. Its string form can be stored and
+ * parsed later to resume the scan from the next element.
+ */
+public final class ContinuationToken {
+
+    private static final BaseEncoding ENCODING = BaseEncoding.base64Url().omitPadding();
+
+    private static final String INVALID_TOKEN = "Invalid continuation token";
+
+    // Every count and length is checked against the bytes left, so a corrupt token can't allocate beyond its own size
+    public static ContinuationToken parse(String token) {
+        try {
+            final ByteBuffer input = ByteBuffer.wrap(ENCODING.decode(token));
+
+            final int fields = input.getInt();
+            checkArgument(fields > 0 && fields <= input.remaining() / 4, INVALID_TOKEN);
+
+            final ImmutableList.Builder<byte[]> key = ImmutableList.builder();
+            for (int i = 0; i < fields; i++) {
+                final int length = input.getInt();
+                checkArgument(length >= 0 && length <= input.remaining(), INVALID_TOKEN);
+
+                final byte[] field = new byte[length];
+                input.get(field);
+                key.add(field);
+            }
+
+            checkArgument(!input.hasRemaining(), INVALID_TOKEN);
+            return new ContinuationToken(key.build());
+        }
+        catch (IllegalArgumentException | BufferUnderflowException e) {
+            throw new IllegalArgumentException(INVALID_TOKEN, e);
+        }
+    }
+
+    private final List<byte[]> key;
+
+    ContinuationToken(List<byte[]> key) {
+        checkArgument(!key.isEmpty(), "key must not be empty");
+        this.key = ImmutableList.copyOf(key);
+    }
+
+    List<byte[]> getKey() {
+        return key;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        final ContinuationToken that = (ContinuationToken) o;
+        if (key.size() != that.key.size()) return false;
+
+        for (int i = 0; i < key.size(); i++) {
+            if (!Arrays.equals(key.get(i), that.key.get(i))) return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 1;
+        for (byte[] field : key) {
+            result = 31 * result + Arrays.hashCode(field);
+        }
+
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        final ByteArrayDataOutput output = ByteStreams.newDataOutput();
+        output.writeInt(key.size());
+        for (byte[] field : key) {
+            output.writeInt(field.length);
+            output.write(field);
+        }
+
+        return ENCODING.encode(output.toByteArray());
+    }
+}
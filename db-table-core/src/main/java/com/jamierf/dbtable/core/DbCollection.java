@@ -1,105 +1,248 @@
 package com.jamierf.dbtable.core;
 
-import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.jamierf.dbtable.core.mapper.selection.AbstractSelectionMapFactory;
 import com.jamierf.dbtable.core.mapper.selection.SelectionMap;
-import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.PreparedBatch;
 import org.skife.jdbi.v2.tweak.ResultSetMapper;
 import org.skife.jdbi.v2.util.IntegerMapper;
 
 import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
 import java.util.AbstractCollection;
 import java.util.Collection;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
 
-class DbCollection<T> extends AbstractCollection<T> {
+class DbCollection<T> extends AbstractCollection<T> implements ScanCollection<T> {
 
-    protected final String tableName;
-    protected final Handle handle;
+    static final int DELETE_BATCH_SIZE = 1000;
+
+    protected final DbStatements statements;
+    protected final DbContext context;
     protected final SelectionMap selectionMap;
     protected final AbstractSelectionMapFactory<T> selectionMapFactory;
     protected final ResultSetMapper<T> fieldMapper;
+    protected final DbPages pages;
+
+    DbCollection(DbStatements statements, DbContext context, SelectionMap selectionMap, AbstractSelectionMapFactory<T> selectionMapFactory, ResultSetMapper<T> fieldMapper) {
+        this (statements, context, selectionMap, selectionMapFactory, fieldMapper, null);
+    }
 
-    DbCollection(String tableName, Handle handle, SelectionMap selectionMap, AbstractSelectionMapFactory<T> selectionMapFactory, ResultSetMapper<T> fieldMapper) {
-        this.tableName = tableName;
-        this.handle = handle;
+    DbCollection(DbStatements statements, DbContext context, SelectionMap selectionMap, AbstractSelectionMapFactory<T> selectionMapFactory, ResultSetMapper<T> fieldMapper, @Nullable DbPages pages) {
+        this.statements = statements;
+        this.context = context;
         this.selectionMap = selectionMap;
         this.selectionMapFactory = selectionMapFactory;
         this.fieldMapper = fieldMapper;
+        this.pages = pages;
     }
 
     @Override
     public int size() {
-        final String fieldsToCount = Joiner.on(", ").join(selectionMapFactory.keyFields());
-        return handle.createQuery(String.format("SELECT COUNT(%2$s) FROM %1$s WHERE %3$s", tableName, fieldsToCount, selectionMap.asSql()))
-                .bindFromMap(selectionMap.asMap())
-                .map(IntegerMapper.FIRST)
-                .first();
+        try (HandleLease lease = context.lease()) {
+            return lease.handle().createQuery(statements.count())
+                    .bindFromMap(selectionMap.asMap())
+                    .map(IntegerMapper.FIRST)
+                    .first();
+        }
     }
 
     @Override
     public boolean isEmpty() {
-        return handle.createQuery(String.format("SELECT 1 FROM %1$s WHERE %2$s ", tableName, selectionMap.asSql()))
-                .bindFromMap(selectionMap.asMap())
-                .first() == null;
+        try (HandleLease lease = context.lease()) {
+            return lease.handle().createQuery(statements.isEmpty())
+                    .bindFromMap(selectionMap.asMap())
+                    .first() == null;
+        }
     }
 
     @Override
     @SuppressWarnings("unchecked")
     public boolean contains(Object value) {
-        final SelectionMap valueMap = selectionMapFactory.get(value);
-        return handle.createQuery(String.format("SELECT 1 FROM %1$s WHERE %2$s AND %3$s", tableName, valueMap.asSql(), selectionMap.asSql()))
-                .bindFromMap(selectionMap.asMap())
-                .bindFromMap(valueMap.asMap())
-                .map(IntegerMapper.FIRST)
-                .first() != null;
+        try (HandleLease lease = context.lease()) {
+            return selectionMapFactory.bindKey(lease.handle().createQuery(statements.contains()), value)
+                    .bindFromMap(selectionMap.asMap())
+                    .map(IntegerMapper.FIRST)
+                    .first() != null;
+        }
     }
 
     @Override
-    public Iterator<T> iterator() {
-        final String fieldsToCount = Joiner.on(", ").join(selectionMapFactory.keyFields());
-        return handle.createQuery(String.format("SELECT %2$s FROM %1$s WHERE %3$s", tableName, fieldsToCount, selectionMap.asSql()))
-                .bindFromMap(selectionMap.asMap())
-                .map(fieldMapper)
-                .iterator();
+    public CloseableIterator<T> iterator() {
+        if (pages != null && context.isPaged()) {
+            return context.paginate(pages, fieldMapper, null);
+        }
+
+        return context.iterate(statements.select(), selectionMap.asMap(), fieldMapper);
     }
 
     @Override
-    @SuppressWarnings("unchecked")
-    public boolean remove(Object value) {
-        final boolean result = contains(value);
-
-        final SelectionMap valueMap = selectionMapFactory.get(value);
-        handle.createStatement(String.format("DELETE FROM %1$s WHERE %2$s AND %3$s", tableName, valueMap.asSql(), selectionMap.asSql()))
-                .bindFromMap(selectionMap.asMap())
-                .bindFromMap(valueMap.asMap())
-                .execute();
-
-        return result;
+    public boolean remove(final Object value) {
+        return context.write(new Callable<Boolean>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Boolean call() {
+                final SelectionMap valueMap = selectionMapFactory.get(value);
+                return context.delete(statements.delete(), statements.deletedKeys(), selectionMap.asMap(), valueMap.asMap()) > 0;
+            }
+        });
     }
 
     @Override
-    public boolean retainAll(@Nullable Collection<?> values) {
-        final SelectionMap valueMap = selectionMapFactory.get(values);
-        return handle.createStatement(String.format("DELETE FROM %1$s WHERE NOT %2$s AND %3$s", tableName, valueMap.asSql(), selectionMap.asSql()))
-                .bindFromMap(selectionMap.asMap())
-                .bindFromMap(valueMap.asMap())
-                .execute() > 0;
+    public boolean retainAll(@Nullable final Collection<?> values) {
+        if (isTuple()) {
+            return context.write(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return deleteNotIn(values) > 0;
+                }
+            });
+        }
+
+        return context.write(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                final SelectionMap valueMap = selectionMapFactory.get(values, context.getDialect());
+                return context.delete(statements.deleteNotIn(valueMap), statements.deletedKeysNotIn(valueMap), selectionMap.asMap(), valueMap.asMap()) > 0;
+            }
+        });
     }
 
     @Override
-    public boolean removeAll(@Nullable Collection<?> values) {
-        final SelectionMap valueMap = selectionMapFactory.get(values);
-        return handle.createStatement(String.format("DELETE FROM %1$s WHERE %2$s AND %3$s", tableName, valueMap.asSql(), selectionMap.asSql()))
-                .bindFromMap(selectionMap.asMap())
-                .bindFromMap(valueMap.asMap())
-                .execute() > 0;
+    public boolean removeAll(@Nullable final Collection<?> values) {
+        if (isTuple()) {
+            return context.write(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return deleteEach(values) > 0;
+                }
+            });
+        }
+
+        return context.write(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                final SelectionMap valueMap = selectionMapFactory.get(values, context.getDialect());
+                return context.delete(statements.deleteIn(valueMap), statements.deletedKeysIn(valueMap), selectionMap.asMap(), valueMap.asMap()) > 0;
+            }
+        });
     }
 
     @Override
     public void clear() {
-        handle.createStatement(String.format("DELETE FROM %1$s WHERE %2$s", tableName, selectionMap.asSql()))
-                .bindFromMap(selectionMap.asMap())
-                .execute();
+        context.write(new Callable<Void>() {
+            @Override
+            public Void call() {
+                // Only clearing the whole table counts it again, views are told which cells they deleted
+                if (selectionMap.isEmpty()) {
+                    try (HandleLease lease = context.lease()) {
+                        lease.handle().createStatement(statements.clear())
+                                .execute();
+                    }
+
+                    context.getSizes().changed();
+                    return null;
+                }
+
+                context.delete(statements.clear(), statements.clearedKeys(), selectionMap.asMap());
+                return null;
+            }
+        });
+    }
+
+    // A list of values per field would match their cross product, so values keyed by several fields are handled one
+    // at a time by their key instead
+    private boolean isTuple() {
+        return selectionMapFactory.keyFields().size() > 1;
+    }
+
+    // Arrays don't implement equals or hashCode, so values are compared by wrapping buffers instead
+    private List<Object> contentKey(Object value) {
+        final Map<String, Object> fields = selectionMapFactory.get(value).asMap();
+
+        final List<Object> key = Lists.newArrayListWithCapacity(fields.size());
+        for (String field : selectionMapFactory.keyFields()) {
+            final Object fieldValue = fields.get(field);
+            key.add(fieldValue instanceof byte[] ? ByteBuffer.wrap((byte[]) fieldValue) : fieldValue);
+        }
+
+        return key;
+    }
+
+    // Streams the view, deleting the values not retained a batch at a time rather than holding them all
+    private int deleteNotIn(Collection<?> values) {
+        final Set<List<Object>> retained = Sets.newHashSetWithExpectedSize(values.size());
+        for (Object value : values) {
+            retained.add(contentKey(value));
+        }
+
+        int deleted = 0;
+        final List<T> removed = Lists.newArrayListWithCapacity(DELETE_BATCH_SIZE);
+        try (CloseableIterator<T> iterator = context.iterate(statements.select(), selectionMap.asMap(), fieldMapper)) {
+            while (iterator.hasNext()) {
+                final T value = iterator.next();
+                if (!retained.contains(contentKey(value))) {
+                    removed.add(value);
+                }
+
+                if (removed.size() == DELETE_BATCH_SIZE) {
+                    deleted += deleteEach(removed);
+                    removed.clear();
+                }
+            }
+        }
+
+        return deleted + deleteEach(removed);
+    }
+
+    // Each value is deleted by its key, and maintained sizes are told the cells whose delete matched
+    private int deleteEach(Iterable<?> values) {
+        final boolean counted = context.getSizes().isMaintained();
+        final List<Map.Entry<Object, Object>> keys = Lists.newArrayList();
+
+        try (HandleLease lease = context.lease()) {
+            final PreparedBatch batch = lease.handle().prepareBatch(statements.delete());
+            for (Object value : values) {
+                selectionMapFactory.bindKey(batch.add(), value)
+                        .bindFromMap(selectionMap.asMap());
+
+                if (counted) {
+                    keys.add(cellKey(selectionMapFactory.get(value).asMap()));
+                }
+            }
+
+            if (batch.size() == 0) {
+                return 0;
+            }
+
+            final int[] counts = batch.execute();
+
+            int deleted = 0;
+            final List<Map.Entry<Object, Object>> removed = Lists.newArrayList();
+            for (int i = 0; i < counts.length; i++) {
+                deleted += counts[i];
+                if (counted && counts[i] > 0) {
+                    removed.add(keys.get(i));
+                }
+            }
+
+            context.getSizes().changed(Collections.<Map.Entry<Object, Object>>emptyList(), removed);
+            return deleted;
+        }
+    }
+
+    // The key of a single cell, from the fields of a value and of the view's selection
+    private Map.Entry<Object, Object> cellKey(Map<String, Object> fields) {
+        return Maps.immutableEntry(field("row_field", fields), field("column_field", fields));
+    }
+
+    private Object field(String fieldName, Map<String, Object> fields) {
+        return fields.containsKey(fieldName) ? fields.get(fieldName) : selectionMap.asMap().get(fieldName);
     }
 }
@@ -0,0 +1,133 @@
+package com.jamierf.dbtable.core;
+
+import com.google.common.base.Throwables;
+import com.jamierf.dbtable.core.sql.SqlDialect;
+import org.skife.jdbi.v2.Query;
+import org.skife.jdbi.v2.ResultIterator;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
+
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * The per-table state shared by a table and every view created from it.
+ */
+class DbContext {
+
+    static final int DEFAULT_FETCH_SIZE = 0;
+    static final int UNPAGED = 0;
+    static final int DEFAULT_PAGE_SIZE = 1000;
+
+    private final DbHandles handles;
+    private final BatchWriter batchWriter;
+    private final DbSizes sizes;
+    private final SqlDialect dialect;
+    private final int fetchSize;
+    private final int pageSize;
+
+    DbContext(DbHandles handles, BatchWriter batchWriter, DbSizes sizes, SqlDialect dialect, int fetchSize, int pageSize) {
+        this.handles = handles;
+        this.batchWriter = batchWriter;
+        this.sizes = sizes;
+        this.dialect = dialect;
+        this.fetchSize = fetchSize;
+        this.pageSize = pageSize;
+    }
+
+    public HandleLease lease() {
+        return handles.lease();
+    }
+
+    public BatchWriter getBatchWriter() {
+        return batchWriter;
+    }
+
+    public DbSizes getSizes() {
+        return sizes;
+    }
+
+    public SqlDialect getDialect() {
+        return dialect;
+    }
+
+    public <T> T inTransaction(final Callable<T> operation) {
+        try (HandleLease lease = handles.lease()) {
+            return Transactions.inTransaction(lease.handle(), new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    sizes.lock();
+                    return operation.call();
+                }
+            });
+        }
+    }
+
+    // Maintained sizes must change in the same transaction as the write
+    public <T> T write(Callable<T> operation) {
+        if (sizes.isMaintained()) {
+            return inTransaction(operation);
+        }
+
+        try {
+            return operation.call();
+        } catch (Exception e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    // Deletes the cells matching the statement. Maintained sizes are told the key of every deleted cell, read by the
+    // matching keys statement before the delete, so only the deleted cells are counted rather than the whole table.
+    public int delete(String deleteSql, String deletedKeysSql, Map<String, Object> selection, Map<String, Object> values) {
+        try (HandleLease lease = handles.lease()) {
+            final List<Map.Entry<Object, Object>> removed = !sizes.isMaintained() ? Collections.<Map.Entry<Object, Object>>emptyList()
+                    : lease.handle().createQuery(deletedKeysSql)
+                            .bindFromMap(selection)
+                            .bindFromMap(values)
+                            .map(DbSizes.CELL_KEYS)
+                            .list();
+
+            final int deleted = lease.handle().createStatement(deleteSql)
+                    .bindFromMap(selection)
+                    .bindFromMap(values)
+                    .execute();
+
+            sizes.changed(Collections.<Map.Entry<Object, Object>>emptyList(), removed);
+            return deleted;
+        }
+    }
+
+    public int delete(String deleteSql, String deletedKeysSql, Map<String, Object> selection) {
+        return delete(deleteSql, deletedKeysSql, selection, Collections.<String, Object>emptyMap());
+    }
+
+    public <T> CloseableIterator<T> iterate(String sql, Map<String, Object> bindings, ResultSetMapper<T> mapper) {
+        final HandleLease lease = handles.detachedLease();
+        try {
+            final Query<T> query = lease.handle().createQuery(sql)
+                    .bindFromMap(bindings)
+                    .map(mapper);
+
+            // Statements are prepared with the JDBC defaults, which are already forward only and read only
+            if (fetchSize != DEFAULT_FETCH_SIZE) {
+                query.setFetchSize(fetchSize);
+            }
+
+            final ResultIterator<T> results = query.fetchForward().iterator();
+            return new DbIterator<>(results, lease);
+        } catch (RuntimeException e) {
+            lease.close();
+            throw e;
+        }
+    }
+
+    public boolean isPaged() {
+        return pageSize != UNPAGED;
+    }
+
+    public <T> ResumableIterator<T> paginate(DbPages pages, ResultSetMapper<T> mapper, @Nullable ContinuationToken token) {
+        return new PagedIterator<>(this, pages, isPaged() ? pageSize : DEFAULT_PAGE_SIZE, mapper, token);
+    }
+}
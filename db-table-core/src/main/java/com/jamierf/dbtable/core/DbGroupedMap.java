@@ -0,0 +1,92 @@
+package com.jamierf.dbtable.core;
+
+import com.google.common.base.Function;
+import com.jamierf.dbtable.core.mapper.result.field.FieldMapper;
+import com.jamierf.dbtable.core.mapper.result.map.MapEntryMapper;
+import com.jamierf.dbtable.core.mapper.result.table.TableCellMapper;
+import com.jamierf.dbtable.core.mapper.selection.AbstractSelectionMapFactory;
+import com.jamierf.dbtable.core.mapper.selection.FieldSelectionMapFactory;
+import com.jamierf.dbtable.core.mapper.selection.MapEntrySelectionMapFactory;
+import com.jamierf.dbtable.core.mapper.selection.SelectionMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Comparator;
+import java.util.Map;
+
+/**
+ * A row or column map whose entries and values are read by a single scan ordered by the map key, rather than one
+ * query per key.
+ */
+class DbGroupedMap<K, J, V> extends DbSortedMap<K, Map<J, V>> {
+
+    private final Function<Entry<K, Map<J, V>>, Map<J, V>> entryValue = new Function<Entry<K, Map<J, V>>, Map<J, V>>() {
+        @Override
+        public Map<J, V> apply(Entry<K, Map<J, V>> entry) {
+            return entry.getValue();
+        }
+    };
+
+    private final String groupedSql;
+    private final TableCellMapper<K, J, V> groupedCellMapper;
+    private final Function<K, Map<J, V>> liveMaps;
+    private final Comparator<? super J> groupOrder;
+
+    DbGroupedMap(DbStatements statements, DbContext context, FieldSelectionMapFactory<K> selectionMapFactory, MapEntryMapper<K, Map<J, V>> mapEntryMapper,
+                 TableCellMapper<K, J, V> groupedCellMapper, Function<K, Map<J, V>> liveMaps, @Nullable Comparator<? super K> keyOrder, @Nullable Comparator<? super J> groupOrder) {
+        this (statements, context, SelectionMap.NONE, selectionMapFactory, mapEntryMapper, groupedCellMapper, liveMaps, keyOrder, groupOrder, null, null);
+    }
+
+    private DbGroupedMap(DbStatements statements, DbContext context, SelectionMap selectionMap, AbstractSelectionMapFactory<K> selectionMapFactory, MapEntryMapper<K, Map<J, V>> mapEntryMapper,
+                         TableCellMapper<K, J, V> groupedCellMapper, Function<K, Map<J, V>> liveMaps, @Nullable Comparator<? super K> keyOrder, @Nullable Comparator<? super J> groupOrder,
+                         @Nullable K fromKey, @Nullable K toKey) {
+        super (statements, context, SelectionMap.NONE, selectionMap, selectionMapFactory, mapEntryMapper, keyOrder, fromKey, toKey);
+
+        this.groupedSql = statements.selectCellsOrdered(keyField);
+        this.groupedCellMapper = groupedCellMapper;
+        this.liveMaps = liveMaps;
+        this.groupOrder = groupOrder;
+    }
+
+    @Override
+    protected DbSortedMap<K, Map<J, V>> restrict(DbStatements statements, SelectionMap selectionMap, @Nullable K from, @Nullable K to) {
+        return new DbGroupedMap<>(statements, context, selectionMap, selectionMapFactory, mapEntryMapper, groupedCellMapper, liveMaps, keyOrder, groupOrder, from, to);
+    }
+
+    private GroupingIterator<K, J, V> groups() {
+        return new GroupingIterator<>(context.iterate(groupedSql, selectionMap.asMap(), groupedCellMapper), liveMaps, groupOrder);
+    }
+
+    @Override
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public ScanCollection<Map<J, V>> values() {
+        final FieldMapper<Map<J, V>> mapper = mapEntryMapper.getValueMapper();
+        final FieldSelectionMapFactory<Map<J, V>> values = new FieldSelectionMapFactory<>(mapper.getFieldName());
+        return new DbCollection<Map<J, V>>(statements.forKeys(values), context, selectionMap, values, mapper) {
+            // One value per key, and the values span more than one field so can't be counted directly
+            @Override
+            public int size() {
+                return DbGroupedMap.this.size();
+            }
+
+            @Override
+            public CloseableIterator<Map<J, V>> iterator() {
+                return CloseableIterators.transform(groups(), entryValue);
+            }
+        };
+    }
+
+    @Override
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public ScanSet<Entry<K, Map<J, V>>> entrySet() {
+        final MapEntrySelectionMapFactory<K, Map<J, V>> entries = new MapEntrySelectionMapFactory<>(mapEntryMapper.getKeyMapper().getFieldName(), mapEntryMapper.getValueMapper().getFieldName());
+        return new DbSet<Entry<K, Map<J, V>>>(statements.forKeys(entries), context, selectionMap, entries, mapEntryMapper) {
+            @Override
+            public CloseableIterator<Entry<K, Map<J, V>>> iterator() {
+                return groups();
+            }
+        };
+    }
+}
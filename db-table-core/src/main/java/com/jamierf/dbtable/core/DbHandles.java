@@ -0,0 +1,176 @@
+package com.jamierf.dbtable.core;
+
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.IDBI;
+
+/**
+ * Where a table gets its handles from. Either a single handle shared by every operation, which is only safe to use
+ * from one thread at a time, or a handle borrowed from a {@link IDBI} for each operation.
+ */
+abstract class DbHandles {
+
+    public static DbHandles shared(Handle handle) {
+        return new Shared(handle);
+    }
+
+    public static DbHandles pooled(IDBI dbi) {
+        return new Pooled(dbi);
+    }
+
+    /**
+     * A handle for an operation on the calling thread. Leases nest, so an operation made while the thread already
+     * holds a lease, such as one inside a transaction, reuses the same handle. Must be closed by the same thread.
+     */
+    public abstract HandleLease lease();
+
+    /**
+     * A handle for an iterator, which may outlive the calling operation and be closed from any thread.
+     */
+    public abstract HandleLease detachedLease();
+
+    /**
+     * Whether every operation uses the same handle, so operations can't run concurrently.
+     */
+    public abstract boolean isShared();
+
+    /**
+     * Whether the calling thread's handle is in a transaction, without borrowing one if it holds none.
+     */
+    public abstract boolean isInTransaction();
+
+    private static class Shared extends DbHandles {
+
+        private final HandleLease lease;
+
+        private Shared(final Handle handle) {
+            lease = new HandleLease() {
+                @Override
+                public Handle handle() {
+                    return handle;
+                }
+
+                @Override
+                public void close() {}
+            };
+        }
+
+        @Override
+        public HandleLease lease() {
+            return lease;
+        }
+
+        @Override
+        public HandleLease detachedLease() {
+            return lease;
+        }
+
+        @Override
+        public boolean isShared() {
+            return true;
+        }
+
+        @Override
+        public boolean isInTransaction() {
+            return lease.handle().isInTransaction();
+        }
+    }
+
+    private static class Pooled extends DbHandles {
+
+        private final IDBI dbi;
+        private final ThreadLocal<BoundLease> bound = new ThreadLocal<>();
+
+        private Pooled(IDBI dbi) {
+            this.dbi = dbi;
+        }
+
+        @Override
+        public HandleLease lease() {
+            final BoundLease current = bound.get();
+            if (current != null) {
+                current.depth++;
+                return current;
+            }
+
+            final BoundLease lease = new BoundLease(dbi.open());
+            bound.set(lease);
+            return lease;
+        }
+
+        @Override
+        public HandleLease detachedLease() {
+            // Iterators opened inside a transaction must read through it, so they borrow the transaction's handle
+            final BoundLease current = bound.get();
+            if (current != null && current.handle.isInTransaction()) {
+                return new HandleLease() {
+                    @Override
+                    public Handle handle() {
+                        return current.handle;
+                    }
+
+                    @Override
+                    public void close() {}
+                };
+            }
+
+            return new DetachedLease(dbi.open());
+        }
+
+        @Override
+        public boolean isShared() {
+            return false;
+        }
+
+        @Override
+        public boolean isInTransaction() {
+            final BoundLease current = bound.get();
+            return current != null && current.handle.isInTransaction();
+        }
+
+        private final class BoundLease implements HandleLease {
+
+            private final Handle handle;
+            private int depth = 1;
+
+            private BoundLease(Handle handle) {
+                this.handle = handle;
+            }
+
+            @Override
+            public Handle handle() {
+                return handle;
+            }
+
+            @Override
+            public void close() {
+                if (--depth == 0) {
+                    bound.remove();
+                    handle.close();
+                }
+            }
+        }
+    }
+
+    private static final class DetachedLease implements HandleLease {
+
+        private final Handle handle;
+        private boolean closed = false;
+
+        private DetachedLease(Handle handle) {
+            this.handle = handle;
+        }
+
+        @Override
+        public Handle handle() {
+            return handle;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                handle.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.jamierf.dbtable.core;
+
+import org.skife.jdbi.v2.ResultIterator;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+// Holds the query and its handle open until the value has been read
+final class DbInputStream extends FilterInputStream {
+
+    private final ResultIterator<?> results;
+    private final HandleLease lease;
+
+    private boolean closed = false;
+
+    DbInputStream(InputStream value, ResultIterator<?> results, HandleLease lease) {
+        super (value);
+
+        this.results = results;
+        this.lease = lease;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        try {
+            super.close();
+        }
+        finally {
+            try {
+                results.close();
+            }
+            finally {
+                lease.close();
+            }
+        }
+    }
+}
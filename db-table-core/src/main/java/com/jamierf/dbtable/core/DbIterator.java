@@ -0,0 +1,111 @@
+package com.jamierf.dbtable.core;
+
+import com.google.common.base.FinalizablePhantomReference;
+import com.google.common.base.FinalizableReferenceQueue;
+import com.google.common.collect.Sets;
+import com.google.common.collect.UnmodifiableIterator;
+import org.skife.jdbi.v2.ResultIterator;
+
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+final class DbIterator<T> extends UnmodifiableIterator<T> implements CloseableIterator<T> {
+
+    private static final FinalizableReferenceQueue REFERENCE_QUEUE = new FinalizableReferenceQueue();
+
+    // Phantom references are only enqueued while they are themselves reachable
+    private static final Set<ResultsReference> REFERENCES = Sets.newConcurrentHashSet();
+
+    private final ResultIterator<T> results;
+    private final HandleLease lease;
+    private final ResultsReference reference;
+
+    private boolean closed = false;
+
+    DbIterator(ResultIterator<T> results, HandleLease lease) {
+        this.results = results;
+        this.lease = lease;
+
+        reference = new ResultsReference(this, results, lease);
+        REFERENCES.add(reference);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (closed) {
+            return false;
+        }
+
+        try {
+            if (results.hasNext()) {
+                return true;
+            }
+        }
+        catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+
+        close();
+        return false;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        try {
+            return results.next();
+        }
+        catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        REFERENCES.remove(reference);
+        reference.clear();
+        close(results, lease);
+    }
+
+    private static void close(ResultIterator<?> results, HandleLease lease) {
+        try {
+            results.close();
+        }
+        finally {
+            lease.close();
+        }
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    // Must not hold the iterator itself, or it would never become phantom reachable
+    private static final class ResultsReference extends FinalizablePhantomReference<DbIterator<?>> {
+
+        private final ResultIterator<?> results;
+        private final HandleLease lease;
+
+        private ResultsReference(DbIterator<?> iterator, ResultIterator<?> results, HandleLease lease) {
+            super (iterator, REFERENCE_QUEUE);
+            this.results = results;
+            this.lease = lease;
+        }
+
+        @Override
+        public void finalizeReferent() {
+            REFERENCES.remove(this);
+            close(results, lease);
+        }
+    }
+}
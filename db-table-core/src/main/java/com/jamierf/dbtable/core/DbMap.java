@@ -1,34 +1,34 @@
 package com.jamierf.dbtable.core;
 
-import com.google.common.base.Joiner;
+import com.google.common.base.Function;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Table;
+import com.google.common.collect.Tables;
 import com.jamierf.dbtable.core.mapper.result.field.FieldMapper;
 import com.jamierf.dbtable.core.mapper.result.map.MapEntryMapper;
 import com.jamierf.dbtable.core.mapper.selection.AbstractSelectionMapFactory;
 import com.jamierf.dbtable.core.mapper.selection.FieldSelectionMapFactory;
 import com.jamierf.dbtable.core.mapper.selection.MapEntrySelectionMapFactory;
 import com.jamierf.dbtable.core.mapper.selection.SelectionMap;
-import org.skife.jdbi.v2.Handle;
-import org.skife.jdbi.v2.PreparedBatch;
 import org.skife.jdbi.v2.util.IntegerMapper;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.AbstractMap;
-import java.util.Collection;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.Callable;
 
 class DbMap<K, V> extends AbstractMap<K, V> {
 
-    private final String tableName;
-    private final SelectionMap selectionMap;
-    private final Handle handle;
-    private final AbstractSelectionMapFactory<K> selectionMapFactory;
-    private final MapEntryMapper<K, V> mapEntryMapper;
+    protected final DbStatements statements;
+    protected final SelectionMap selectionMap;
+    protected final DbContext context;
+    protected final AbstractSelectionMapFactory<K> selectionMapFactory;
+    protected final MapEntryMapper<K, V> mapEntryMapper;
 
-    DbMap(String tableName, Handle handle, SelectionMap selectionMap, AbstractSelectionMapFactory<K> selectionMapFactory, MapEntryMapper<K, V> mapEntryMapper) {
-        this.tableName = tableName;
-        this.handle = handle;
+    DbMap(DbStatements statements, DbContext context, SelectionMap selectionMap, AbstractSelectionMapFactory<K> selectionMapFactory, MapEntryMapper<K, V> mapEntryMapper) {
+        this.statements = statements;
+        this.context = context;
         this.selectionMap = selectionMap;
         this.selectionMapFactory = selectionMapFactory;
         this.mapEntryMapper = mapEntryMapper;
@@ -36,118 +36,175 @@ class DbMap<K, V> extends AbstractMap<K, V> {
 
     @Override
     public int size() {
-        final String fieldsToCount = Joiner.on(", ").join(selectionMapFactory.keyFields());
-        return handle.createQuery(String.format("SELECT COUNT(DISTINCT (%2$s)) FROM %1$s WHERE %3$s", tableName, fieldsToCount, selectionMap.asSql()))
-                .bindFromMap(selectionMap.asMap())
-                .map(IntegerMapper.FIRST)
-                .first();
+        try (HandleLease lease = context.lease()) {
+            return lease.handle().createQuery(statements.countDistinct())
+                    .bindFromMap(selectionMap.asMap())
+                    .map(IntegerMapper.FIRST)
+                    .first();
+        }
     }
 
     @Override
     public boolean isEmpty() {
-        return handle.createQuery(String.format("SELECT 1 FROM %1$s WHERE %2$s", tableName, selectionMap.asSql()))
-                .bindFromMap(selectionMap.asMap())
-                .first() == null;
+        try (HandleLease lease = context.lease()) {
+            return lease.handle().createQuery(statements.isEmpty())
+                    .bindFromMap(selectionMap.asMap())
+                    .first() == null;
+        }
     }
 
     @Override
     public boolean containsKey(Object key) {
-        final SelectionMap valueMap = selectionMapFactory.get(key);
-        return handle.createQuery(String.format("SELECT 1 FROM %1$s WHERE %2$s AND %3$s", tableName, valueMap.asSql(), selectionMap.asSql()))
-                .bindFromMap(selectionMap.asMap())
-                .bindFromMap(valueMap.asMap())
-                .map(IntegerMapper.FIRST)
-                .first() != null;
+        try (HandleLease lease = context.lease()) {
+            return selectionMapFactory.bindKey(lease.handle().createQuery(statements.contains()), key)
+                    .bindFromMap(selectionMap.asMap())
+                    .map(IntegerMapper.FIRST)
+                    .first() != null;
+        }
     }
 
+    // Values are matched in the form they're stored in
     @Override
+    @SuppressWarnings("unchecked")
     public boolean containsValue(Object value) {
-        return handle.createQuery(String.format("SELECT 1 FROM %1$s WHERE value_field = :value_field AND %2$s", tableName, selectionMap.asSql()))
-                .bindFromMap(selectionMap.asMap())
-                .bind("value_field", value)
-                .map(IntegerMapper.FIRST)
-                .first() != null;
+        try (HandleLease lease = context.lease()) {
+            return lease.handle().createQuery(statements.containsValue())
+                    .bindFromMap(selectionMap.asMap())
+                    .bind("value_field", mapEntryMapper.getValueMapper().encode((V) value))
+                    .map(IntegerMapper.FIRST)
+                    .first() != null;
+        }
     }
 
     @Override
     public V get(Object key) {
-        final SelectionMap valueMap = selectionMapFactory.get(key);
-        return handle.createQuery(String.format("SELECT * FROM %1$s WHERE %2$s AND %3$s", tableName, valueMap.asSql(), selectionMap.asSql()))
-                .bindFromMap(selectionMap.asMap())
-                .bindFromMap(valueMap.asMap())
-                .map(mapEntryMapper.getValueMapper())
-                .first();
+        try (HandleLease lease = context.lease()) {
+            return selectionMapFactory.bindKey(lease.handle().createQuery(statements.get()), key)
+                    .bindFromMap(selectionMap.asMap())
+                    .map(mapEntryMapper.getValueMapper())
+                    .first();
+        }
     }
 
     @Override
-    public V put(K key, V value) {
-        final V result = get(key);
-
-        final SelectionMap valueMap = selectionMapFactory.get(key);
-        handle.createStatement(String.format("REPLACE INTO %1$s (row_field, column_field, value_field) VALUES (:row_field, :column_field, :value_field)", tableName))
-                .bindFromMap(selectionMap.asMap())
-                .bindFromMap(valueMap.asMap())
-                .bind("value_field", value)
-                .execute();
-
-        return result;
+    public V put(final K key, final V value) {
+        return context.write(new Callable<V>() {
+            @Override
+            public V call() {
+                final V result = get(key);
+
+                final SelectionMap valueMap = selectionMapFactory.get(key);
+                try (HandleLease lease = context.lease()) {
+                    lease.handle().createStatement(statements.replace())
+                            .bindFromMap(selectionMap.asMap())
+                            .bindFromMap(valueMap.asMap())
+                            .bind("value_field", mapEntryMapper.getValueMapper().encode(value))
+                            .execute();
+                }
+
+                if (result == null) {
+                    final Map<String, Object> keyMap = valueMap.asMap();
+                    context.getSizes().added(field("row_field", keyMap), field("column_field", keyMap));
+                }
+
+                return result;
+            }
+        });
     }
 
     @Override
-    public V remove(Object key) {
-        final V result = get(key);
-
-        final SelectionMap valueMap = selectionMapFactory.get(key);
-        handle.createStatement(String.format("DELETE FROM %1$s WHERE %2$s AND %3$s", tableName, valueMap.asSql(), selectionMap.asSql()))
-                .bindFromMap(selectionMap.asMap())
-                .bindFromMap(valueMap.asMap())
-                .execute();
-
-        return result;
+    public V remove(final Object key) {
+        return context.write(new Callable<V>() {
+            @Override
+            public V call() {
+                final V result = get(key);
+
+                final Map<String, Object> keyMap = selectionMapFactory.get(key).asMap();
+                final Object row = field("row_field", keyMap);
+                final Object column = field("column_field", keyMap);
+
+                // Removing a whole row or column from rowMap() or columnMap() may remove many cells
+                if (row == null || column == null) {
+                    context.delete(statements.delete(), statements.deletedKeys(), selectionMap.asMap(), keyMap);
+                    return result;
+                }
+
+                try (HandleLease lease = context.lease()) {
+                    lease.handle().createStatement(statements.delete())
+                            .bindFromMap(selectionMap.asMap())
+                            .bindFromMap(keyMap)
+                            .execute();
+                }
+
+                if (result != null) {
+                    context.getSizes().removed(row, column);
+                }
+
+                return result;
+            }
+        });
     }
 
     @Override
     public void putAll(@Nullable Map<? extends K, ? extends V> map) {
-        final PreparedBatch batch = handle.prepareBatch(String.format("REPLACE INTO %1$s (row_field, column_field, value_field) VALUES (:row_field, :column_field, :value_field)", tableName));
-
-        for (Map.Entry<? extends K, ? extends V> entry : map.entrySet()) {
-            final SelectionMap valueMap = selectionMapFactory.get(entry.getKey());
-            batch.add()
-                    .bindFromMap(selectionMap.asMap())
-                    .bindFromMap(valueMap.asMap())
-                    .bind("value_field", entry.getValue());
-        }
+        context.getBatchWriter().putAll(Iterables.transform(map.entrySet(), new Function<Map.Entry<? extends K, ? extends V>, Table.Cell<?, ?, ?>>() {
+            @Override
+            public Table.Cell<?, ?, ?> apply(Map.Entry<? extends K, ? extends V> entry) {
+                final Map<String, Object> keyMap = selectionMapFactory.get(entry.getKey()).asMap();
+                return Tables.immutableCell(field("row_field", keyMap), field("column_field", keyMap), mapEntryMapper.getValueMapper().encode(entry.getValue()));
+            }
+        }));
+    }
 
-        batch.execute();
+    private Object field(String fieldName, Map<String, Object> keyMap) {
+        return keyMap.containsKey(fieldName) ? keyMap.get(fieldName) : selectionMap.asMap().get(fieldName);
     }
 
     @Override
     public void clear() {
-        handle.createStatement(String.format("DELETE FROM %1$s WHERE %2$s", tableName, selectionMap.asSql()))
-                .bindFromMap(selectionMap.asMap())
-                .execute();
+        context.write(new Callable<Void>() {
+            @Override
+            public Void call() {
+                // Only clearing the whole table counts it again, views are told which cells they deleted
+                if (selectionMap.isEmpty()) {
+                    try (HandleLease lease = context.lease()) {
+                        lease.handle().createStatement(statements.clear())
+                                .execute();
+                    }
+
+                    context.getSizes().changed();
+                    return null;
+                }
+
+                context.delete(statements.clear(), statements.clearedKeys(), selectionMap.asMap());
+                return null;
+            }
+        });
     }
 
     @Override
     @Nonnull
     @SuppressWarnings("unchecked")
-    public Set<K> keySet() {
+    public ScanSet<K> keySet() {
         final FieldMapper<K> mapper = mapEntryMapper.getKeyMapper();
-        return new DbSet<>(tableName, handle, selectionMap, new FieldSelectionMapFactory<K>(mapper.getFieldName()), mapper);
+        final FieldSelectionMapFactory<K> keys = new FieldSelectionMapFactory<>(mapper);
+        return new DbSet<>(statements.forKeys(keys), context, selectionMap, keys, mapper);
     }
 
     @Override
     @Nonnull
     @SuppressWarnings("unchecked")
-    public Collection<V> values() {
+    public ScanCollection<V> values() {
         final FieldMapper<V> mapper = mapEntryMapper.getValueMapper();
-        return new DbCollection<>(tableName, handle, selectionMap, new FieldSelectionMapFactory<V>(mapper.getFieldName()), mapper);
+        final FieldSelectionMapFactory<V> values = new FieldSelectionMapFactory<>(mapper);
+        return new DbCollection<>(statements.forKeys(values), context, selectionMap, values, mapper);
     }
 
     @Override
     @Nonnull
     @SuppressWarnings("unchecked")
-    public Set<Entry<K, V>> entrySet() {
-        return new DbSet<>(tableName, handle, selectionMap, new MapEntrySelectionMapFactory<K, V>(mapEntryMapper.getKeyMapper().getFieldName(), mapEntryMapper.getValueMapper().getFieldName()), mapEntryMapper);
+    public ScanSet<Entry<K, V>> entrySet() {
+        final MapEntrySelectionMapFactory<K, V> entries = new MapEntrySelectionMapFactory<>(mapEntryMapper);
+        return new DbSet<>(statements.forKeys(entries), context, selectionMap, entries, mapEntryMapper);
     }
 }
@@ -0,0 +1,62 @@
+package com.jamierf.dbtable.core;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.jamierf.dbtable.core.sql.SqlDialect;
+
+import java.util.List;
+
+/**
+ * The SQL to read a scan one page at a time, ordered by and resuming after the given key fields.
+ */
+class DbPages {
+
+    private static final Joiner FIELD_JOINER = Joiner.on(", ");
+
+    private final List<String> pageFields;
+    private final List<String> afterFields;
+    private final String first;
+    private final String next;
+
+    DbPages(String tableName, SqlDialect dialect, String selectSql, String... pageFields) {
+        this.pageFields = ImmutableList.copyOf(pageFields);
+
+        afterFields = Lists.newArrayListWithCapacity(pageFields.length);
+        for (String pageField : pageFields) {
+            afterFields.add("after_" + pageField);
+        }
+
+        final String orderSql = FIELD_JOINER.join(pageFields);
+        first = dialect.limit(String.format("%2$s FROM %1$s ORDER BY %3$s", tableName, selectSql, orderSql), ":limit");
+        next = dialect.limit(String.format("%2$s FROM %1$s WHERE %3$s ORDER BY %4$s", tableName, selectSql, after(0), orderSql), ":limit");
+    }
+
+    // Keys after the token's, expanded from (a, b) > (:a, :b) to a >= :a AND (a > :a OR b > :b) so the leading
+    // field bounds an index range rather than every page scanning from the start of the index
+    private String after(int index) {
+        final String field = pageFields.get(index);
+        final String parameter = ":" + afterFields.get(index);
+        if (index == pageFields.size() - 1) {
+            return String.format("%s > %s", field, parameter);
+        }
+
+        return String.format("%1$s >= %2$s AND (%1$s > %2$s OR %3$s)", field, parameter, after(index + 1));
+    }
+
+    public List<String> pageFields() {
+        return pageFields;
+    }
+
+    public List<String> afterFields() {
+        return afterFields;
+    }
+
+    public String first() {
+        return first;
+    }
+
+    public String next() {
+        return next;
+    }
+}
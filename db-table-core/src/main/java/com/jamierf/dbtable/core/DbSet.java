@@ -1,36 +1,36 @@
 package com.jamierf.dbtable.core;
 
-import com.google.common.base.Joiner;
 import com.jamierf.dbtable.core.mapper.selection.AbstractSelectionMapFactory;
 import com.jamierf.dbtable.core.mapper.selection.SelectionMap;
-import org.skife.jdbi.v2.Handle;
 import org.skife.jdbi.v2.tweak.ResultSetMapper;
 import org.skife.jdbi.v2.util.IntegerMapper;
 
-import java.util.Iterator;
-import java.util.Set;
+class DbSet<T> extends DbCollection<T> implements ScanSet<T> {
 
-class DbSet<T> extends DbCollection<T> implements Set<T> {
+    DbSet(DbStatements statements, DbContext context, SelectionMap selectionMap, AbstractSelectionMapFactory<T> selectionMapFactory, ResultSetMapper<T> fieldMapper) {
+        super (statements, context, selectionMap, selectionMapFactory, fieldMapper);
+    }
 
-    DbSet(String tableName, Handle handle, SelectionMap selectionMap, AbstractSelectionMapFactory<T> selectionMapFactory, ResultSetMapper<T> fieldMapper) {
-        super (tableName, handle, selectionMap, selectionMapFactory, fieldMapper);
+    DbSet(DbStatements statements, DbContext context, SelectionMap selectionMap, AbstractSelectionMapFactory<T> selectionMapFactory, ResultSetMapper<T> fieldMapper, DbPages pages) {
+        super (statements, context, selectionMap, selectionMapFactory, fieldMapper, pages);
     }
 
     @Override
     public int size() {
-        final String fieldsToCount = Joiner.on(", ").join(selectionMapFactory.keyFields());
-        return handle.createQuery(String.format("SELECT COUNT(DISTINCT (%2$s)) FROM %1$s WHERE %3$s", tableName, fieldsToCount, selectionMap.asSql()))
-                .bindFromMap(selectionMap.asMap())
-                .map(IntegerMapper.FIRST)
-                .first();
+        try (HandleLease lease = context.lease()) {
+            return lease.handle().createQuery(statements.countDistinct())
+                    .bindFromMap(selectionMap.asMap())
+                    .map(IntegerMapper.FIRST)
+                    .first();
+        }
     }
 
     @Override
-    public Iterator<T> iterator() {
-        final String fieldsToCount = Joiner.on(", ").join(selectionMapFactory.keyFields());
-        return handle.createQuery(String.format("SELECT DISTINCT %2$s FROM %1$s WHERE " + selectionMap.asSql(), tableName, fieldsToCount))
-                .bindFromMap(selectionMap.asMap())
-                .map(fieldMapper)
-                .iterator();
+    public CloseableIterator<T> iterator() {
+        if (pages != null && context.isPaged()) {
+            return context.paginate(pages, fieldMapper, null);
+        }
+
+        return context.iterate(statements.selectDistinct(), selectionMap.asMap(), fieldMapper);
     }
 }
@@ -0,0 +1,359 @@
+package com.jamierf.dbtable.core;
+
+import com.google.common.collect.Maps;
+import com.jamierf.dbtable.core.sql.SqlDialect;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.exceptions.UnableToExecuteStatementException;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
+import org.skife.jdbi.v2.util.IntegerMapper;
+import org.skife.jdbi.v2.util.LongMapper;
+
+import java.nio.ByteBuffer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * The number of cells, distinct rows and distinct columns in a table, and the hooks writes use to keep them up
+ * to date.
+ */
+abstract class DbSizes {
+
+    // The stored (row_field, column_field) key of each cell, as bound when the cell was written
+    static final ResultSetMapper<Map.Entry<Object, Object>> CELL_KEYS = new ResultSetMapper<Map.Entry<Object, Object>>() {
+        @Override
+        public Map.Entry<Object, Object> map(int index, ResultSet r, StatementContext ctx) throws SQLException {
+            return Maps.immutableEntry(r.getObject("row_field"), r.getObject("column_field"));
+        }
+    };
+
+    // Byte array keys have no usable equals, so are compared by their contents
+    static Object contentKey(Object key) {
+        return key instanceof byte[] ? ByteBuffer.wrap((byte[]) key) : key;
+    }
+
+    public static DbSizes create(SizeMode mode, DbHandles handles, String tableName, SqlDialect dialect) {
+        switch (mode) {
+            case QUERY:
+                return new Queried(handles, tableName);
+            case COUNTER:
+                return new Counted(handles, tableName, dialect);
+            case APPROXIMATE:
+                return new Approximate(handles, tableName, dialect);
+            default:
+                throw new IllegalArgumentException("Unknown size mode: " + mode);
+        }
+    }
+
+    public abstract int cells();
+
+    public abstract int rows();
+
+    public abstract int columns();
+
+    public boolean isMaintained() {
+        return false;
+    }
+
+    // Called at the start of every transaction that writes to the table, before it reads what the write will change
+    public void lock() {}
+
+    // Called after a cell that did not exist has been written
+    public void added(Object row, Object column) {}
+
+    // Called after a cell that existed has been deleted
+    public void removed(Object row, Object column) {}
+
+    // Called after a write that added and deleted the given cells, several of which may share a row or column
+    public void changed(Collection<? extends Map.Entry<?, ?>> added, Collection<? extends Map.Entry<?, ?>> removed) {}
+
+    // Called after a write that may have changed any number of cells, such as clearing the table
+    public void changed() {}
+
+    private static class Queried extends DbSizes {
+
+        protected final DbHandles handles;
+
+        private final String cellsSql;
+        private final String rowsSql;
+        private final String columnsSql;
+
+        private Queried(DbHandles handles, String tableName) {
+            this.handles = handles;
+
+            cellsSql = String.format("SELECT COUNT(value_field) FROM %s", tableName);
+            rowsSql = String.format("SELECT COUNT(DISTINCT (row_field)) FROM %s", tableName);
+            columnsSql = String.format("SELECT COUNT(DISTINCT (column_field)) FROM %s", tableName);
+        }
+
+        @Override
+        public int cells() {
+            try (HandleLease lease = handles.lease()) {
+                return lease.handle().createQuery(cellsSql)
+                        .map(IntegerMapper.FIRST)
+                        .first();
+            }
+        }
+
+        @Override
+        public int rows() {
+            try (HandleLease lease = handles.lease()) {
+                return lease.handle().createQuery(rowsSql)
+                        .map(IntegerMapper.FIRST)
+                        .first();
+            }
+        }
+
+        @Override
+        public int columns() {
+            try (HandleLease lease = handles.lease()) {
+                return lease.handle().createQuery(columnsSql)
+                        .map(IntegerMapper.FIRST)
+                        .first();
+            }
+        }
+    }
+
+    private static class Counted extends Queried {
+
+        private final String createSql;
+        private final String selectSql;
+        private final String lockSql;
+        private final String initializeSql;
+        private final String recountSql;
+        private final String updateSql;
+        private final String rowCellsSql;
+        private final String columnCellsSql;
+
+        private Counted(DbHandles handles, String tableName, SqlDialect dialect) {
+            super (handles, tableName);
+
+            final String countsName = tableName + "_counts";
+            final String countsSql = String.format("SELECT COUNT(value_field), COUNT(DISTINCT (row_field)), COUNT(DISTINCT (column_field)) FROM %s", tableName);
+            final String cellsSql = String.format("(SELECT COUNT(value_field) FROM %s)", tableName);
+            final String rowsSql = String.format("(SELECT COUNT(DISTINCT (row_field)) FROM %s)", tableName);
+            final String columnsSql = String.format("(SELECT COUNT(DISTINCT (column_field)) FROM %s)", tableName);
+
+            createSql = String.format("CREATE TABLE IF NOT EXISTS %s (id INT NOT NULL PRIMARY KEY, cell_count BIGINT NOT NULL, row_count BIGINT NOT NULL, column_count BIGINT NOT NULL)", countsName);
+            selectSql = String.format("SELECT cell_count, row_count, column_count FROM %s", countsName);
+            lockSql = dialect.forUpdate(selectSql);
+            initializeSql = String.format("INSERT INTO %1$s (id, cell_count, row_count, column_count) SELECT 1, counts.* FROM (%2$s) counts", countsName, countsSql);
+            recountSql = String.format("UPDATE %1$s SET cell_count = %2$s, row_count = %3$s, column_count = %4$s", countsName, cellsSql, rowsSql, columnsSql);
+            updateSql = String.format("UPDATE %s SET cell_count = cell_count + :cells, row_count = row_count + :rows, column_count = column_count + :columns", countsName);
+
+            // Counts no more cells than are needed to tell whether a row or column was or is now empty
+            rowCellsSql = String.format("SELECT COUNT(*) FROM (%s) cells", dialect.limit(String.format("SELECT 1 FROM %s WHERE row_field = :row_field", tableName), ":limit"));
+            columnCellsSql = String.format("SELECT COUNT(*) FROM (%s) cells", dialect.limit(String.format("SELECT 1 FROM %s WHERE column_field = :column_field", tableName), ":limit"));
+
+            createTableIfRequired();
+        }
+
+        // The counts row always has the same key, so of several tables initialising it at once only the first inserts it
+        private void createTableIfRequired() {
+            try (HandleLease lease = handles.lease()) {
+                final Handle handle = lease.handle();
+                handle.execute(createSql);
+                if (handle.createQuery(selectSql).first() != null) {
+                    return;
+                }
+
+                try {
+                    handle.execute(initializeSql);
+                }
+                catch (UnableToExecuteStatementException e) {
+                    if (handle.createQuery(selectSql).first() == null) {
+                        throw e;
+                    }
+                }
+            }
+        }
+
+        private long count(String field) {
+            try (HandleLease lease = handles.lease()) {
+                return lease.handle().createQuery(selectSql)
+                        .map(new LongMapper(field))
+                        .first();
+            }
+        }
+
+        @Override
+        public int cells() {
+            return (int) count("cell_count");
+        }
+
+        @Override
+        public int rows() {
+            return (int) count("row_count");
+        }
+
+        @Override
+        public int columns() {
+            return (int) count("column_count");
+        }
+
+        @Override
+        public boolean isMaintained() {
+            return true;
+        }
+
+        // Whether a write adds the first or removes the last cell of a row or column is read before or after the
+        // write, so concurrent writers take the counts row first and are counted one at a time
+        @Override
+        public void lock() {
+            try (HandleLease lease = handles.lease()) {
+                lease.handle().createQuery(lockSql)
+                        .first();
+            }
+        }
+
+        private int cellsIn(String sql, String field, Object key, int limit) {
+            try (HandleLease lease = handles.lease()) {
+                return lease.handle().createQuery(sql)
+                        .bind(field, key)
+                        .bind("limit", limit)
+                        .map(IntegerMapper.FIRST)
+                        .first();
+            }
+        }
+
+        private void update(int cells, int rows, int columns) {
+            try (HandleLease lease = handles.lease()) {
+                lease.handle().createStatement(updateSql)
+                        .bind("cells", cells)
+                        .bind("rows", rows)
+                        .bind("columns", columns)
+                        .execute();
+            }
+        }
+
+        @Override
+        public void added(Object row, Object column) {
+            final boolean newRow = cellsIn(rowCellsSql, "row_field", row, 2) == 1;
+            final boolean newColumn = cellsIn(columnCellsSql, "column_field", column, 2) == 1;
+            update(1, newRow ? 1 : 0, newColumn ? 1 : 0);
+        }
+
+        @Override
+        public void removed(Object row, Object column) {
+            final boolean emptyRow = cellsIn(rowCellsSql, "row_field", row, 2) == 0;
+            final boolean emptyColumn = cellsIn(columnCellsSql, "column_field", column, 2) == 0;
+            update(-1, emptyRow ? -1 : 0, emptyColumn ? -1 : 0);
+        }
+
+        @Override
+        public void changed(Collection<? extends Map.Entry<?, ?>> added, Collection<? extends Map.Entry<?, ?>> removed) {
+            if (added.isEmpty() && removed.isEmpty()) {
+                return;
+            }
+
+            final KeyChanges rows = new KeyChanges();
+            final KeyChanges columns = new KeyChanges();
+            for (Map.Entry<?, ?> cell : added) {
+                rows.add(cell.getKey(), 1);
+                columns.add(cell.getValue(), 1);
+            }
+
+            for (Map.Entry<?, ?> cell : removed) {
+                rows.add(cell.getKey(), -1);
+                columns.add(cell.getValue(), -1);
+            }
+
+            update(added.size() - removed.size(), rows.changed(rowCellsSql, "row_field"), columns.changed(columnCellsSql, "column_field"));
+        }
+
+        // The net number of cells a write added to each row or column
+        private final class KeyChanges {
+
+            private final Map<Object, Object> keys = Maps.newHashMap();
+            private final Map<Object, Integer> cells = Maps.newHashMap();
+
+            void add(Object key, int change) {
+                final Object grouped = contentKey(key);
+                keys.put(grouped, key);
+
+                final Integer current = cells.get(grouped);
+                cells.put(grouped, (current == null ? 0 : current) + change);
+            }
+
+            // A key had cells before the write if it has more now than the write added, so the count need go no
+            // further than that
+            int changed(String sql, String field) {
+                int changed = 0;
+                for (Map.Entry<Object, Integer> change : cells.entrySet()) {
+                    final int net = change.getValue();
+                    final int now = cellsIn(sql, field, keys.get(change.getKey()), Math.max(net, 0) + 1);
+                    changed += (now > 0 ? 1 : 0) - (now > net ? 1 : 0);
+                }
+
+                return changed;
+            }
+        }
+
+        @Override
+        public void changed() {
+            try (HandleLease lease = handles.lease()) {
+                lease.handle().execute(recountSql);
+            }
+        }
+    }
+
+    // Engines without statistics to estimate from, or that haven't gathered them yet, are counted exactly instead
+    private static class Approximate extends Queried {
+
+        private static final ResultSetMapper<Long> ESTIMATE = new ResultSetMapper<Long>() {
+            @Override
+            public Long map(int index, ResultSet r, StatementContext ctx) throws SQLException {
+                final long estimate = r.getLong(1);
+                return r.wasNull() ? null : estimate;
+            }
+        };
+
+        private final String tableName;
+
+        private final String cellsSql;
+        private final String distinctSql;
+
+        private Approximate(DbHandles handles, String tableName, SqlDialect dialect) {
+            super (handles, tableName);
+
+            this.tableName = tableName;
+
+            cellsSql = dialect.estimateCells();
+            distinctSql = dialect.estimateDistinct();
+        }
+
+        private Long estimate(String sql, String fieldName) {
+            if (sql == null) {
+                return null;
+            }
+
+            try (HandleLease lease = handles.lease()) {
+                return lease.handle().createQuery(sql)
+                        .bind("table_name", tableName)
+                        .bind("field_name", fieldName)
+                        .map(ESTIMATE)
+                        .first();
+            }
+        }
+
+        @Override
+        public int cells() {
+            final Long estimate = estimate(cellsSql, null);
+            return estimate == null ? super.cells() : (int) Math.min(estimate, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public int rows() {
+            final Long estimate = estimate(distinctSql, "row_field");
+            return estimate == null ? super.rows() : (int) Math.min(estimate, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public int columns() {
+            final Long estimate = estimate(distinctSql, "column_field");
+            return estimate == null ? super.columns() : (int) Math.min(estimate, Integer.MAX_VALUE);
+        }
+    }
+}
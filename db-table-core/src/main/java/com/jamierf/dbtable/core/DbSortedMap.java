@@ -0,0 +1,190 @@
+package com.jamierf.dbtable.core;
+
+import com.jamierf.dbtable.core.mapper.result.field.FieldMapper;
+import com.jamierf.dbtable.core.mapper.result.map.MapEntryMapper;
+import com.jamierf.dbtable.core.mapper.selection.AbstractSelectionMapFactory;
+import com.jamierf.dbtable.core.mapper.selection.FieldSelectionMapFactory;
+import com.jamierf.dbtable.core.mapper.selection.MapEntrySelectionMapFactory;
+import com.jamierf.dbtable.core.mapper.selection.SelectionMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Comparator;
+import java.util.NoSuchElementException;
+import java.util.SortedMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A map keyed by one field of the primary key, in the order the database keeps that field in. Sub maps add a range
+ * condition on the key to the same selection, so are read as a range of the primary key index.
+ */
+class DbSortedMap<K, V> extends DbMap<K, V> implements SortedMap<K, V> {
+
+    protected final SelectionMap baseSelection;
+    protected final Comparator<? super K> keyOrder;
+    protected final K fromKey;
+    protected final K toKey;
+    protected final String keyField;
+
+    DbSortedMap(DbStatements statements, DbContext context, SelectionMap selectionMap, AbstractSelectionMapFactory<K> selectionMapFactory, MapEntryMapper<K, V> mapEntryMapper,
+                @Nullable Comparator<? super K> keyOrder) {
+        this (statements, context, selectionMap, selectionMap, selectionMapFactory, mapEntryMapper, keyOrder, null, null);
+    }
+
+    // The statements and selection are those already restricted to the range, the base selection is without it
+    DbSortedMap(DbStatements statements, DbContext context, SelectionMap baseSelection, SelectionMap selectionMap, AbstractSelectionMapFactory<K> selectionMapFactory,
+                MapEntryMapper<K, V> mapEntryMapper, @Nullable Comparator<? super K> keyOrder, @Nullable K fromKey, @Nullable K toKey) {
+        super (statements, context, selectionMap, selectionMapFactory, mapEntryMapper);
+
+        this.baseSelection = baseSelection;
+        this.keyOrder = keyOrder;
+        this.fromKey = fromKey;
+        this.toKey = toKey;
+
+        keyField = mapEntryMapper.getKeyMapper().getFieldName();
+    }
+
+    // A null comparator is the keys' natural order, as with any other sorted map
+    @SuppressWarnings("unchecked")
+    private int compare(K a, K b) {
+        return keyOrder == null ? ((Comparable<? super K>) a).compareTo(b) : keyOrder.compare(a, b);
+    }
+
+    private boolean inRange(K key, boolean inclusiveTo) {
+        if (fromKey != null && compare(key, fromKey) < 0) {
+            return false;
+        }
+
+        if (toKey != null) {
+            final int order = compare(key, toKey);
+            return inclusiveTo ? order <= 0 : order < 0;
+        }
+
+        return true;
+    }
+
+    private Object encode(@Nullable K key) {
+        return key == null ? null : mapEntryMapper.getKeyMapper().encode(key);
+    }
+
+    private DbSortedMap<K, V> range(@Nullable K from, @Nullable K to) {
+        final SelectionMap range = baseSelection.withRange(keyField, encode(from), encode(to));
+        return restrict(statements.forSelection(range, selectionMapFactory), range, from, to);
+    }
+
+    protected DbSortedMap<K, V> restrict(DbStatements statements, SelectionMap selectionMap, @Nullable K from, @Nullable K to) {
+        return new DbSortedMap<>(statements, context, baseSelection, selectionMap, selectionMapFactory, mapEntryMapper, keyOrder, from, to);
+    }
+
+    @Override
+    public Comparator<? super K> comparator() {
+        return keyOrder;
+    }
+
+    @Override
+    @Nonnull
+    public SortedMap<K, V> subMap(K fromKey, K toKey) {
+        checkNotNull(fromKey);
+        checkNotNull(toKey);
+        checkArgument(compare(fromKey, toKey) <= 0, "fromKey must not be after toKey");
+        checkArgument(inRange(fromKey, true) && inRange(toKey, true), "key out of range");
+
+        return range(fromKey, toKey);
+    }
+
+    @Override
+    @Nonnull
+    public SortedMap<K, V> headMap(K toKey) {
+        checkNotNull(toKey);
+        checkArgument(inRange(toKey, true), "key out of range");
+
+        return range(fromKey, toKey);
+    }
+
+    @Override
+    @Nonnull
+    public SortedMap<K, V> tailMap(K fromKey) {
+        checkNotNull(fromKey);
+        checkArgument(inRange(fromKey, true), "key out of range");
+
+        return range(fromKey, toKey);
+    }
+
+    @Override
+    public K firstKey() {
+        return endKey(false);
+    }
+
+    @Override
+    public K lastKey() {
+        return endKey(true);
+    }
+
+    private K endKey(boolean last) {
+        final K key;
+        try (HandleLease lease = context.lease()) {
+            key = lease.handle().createQuery(statements.selectFirst(keyField, last))
+                    .bindFromMap(selectionMap.asMap())
+                    .map(mapEntryMapper.getKeyMapper())
+                    .first();
+        }
+
+        if (key == null) {
+            throw new NoSuchElementException();
+        }
+
+        return key;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        checkArgument(inRange(checkNotNull(key), false), "key out of range");
+        return super.put(key, value);
+    }
+
+    @Override
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public ScanSet<K> keySet() {
+        final FieldMapper<K> mapper = mapEntryMapper.getKeyMapper();
+        final FieldSelectionMapFactory<K> keys = new FieldSelectionMapFactory<>(mapper);
+        final DbStatements keyStatements = statements.forKeys(keys);
+        return new DbSet<K>(keyStatements, context, selectionMap, keys, mapper) {
+            @Override
+            public CloseableIterator<K> iterator() {
+                return context.iterate(keyStatements.selectDistinctOrdered(keyField), selectionMap.asMap(), fieldMapper);
+            }
+        };
+    }
+
+    @Override
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public ScanCollection<V> values() {
+        final FieldMapper<V> mapper = mapEntryMapper.getValueMapper();
+        final FieldSelectionMapFactory<V> values = new FieldSelectionMapFactory<>(mapper);
+        final DbStatements valueStatements = statements.forKeys(values);
+        return new DbCollection<V>(valueStatements, context, selectionMap, values, mapper) {
+            @Override
+            public CloseableIterator<V> iterator() {
+                return context.iterate(valueStatements.selectOrdered(keyField), selectionMap.asMap(), fieldMapper);
+            }
+        };
+    }
+
+    @Override
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public ScanSet<Entry<K, V>> entrySet() {
+        final MapEntrySelectionMapFactory<K, V> entries = new MapEntrySelectionMapFactory<>(mapEntryMapper);
+        final DbStatements entryStatements = statements.forKeys(entries);
+        return new DbSet<Entry<K, V>>(entryStatements, context, selectionMap, entries, mapEntryMapper) {
+            @Override
+            public CloseableIterator<Entry<K, V>> iterator() {
+                return context.iterate(entryStatements.selectOrdered(keyField), selectionMap.asMap(), fieldMapper);
+            }
+        };
+    }
+}
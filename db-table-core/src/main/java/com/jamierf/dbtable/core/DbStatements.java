@@ -0,0 +1,183 @@
+package com.jamierf.dbtable.core;
+
+import com.google.common.collect.Maps;
+import com.jamierf.dbtable.core.mapper.selection.AbstractSelectionMapFactory;
+import com.jamierf.dbtable.core.mapper.selection.SelectionMap;
+import com.jamierf.dbtable.core.sql.SqlDialect;
+
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The SQL for every operation on a view of a given shape, where the shape is the fixed selection the view is
+ * restricted to and the fields it is keyed by. Statements are built once per shape and shared by every view
+ * of that shape.
+ */
+class DbStatements {
+
+    private static final String DELETE_TEMPLATE = "DELETE FROM %1$s WHERE %2$s";
+    // Selects the keys of the cells the delete with the same conditions removes
+    private static final String DELETED_KEYS_TEMPLATE = "SELECT row_field, column_field FROM %1$s WHERE %2$s";
+
+    private final String tableName;
+    private final SqlDialect dialect;
+    private final String selectionSql;
+    private final String keyFieldsSql;
+    private final ConcurrentMap<String, DbStatements> siblings;
+
+    private final String count;
+    private final String countDistinct;
+    private final String isEmpty;
+    private final String contains;
+    private final String containsValue;
+    private final String get;
+    private final String select;
+    private final String selectDistinct;
+    private final String replace;
+    private final String delete;
+    private final String deletedKeys;
+    private final String clear;
+    private final String clearedKeys;
+
+    DbStatements(String tableName, SqlDialect dialect, String selectionSql, AbstractSelectionMapFactory<?> keys) {
+        this (tableName, dialect, selectionSql, keys, Maps.<String, DbStatements>newConcurrentMap());
+
+        siblings.put(keys.keySql(), this);
+    }
+
+    private DbStatements(String tableName, SqlDialect dialect, String selectionSql, AbstractSelectionMapFactory<?> keys, ConcurrentMap<String, DbStatements> siblings) {
+        this.tableName = tableName;
+        this.dialect = dialect;
+        this.selectionSql = selectionSql;
+        this.siblings = siblings;
+
+        keyFieldsSql = keys.keyFieldsSql();
+
+        count = String.format("SELECT COUNT(%2$s) FROM %1$s WHERE %3$s", tableName, keys.keyFieldsSql(), selectionSql);
+        countDistinct = String.format("SELECT COUNT(DISTINCT (%2$s)) FROM %1$s WHERE %3$s", tableName, keys.keyFieldsSql(), selectionSql);
+        isEmpty = String.format("SELECT 1 FROM %1$s WHERE %2$s", tableName, selectionSql);
+        contains = String.format("SELECT 1 FROM %1$s WHERE %2$s AND %3$s", tableName, keys.keySql(), selectionSql);
+        containsValue = String.format("SELECT 1 FROM %1$s WHERE value_field = :value_field AND %2$s", tableName, selectionSql);
+        get = String.format("SELECT * FROM %1$s WHERE %2$s AND %3$s", tableName, keys.keySql(), selectionSql);
+        select = String.format("SELECT %2$s FROM %1$s WHERE %3$s", tableName, keys.keyFieldsSql(), selectionSql);
+        selectDistinct = String.format("SELECT DISTINCT %2$s FROM %1$s WHERE %3$s", tableName, keys.keyFieldsSql(), selectionSql);
+        replace = dialect.upsert(tableName, "(:row_field, :column_field, :value_field)");
+        final String deleteConditions = String.format("%1$s AND %2$s", keys.keySql(), selectionSql);
+        delete = String.format(DELETE_TEMPLATE, tableName, deleteConditions);
+        deletedKeys = String.format(DELETED_KEYS_TEMPLATE, tableName, deleteConditions);
+        clear = String.format(DELETE_TEMPLATE, tableName, selectionSql);
+        clearedKeys = String.format(DELETED_KEYS_TEMPLATE, tableName, selectionSql);
+    }
+
+    public DbStatements forKeys(AbstractSelectionMapFactory<?> keys) {
+        final DbStatements statements = siblings.get(keys.keySql());
+        if (statements != null) {
+            return statements;
+        }
+
+        final DbStatements created = new DbStatements(tableName, dialect, selectionSql, keys, siblings);
+        final DbStatements existing = siblings.putIfAbsent(keys.keySql(), created);
+        return existing == null ? created : existing;
+    }
+
+    // Statements for a view of the same keys restricted to a different selection, such as a range of keys
+    public DbStatements forSelection(SelectionMap selection, AbstractSelectionMapFactory<?> keys) {
+        return new DbStatements(tableName, dialect, selection.asSql(), keys);
+    }
+
+    public String count() {
+        return count;
+    }
+
+    public String countDistinct() {
+        return countDistinct;
+    }
+
+    public String isEmpty() {
+        return isEmpty;
+    }
+
+    public String contains() {
+        return contains;
+    }
+
+    public String containsValue() {
+        return containsValue;
+    }
+
+    public String get() {
+        return get;
+    }
+
+    public String select() {
+        return select;
+    }
+
+    public String selectDistinct() {
+        return selectDistinct;
+    }
+
+    // Ordered by a field of the primary key, so read in index order rather than sorted
+    public String selectOrdered(String orderField) {
+        return String.format("SELECT %2$s FROM %1$s WHERE %3$s ORDER BY %4$s", tableName, keyFieldsSql, selectionSql, orderField);
+    }
+
+    public String selectDistinctOrdered(String orderField) {
+        return String.format("SELECT DISTINCT %2$s FROM %1$s WHERE %3$s ORDER BY %4$s", tableName, keyFieldsSql, selectionSql, orderField);
+    }
+
+    public String selectCellsOrdered(String orderField) {
+        return String.format("SELECT row_field, column_field, value_field FROM %1$s WHERE %2$s ORDER BY %3$s", tableName, selectionSql, orderField);
+    }
+
+    public String selectFirst(String orderField, boolean descending) {
+        return dialect.limit(String.format("SELECT %2$s FROM %1$s WHERE %3$s ORDER BY %2$s%4$s", tableName, orderField, selectionSql, descending ? " DESC" : ""), "1");
+    }
+
+    public String selectIn(SelectionMap values) {
+        return String.format("SELECT %2$s FROM %1$s WHERE %3$s AND %4$s", tableName, keyFieldsSql, values.asSql(), selectionSql);
+    }
+
+    public String replace() {
+        return replace;
+    }
+
+    public String delete() {
+        return delete;
+    }
+
+    public String deletedKeys() {
+        return deletedKeys;
+    }
+
+    public String deleteIn(SelectionMap values) {
+        return String.format(DELETE_TEMPLATE, tableName, inConditions(values));
+    }
+
+    public String deletedKeysIn(SelectionMap values) {
+        return String.format(DELETED_KEYS_TEMPLATE, tableName, inConditions(values));
+    }
+
+    public String deleteNotIn(SelectionMap values) {
+        return String.format(DELETE_TEMPLATE, tableName, notInConditions(values));
+    }
+
+    public String deletedKeysNotIn(SelectionMap values) {
+        return String.format(DELETED_KEYS_TEMPLATE, tableName, notInConditions(values));
+    }
+
+    private String inConditions(SelectionMap values) {
+        return String.format("%1$s AND %2$s", values.asSql(), selectionSql);
+    }
+
+    private String notInConditions(SelectionMap values) {
+        return String.format("NOT %1$s AND %2$s", values.asSql(), selectionSql);
+    }
+
+    public String clear() {
+        return clear;
+    }
+
+    public String clearedKeys() {
+        return clearedKeys;
+    }
+}
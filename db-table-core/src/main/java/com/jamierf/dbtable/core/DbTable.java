@@ -1,203 +1,235 @@
 package com.jamierf.dbtable.core;
 
+import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Table;
+import com.jamierf.dbtable.core.mapper.result.field.ByteArrayFieldMapper;
 import com.jamierf.dbtable.core.mapper.result.field.ByteArrayFieldMapperFactory;
-import com.jamierf.dbtable.core.mapper.result.field.FieldMapper;
-import com.jamierf.dbtable.core.mapper.result.map.MapEntryMapper;
-import com.jamierf.dbtable.core.mapper.result.table.TableCellMapper;
-import com.jamierf.dbtable.core.mapper.result.table.TableCellMapperFactory;
-import com.jamierf.dbtable.core.mapper.selection.FieldSelectionMapFactory;
-import com.jamierf.dbtable.core.mapper.selection.SelectionMap;
-import com.jamierf.dbtable.core.mapper.selection.TableCellSelectionMapFactory;
 import org.skife.jdbi.v2.Handle;
-import org.skife.jdbi.v2.PreparedBatch;
+import org.skife.jdbi.v2.IDBI;
+import org.skife.jdbi.v2.ResultIterator;
 import org.skife.jdbi.v2.StatementContext;
-import org.skife.jdbi.v2.util.ByteArrayMapper;
-import org.skife.jdbi.v2.util.IntegerMapper;
+import org.skife.jdbi.v2.tweak.Argument;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
 
 import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.Map;
-import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.Callable;
 
-public class DbTable implements Table<byte[], byte[], byte[]> {
+public class DbTable extends TypedDbTable<byte[], byte[], byte[]> {
 
-    private static final TableCellMapperFactory<byte[], byte[], byte[]> TABLE_CELL_MAPPER_FACTORY = new TableCellMapperFactory<>(
-            new ByteArrayFieldMapperFactory(), new ByteArrayFieldMapperFactory(), new ByteArrayFieldMapperFactory()
-    );
-
-    private final String tableName;
-    private final Handle handle;
-    private final TableCellMapper<byte[], byte[], byte[]> tableCellMapper;
+    private final GroupCommitter groupCommitter;
+    private final ByteArrayFieldMapper streamMapper;
+    private final ResultSetMapper<InputStream> valueStreamMapper;
 
     public DbTable(String tableName, Handle handle) {
-        this.tableName = Preconditions.checkNotNull(tableName);
-        this.handle = Preconditions.checkNotNull(handle);
-
-        tableCellMapper = TABLE_CELL_MAPPER_FACTORY.build("row_field", "column_field", "value_field");
-
-        createTableIfRequired();
+        this (tableName, new DbTableBuilder(handle));
     }
 
-    private void createTableIfRequired() {
-        handle.execute(String.format("CREATE TABLE IF NOT EXISTS %s (row_field VARBINARY NOT NULL, column_field VARBINARY NOT NULL, value_field BLOB NOT NULL, PRIMARY KEY (row_field, column_field))", tableName));
+    public DbTable(String tableName, IDBI dbi) {
+        this (tableName, new DbTableBuilder(dbi));
     }
 
-    @Override
-    public boolean contains(Object row, Object column) {
-        return handle.createQuery(String.format("SELECT 1 FROM %s WHERE row_field = :row_field AND column_field = :column_field", tableName))
-                .bind("row_field", row)
-                .bind("column_field", column)
-                .map(IntegerMapper.FIRST)
-                .first() != null;
+    DbTable(String tableName, DbTableBuilder builder) {
+        this (tableName, builder, false);
     }
 
-    @Override
-    public boolean containsRow(Object row) {
-        return handle.createQuery(String.format("SELECT 1 FROM %s WHERE row_field = :row_field", tableName))
-                .bind("row_field", row)
-                .map(IntegerMapper.FIRST)
-                .first() != null;
-    }
+    DbTable(String tableName, DbTableBuilder builder, boolean truncatingClears) {
+        super (tableName, builder, truncatingClears, new ByteArrayFieldMapperFactory(), new ByteArrayFieldMapperFactory(), builder.getValueMapperFactory());
 
-    @Override
-    public boolean containsColumn(Object column) {
-        return handle.createQuery(String.format("SELECT 1 FROM %s WHERE column_field = :column_field", tableName))
-                .bind("column_field", column)
-                .map(IntegerMapper.FIRST)
-                .first() != null;
+        streamMapper = builder.getValueMapperFactory().build("value_field");
+        valueStreamMapper = new ResultSetMapper<InputStream>() {
+            @Override
+            public InputStream map(int index, ResultSet r, StatementContext ctx) throws SQLException {
+                return streamMapper.mapStream(r);
+            }
+        };
+
+        groupCommitter = builder.getGroupCommitWindow() == GroupCommitter.DISABLED ? null : new GroupCommitter(context, new Function<Iterable<Map.Entry<byte[], byte[]>>, Table<byte[], byte[], byte[]>>() {
+            @Override
+            public Table<byte[], byte[], byte[]> apply(Iterable<Map.Entry<byte[], byte[]>> keys) {
+                return getAll(keys);
+            }
+        }, valueMapper, replaceSql, removeSql, builder.getGroupCommitWindow());
+    }
+
+    // The stream holds a connection until it's closed, so must always be closed. Returns null if there's no such cell.
+    @Nullable
+    public InputStream openValue(Object row, Object column) {
+        final HandleLease lease = handles.detachedLease();
+        try {
+            final ResultIterator<InputStream> results = lease.handle().createQuery(getSql)
+                    .bind(0, row)
+                    .bind(1, column)
+                    .map(valueStreamMapper)
+                    .iterator();
+
+            try {
+                if (results.hasNext()) {
+                    return new DbInputStream(results.next(), results, lease);
+                }
+            }
+            catch (RuntimeException e) {
+                results.close();
+                throw e;
+            }
+
+            results.close();
+            lease.close();
+            return null;
+        }
+        catch (RuntimeException e) {
+            lease.close();
+            throw e;
+        }
     }
 
-    @Override
-    public boolean containsValue(Object value) {
-        return handle.createQuery(String.format("SELECT 1 FROM %s WHERE value_field = :value_field", tableName))
-                .bind("value_field", value)
-                .map(IntegerMapper.FIRST)
-                .first() != null;
+    // Writes made inside a caller's transaction must stay in it, so they're never grouped
+    private boolean isGroupCommitted(Object row, Object column) {
+        return groupCommitter != null && row instanceof byte[] && column instanceof byte[] && !handles.isInTransaction();
     }
 
     @Override
-    public byte[] get(Object row, Object column) {
-        return handle.createQuery(String.format("SELECT value_field FROM %s WHERE row_field = :row_field AND column_field = :column_field", tableName))
-                .bind("row_field", row)
-                .bind("column_field", column)
-                .map(ByteArrayMapper.FIRST)
-                .first();
+    public byte[] put(@Nullable byte[] row, @Nullable byte[] column, @Nullable byte[] value) {
+        if (isGroupCommitted(row, column)) {
+            return groupCommitter.write(row, column, Preconditions.checkNotNull(value));
+        }
+
+        return super.put(row, column, value);
     }
 
     @Override
-    public boolean isEmpty() {
-        return handle.createQuery(String.format("SELECT 1 FROM %s", tableName))
-                .map(IntegerMapper.FIRST)
-                .first() == null;
+    public void set(@Nullable byte[] row, @Nullable byte[] column, @Nullable byte[] value) {
+        if (isGroupCommitted(row, column)) {
+            put(row, column, value);
+            return;
+        }
+
+        super.set(row, column, value);
     }
 
-    @Override
-    public int size() {
-        return handle.createQuery(String.format("SELECT COUNT(value_field) FROM %s", tableName))
-                .map(IntegerMapper.FIRST)
-                .first();
+    // Writes the next length bytes of the stream without buffering them, unless they're large enough to be
+    // compressed. Never group committed.
+    public void putStream(final byte[] row, final byte[] column, final InputStream value, final long length) {
+        Preconditions.checkNotNull(row);
+        Preconditions.checkNotNull(column);
+        Preconditions.checkNotNull(value);
+        Preconditions.checkArgument(length >= 0, "length must not be negative");
+
+        if (!sizes.isMaintained()) {
+            replace(row, column, value, length);
+            return;
+        }
+
+        context.inTransaction(new Callable<Void>() {
+            @Override
+            public Void call() {
+                final boolean existed = lockingWrites ? containsForUpdate(row, column) : containsCell(row, column);
+                replace(row, column, value, length);
+                if (!existed) {
+                    sizes.added(row, column);
+                }
+
+                return null;
+            }
+        });
     }
 
-    @Override
-    public void clear() {
-        handle.execute(String.format("DELETE FROM %s", tableName));
+    private void replace(byte[] row, byte[] column, InputStream value, long length) {
+        final Argument encoded = streamMapper.encode(value, length);
+        try (HandleLease lease = context.lease()) {
+            lease.handle().createStatement(replaceSql)
+                    .bind(0, row)
+                    .bind(1, column)
+                    .bind(2, encoded)
+                    .execute();
+        }
+        finally {
+            // Encodings that had to buffer the stream hold onto the buffer until closed
+            if (encoded instanceof Closeable) {
+                try {
+                    ((Closeable) encoded).close();
+                }
+                catch (IOException ignored) {
+                    // The buffer is released once unreachable regardless
+                }
+            }
+        }
     }
 
     @Override
-    public byte[] put(@Nullable byte[] row, @Nullable byte[] column, @Nullable byte[] value) {
-        final byte[] result = get(row, column);
-        handle.insert(String.format("REPLACE INTO %s VALUES (:row_field, :column_field, :value_field)", tableName), row, column, value);
-        return result;
+    public byte[] remove(Object row, Object column) {
+        if (isGroupCommitted(row, column)) {
+            return groupCommitter.write((byte[]) row, (byte[]) column, null);
+        }
+
+        return super.remove(row, column);
     }
 
     @Override
-    public void putAll(@Nullable Table<? extends byte[], ? extends byte[], ? extends byte[]> table) {
-        final PreparedBatch batch = handle.prepareBatch(String.format("REPLACE INTO %s VALUES (:row_field, :column_field, :value_field)", tableName));
-
-        for (Table.Cell<? extends byte[], ? extends byte[], ? extends byte[]> cell : table.cellSet()) {
-            batch.add()
-                    .bind("row_field", cell.getRowKey())
-                    .bind("column_field", cell.getColumnKey())
-                    .bind("value_field", cell.getValue());
+    public boolean delete(Object row, Object column) {
+        if (isGroupCommitted(row, column)) {
+            return groupCommitter.write((byte[]) row, (byte[]) column, null) != null;
         }
 
-        batch.execute();
+        return super.delete(row, column);
     }
 
+    // Sorted views are read as ranges of the primary key, in unsigned lexicographic order of the keys
+
     @Override
-    public byte[] remove(Object row, Object column) {
-        final byte[] result = get(row, column);
-        handle.execute(String.format("DELETE FROM %s WHERE row_field = :row_field AND column_field = :column_field", tableName), row, column);
-        return result;
+    public SortedMap<byte[], byte[]> row(@Nullable byte[] row) {
+        return sortedRow(row);
     }
 
-    @Override
-    @SuppressWarnings("unchecked")
-    public Map<byte[], byte[]> row(@Nullable byte[] row) {
-        final MapEntryMapper<byte[], byte[]> mapper = TABLE_CELL_MAPPER_FACTORY.getRowMapMapperFactory().build("column_field", "value_field");
-        return new DbMap(tableName, handle, SelectionMap.of("row_field", row), new FieldSelectionMapFactory("column_field"), mapper);
+    public SortedMap<byte[], Map<byte[], byte[]>> sortedRowMap() {
+        return groupedRows();
     }
 
-    @Override
-    @SuppressWarnings("unchecked")
-    public Map<byte[], byte[]> column(@Nullable byte[] column) {
-        final MapEntryMapper<byte[], byte[]> mapper = TABLE_CELL_MAPPER_FACTORY.getColumnMapMapperFactory().build("row_field", "value_field");
-        return new DbMap<>(tableName, handle, SelectionMap.of("column_field", column), new FieldSelectionMapFactory<byte[]>("row_field"), mapper);
+    // Rows from the first key up to but not including the second
+    public SortedMap<byte[], Map<byte[], byte[]>> rowRange(byte[] from, byte[] to) {
+        return groupedRows().subMap(from, to);
     }
 
-    @Override
-    @SuppressWarnings("unchecked")
-    public Set<Cell<byte[], byte[], byte[]>> cellSet() {
-        return new DbSet<>(tableName, handle, SelectionMap.NONE, new TableCellSelectionMapFactory<byte[], byte[], byte[]>(
-                "row_field", "column_field", "value_field"), tableCellMapper);
+    public SortedMap<byte[], Map<byte[], byte[]>> rowsWithPrefix(byte[] prefix) {
+        final byte[] end = prefixEnd(Preconditions.checkNotNull(prefix));
+        return end == null ? groupedRows().tailMap(prefix) : groupedRows().subMap(prefix, end);
     }
 
-    @Override
-    @SuppressWarnings("unchecked")
-    public Set<byte[]> rowKeySet() {
-        final FieldMapper<byte[]> mapper = tableCellMapper.getRowMapper();
-        return new DbSet<>(tableName, handle, SelectionMap.NONE, new FieldSelectionMapFactory<byte[]>("row_field"), mapper);
+    // The first key after every key with the prefix, or null if every byte of the prefix is already at its maximum
+    @Nullable
+    static byte[] prefixEnd(byte[] prefix) {
+        for (int i = prefix.length - 1; i >= 0; i--) {
+            if (prefix[i] != (byte) 0xff) {
+                final byte[] end = Arrays.copyOf(prefix, i + 1);
+                end[i]++;
+                return end;
+            }
+        }
+
+        return null;
     }
 
-    @Override
-    @SuppressWarnings("unchecked")
-    public Set<byte[]> columnKeySet() {
-        final FieldMapper<byte[]> mapper = tableCellMapper.getColumnMapper();
-        return new DbSet<>(tableName, handle, SelectionMap.NONE, new FieldSelectionMapFactory<byte[]>("column_field"), mapper);
+    public ResumableIterator<Cell<byte[], byte[], byte[]>> scanCells(@Nullable ContinuationToken token) {
+        return context.paginate(cellPages, tableCellMapper, token);
     }
 
-    @Override
-    @SuppressWarnings("unchecked")
-    public Collection<byte[]> values() {
-        final FieldMapper<byte[]> mapper = tableCellMapper.getValueMapper();
-        return new DbCollection<>(tableName, handle, SelectionMap.NONE, new FieldSelectionMapFactory<byte[]>("value_field"), mapper);
+    public ResumableIterator<byte[]> scanRowKeys(@Nullable ContinuationToken token) {
+        return context.paginate(rowKeyPages, tableCellMapper.getRowMapper(), token);
     }
 
-    @Override
-    @SuppressWarnings("unchecked")
-    public Map<byte[], Map<byte[], byte[]>> rowMap() {
-        final MapEntryMapper<byte[], Map<byte[], byte[]>> mapper = new MapEntryMapper<>(tableCellMapper.getRowMapper(), new FieldMapper<Map<byte[], byte[]>>("column_field, value_field") {
-            @Override
-            public Map<byte[], byte[]> map(int index, ResultSet r, StatementContext ctx) throws SQLException {
-                return row(tableCellMapper.getRowMapper().map(index, r, ctx));
-            }
-        });
-        return new DbMap<>(tableName, handle, SelectionMap.NONE, new FieldSelectionMapFactory<byte[]>("row_field"), mapper);
+    public ResumableIterator<byte[]> scanColumnKeys(@Nullable ContinuationToken token) {
+        return context.paginate(columnKeyPages, tableCellMapper.getColumnMapper(), token);
     }
 
-    @Override
-    @SuppressWarnings("unchecked")
-    public Map<byte[], Map<byte[], byte[]>> columnMap() {
-        final MapEntryMapper<byte[], Map<byte[], byte[]>> mapper = new MapEntryMapper<>(tableCellMapper.getColumnMapper(), new FieldMapper<Map<byte[], byte[]>>("row_field, value_field") {
-            @Override
-            public Map<byte[], byte[]> map(int index, ResultSet r, StatementContext ctx) throws SQLException {
-                return column(tableCellMapper.getColumnMapper().map(index, r, ctx));
-            }
-        });
-        return new DbMap<>(tableName, handle, SelectionMap.NONE, new FieldSelectionMapFactory<byte[]>("column_field"), mapper);
+    public ResumableIterator<byte[]> scanValues(@Nullable ContinuationToken token) {
+        return context.paginate(cellPages, tableCellMapper.getValueMapper(), token);
     }
 }
@@ -0,0 +1,185 @@
+package com.jamierf.dbtable.core;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.jamierf.dbtable.core.mapper.result.field.ByteArrayFieldMapperFactory;
+import com.jamierf.dbtable.core.mapper.result.field.CompressingFieldMapperFactory;
+import com.jamierf.dbtable.core.mapper.result.field.FieldMapperFactory;
+import com.jamierf.dbtable.core.shard.ShardedDbTable;
+import com.jamierf.dbtable.core.sql.SqlDialect;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.IDBI;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+public final class DbTableBuilder {
+
+    private static final String PARTITION_NAME_FORMAT = "%s_p%d";
+
+    private final DbHandles handles;
+
+    private boolean lockingWrites = false;
+    private int batchSize = BatchWriter.UNBOUNDED;
+    private boolean batchCommits = false;
+    private boolean multiRowInserts = false;
+    private int fetchSize = DbContext.DEFAULT_FETCH_SIZE;
+    private int pageSize = DbContext.UNPAGED;
+    private SizeMode sizeMode = SizeMode.QUERY;
+    private long groupCommitWindow = GroupCommitter.DISABLED;
+    private IndexProfile indexProfile = IndexProfile.PRIMARY_KEY;
+    private SqlDialect dialect = SqlDialect.H2;
+    private ByteArrayFieldMapperFactory valueMapperFactory = new ByteArrayFieldMapperFactory();
+
+    public DbTableBuilder(Handle handle) {
+        this.handles = DbHandles.shared(checkNotNull(handle));
+    }
+
+    // Borrows a handle per operation, so the table can be shared between threads
+    public DbTableBuilder(IDBI dbi) {
+        this.handles = DbHandles.pooled(checkNotNull(dbi));
+    }
+
+    public DbTableBuilder withLockingWrites(boolean lockingWrites) {
+        this.lockingWrites = lockingWrites;
+        return this;
+    }
+
+    public DbTableBuilder withBatchSize(int batchSize) {
+        checkArgument(batchSize > 0, "batch size must be positive");
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public DbTableBuilder withBatchCommits(boolean batchCommits) {
+        this.batchCommits = batchCommits;
+        return this;
+    }
+
+    public DbTableBuilder withMultiRowInserts(boolean multiRowInserts) {
+        this.multiRowInserts = multiRowInserts;
+        return this;
+    }
+
+    public DbTableBuilder withFetchSize(int fetchSize) {
+        checkArgument(fetchSize >= 0, "fetch size must not be negative");
+        this.fetchSize = fetchSize;
+        return this;
+    }
+
+    public DbTableBuilder withPageSize(int pageSize) {
+        checkArgument(pageSize > 0, "page size must be positive");
+        this.pageSize = pageSize;
+        return this;
+    }
+
+    public DbTableBuilder withSizeMode(SizeMode sizeMode) {
+        this.sizeMode = checkNotNull(sizeMode);
+        return this;
+    }
+
+    // Concurrent puts and removes wait up to the window to be committed together, a window of 0 groups only the
+    // writes queued while another commit is running
+    public DbTableBuilder withGroupCommit(long window, TimeUnit unit) {
+        checkArgument(window >= 0, "group commit window must not be negative");
+        this.groupCommitWindow = unit.toNanos(window);
+        return this;
+    }
+
+    public DbTableBuilder withIndexProfile(IndexProfile indexProfile) {
+        this.indexProfile = checkNotNull(indexProfile);
+        return this;
+    }
+
+    public DbTableBuilder withDialect(SqlDialect dialect) {
+        this.dialect = checkNotNull(dialect);
+        return this;
+    }
+
+    // Values of at least the threshold in bytes are stored deflated. Values in an existing table must have been written
+    // with compression enabled, as every stored value gains a header.
+    public DbTableBuilder withValueCompression(int threshold) {
+        this.valueMapperFactory = new CompressingFieldMapperFactory(threshold);
+        return this;
+    }
+
+    DbHandles getHandles() {
+        return handles;
+    }
+
+    boolean isLockingWrites() {
+        return lockingWrites;
+    }
+
+    int getBatchSize() {
+        return batchSize;
+    }
+
+    boolean isBatchCommits() {
+        return batchCommits;
+    }
+
+    boolean isMultiRowInserts() {
+        return multiRowInserts;
+    }
+
+    int getFetchSize() {
+        return fetchSize;
+    }
+
+    int getPageSize() {
+        return pageSize;
+    }
+
+    SizeMode getSizeMode() {
+        return sizeMode;
+    }
+
+    long getGroupCommitWindow() {
+        return groupCommitWindow;
+    }
+
+    IndexProfile getIndexProfile() {
+        return indexProfile;
+    }
+
+    SqlDialect getDialect() {
+        return dialect;
+    }
+
+    ByteArrayFieldMapperFactory getValueMapperFactory() {
+        return valueMapperFactory;
+    }
+
+    public DbTable build(String tableName) {
+        checkState(!multiRowInserts || batchSize != BatchWriter.UNBOUNDED, "multi-row inserts require a batch size");
+        return new DbTable(tableName, this);
+    }
+
+    // Stores keys and values through the given mappers, each in the column type it asks for. Group commit and value
+    // compression only apply to byte[] tables.
+    public <R, C, V> TypedDbTable<R, C, V> build(String tableName, FieldMapperFactory<R> rowMapperFactory, FieldMapperFactory<C> columnMapperFactory, FieldMapperFactory<V> valueMapperFactory) {
+        checkState(!multiRowInserts || batchSize != BatchWriter.UNBOUNDED, "multi-row inserts require a batch size");
+        checkState(groupCommitWindow == GroupCommitter.DISABLED, "group commit requires a byte[] table");
+        checkState(!(this.valueMapperFactory instanceof CompressingFieldMapperFactory), "value compression requires a byte[] table");
+        return new TypedDbTable<>(tableName, this, false, checkNotNull(rowMapperFactory), checkNotNull(columnMapperFactory), checkNotNull(valueMapperFactory));
+    }
+
+    // Spreads the table over partitions named <table>_p0 onwards in the same database, by a hash of the row key. A
+    // pooled table queries the partitions concurrently, a table with a single handle queries them in turn.
+    public ShardedDbTable buildPartitioned(String tableName, int partitions) {
+        checkArgument(partitions > 0, "partitions must be positive");
+        checkState(!multiRowInserts || batchSize != BatchWriter.UNBOUNDED, "multi-row inserts require a batch size");
+
+        final List<DbTable> tables = Lists.newArrayListWithCapacity(partitions);
+        for (int i = 0; i < partitions; i++) {
+            tables.add(new DbTable(String.format(PARTITION_NAME_FORMAT, tableName, i), this, true));
+        }
+
+        return handles.isShared() ? new ShardedDbTable(tables, MoreExecutors.sameThreadExecutor()) : ShardedDbTable.create(tables);
+    }
+}
@@ -0,0 +1,185 @@
+package com.jamierf.dbtable.core;
+
+import com.google.common.base.Function;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Table;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.jamierf.dbtable.core.mapper.result.field.FieldMapper;
+import org.skife.jdbi.v2.PreparedBatch;
+
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Commits puts and removes made concurrently by many threads together, in one batch and one transaction. The first
+ * writer to find no commit in progress waits for the window then commits everything queued, while the others block
+ * until a commit has included their write.
+ */
+class GroupCommitter {
+
+    static final long DISABLED = -1;
+
+    // Arrays don't implement equals or hashCode, so cells are keyed by wrapping buffers instead
+    private static Map.Entry<ByteBuffer, ByteBuffer> key(byte[] row, byte[] column) {
+        return Maps.immutableEntry(ByteBuffer.wrap(row), ByteBuffer.wrap(column));
+    }
+
+    private final DbContext context;
+    private final Function<Iterable<Map.Entry<byte[], byte[]>>, Table<byte[], byte[], byte[]>> reader;
+    private final FieldMapper<byte[]> valueMapper;
+    private final String replaceSql;
+    private final String removeSql;
+    private final long window;
+
+    private final Queue<PendingWrite> queue = new ConcurrentLinkedQueue<>();
+    private final Lock commitLock = new ReentrantLock();
+
+    GroupCommitter(DbContext context, Function<Iterable<Map.Entry<byte[], byte[]>>, Table<byte[], byte[], byte[]>> reader,
+                   FieldMapper<byte[]> valueMapper, String replaceSql, String removeSql, long window) {
+        this.context = context;
+        this.reader = reader;
+        this.valueMapper = valueMapper;
+        this.replaceSql = replaceSql;
+        this.removeSql = removeSql;
+        this.window = window;
+    }
+
+    // Returns the previous value of the cell, and a null value removes it
+    public byte[] write(byte[] row, byte[] column, @Nullable byte[] value) {
+        final PendingWrite write = new PendingWrite(row, column, value);
+        queue.add(write);
+
+        commitLock.lock();
+        try {
+            if (!write.previous.isDone()) {
+                if (window > 0) {
+                    Uninterruptibles.sleepUninterruptibly(window, TimeUnit.NANOSECONDS);
+                }
+
+                commit(drain());
+            }
+        }
+        finally {
+            commitLock.unlock();
+        }
+
+        try {
+            return Uninterruptibles.getUninterruptibly(write.previous);
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    private List<PendingWrite> drain() {
+        final List<PendingWrite> writes = Lists.newArrayList();
+        for (PendingWrite write = queue.poll(); write != null; write = queue.poll()) {
+            writes.add(write);
+        }
+
+        return writes;
+    }
+
+    private void commit(final List<PendingWrite> writes) {
+        try {
+            final List<byte[]> previous = context.inTransaction(new Callable<List<byte[]>>() {
+                @Override
+                public List<byte[]> call() {
+                    return apply(writes);
+                }
+            });
+
+            for (int i = 0; i < writes.size(); i++) {
+                writes.get(i).previous.set(previous.get(i));
+            }
+        } catch (RuntimeException e) {
+            for (PendingWrite write : writes) {
+                write.previous.setException(e);
+            }
+        }
+    }
+
+    private List<byte[]> apply(List<PendingWrite> writes) {
+        final Map<Map.Entry<ByteBuffer, ByteBuffer>, PendingWrite> cells = Maps.newLinkedHashMap();
+        final List<Map.Entry<byte[], byte[]>> keys = Lists.newArrayListWithCapacity(writes.size());
+        for (PendingWrite write : writes) {
+            if (cells.put(key(write.row, write.column), write) == null) {
+                keys.add(Maps.immutableEntry(write.row, write.column));
+            }
+        }
+
+        final Map<Map.Entry<ByteBuffer, ByteBuffer>, byte[]> stored = Maps.newHashMap();
+        for (Table.Cell<byte[], byte[], byte[]> cell : reader.apply(keys).cellSet()) {
+            stored.put(key(cell.getRowKey(), cell.getColumnKey()), cell.getValue());
+        }
+
+        // Later writes to a cell see the earlier writes in the same group as its previous value
+        final Map<Map.Entry<ByteBuffer, ByteBuffer>, byte[]> current = Maps.newHashMap(stored);
+        final List<byte[]> previous = Lists.newArrayListWithCapacity(writes.size());
+        for (PendingWrite write : writes) {
+            previous.add(current.put(key(write.row, write.column), write.value));
+        }
+
+        final List<Map.Entry<byte[], byte[]>> added = Lists.newArrayList();
+        final List<Map.Entry<byte[], byte[]>> removed = Lists.newArrayList();
+        try (HandleLease lease = context.lease()) {
+            final PreparedBatch replaces = lease.handle().prepareBatch(replaceSql);
+            final PreparedBatch removes = lease.handle().prepareBatch(removeSql);
+
+            // Only the last write to each cell reaches the database
+            for (Map.Entry<Map.Entry<ByteBuffer, ByteBuffer>, PendingWrite> cell : cells.entrySet()) {
+                final PendingWrite write = cell.getValue();
+                final boolean existed = stored.get(cell.getKey()) != null;
+
+                if (write.value != null) {
+                    replaces.add(write.row, write.column, valueMapper.encode(write.value));
+                    if (!existed) {
+                        added.add(Maps.immutableEntry(write.row, write.column));
+                    }
+                }
+                else if (existed) {
+                    removes.add(write.row, write.column);
+                    removed.add(Maps.immutableEntry(write.row, write.column));
+                }
+            }
+
+            if (replaces.size() > 0) {
+                replaces.execute();
+            }
+
+            if (removes.size() > 0) {
+                removes.execute();
+            }
+        }
+
+        // Several cells of a group may share a row or column, so sizes catch up for the whole group at once
+        context.getSizes().changed(added, removed);
+
+        return previous;
+    }
+
+    private static final class PendingWrite {
+
+        private final byte[] row;
+        private final byte[] column;
+        private final byte[] value;
+        private final SettableFuture<byte[]> previous = SettableFuture.create();
+
+        private PendingWrite(byte[] row, byte[] column, @Nullable byte[] value) {
+            this.row = row;
+            this.column = column;
+            this.value = value;
+        }
+    }
+}
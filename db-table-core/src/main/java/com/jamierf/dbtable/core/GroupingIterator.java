@@ -0,0 +1,63 @@
+package com.jamierf.dbtable.core;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Maps;
+import com.google.common.collect.PeekingIterator;
+import com.google.common.collect.Table;
+import com.google.common.collect.UnmodifiableIterator;
+
+import javax.annotation.Nullable;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * Groups consecutive cells of a scan ordered by row key into one entry per row, so every row is read by the
+ * same query. Each entry's map serves reads from the cells already read and writes through to the table. Column keys
+ * without a usable equals, such as byte arrays, need an ordering to be looked up by.
+ */
+final class GroupingIterator<R, C, V> extends UnmodifiableIterator<Map.Entry<R, Map<C, V>>> implements CloseableIterator<Map.Entry<R, Map<C, V>>> {
+
+    private final CloseableIterator<Table.Cell<R, C, V>> cells;
+    private final PeekingIterator<Table.Cell<R, C, V>> peekingCells;
+    private final Function<R, Map<C, V>> liveMaps;
+    private final Comparator<? super C> columnOrder;
+
+    GroupingIterator(CloseableIterator<Table.Cell<R, C, V>> cells, Function<R, Map<C, V>> liveMaps, @Nullable Comparator<? super C> columnOrder) {
+        this.cells = cells;
+        this.liveMaps = liveMaps;
+        this.columnOrder = columnOrder;
+
+        peekingCells = Iterators.peekingIterator(cells);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return peekingCells.hasNext();
+    }
+
+    @Override
+    public Map.Entry<R, Map<C, V>> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        final R key = peekingCells.peek().getRowKey();
+        final ImmutableMap.Builder<C, V> group = columnOrder == null ? ImmutableMap.<C, V>builder() : new ImmutableSortedMap.Builder<C, V>(columnOrder);
+        while (peekingCells.hasNext() && Objects.deepEquals(key, peekingCells.peek().getRowKey())) {
+            final Table.Cell<R, C, V> cell = peekingCells.next();
+            group.put(cell.getColumnKey(), cell.getValue());
+        }
+
+        return Maps.immutableEntry(key, (Map<C, V>) new SnapshotMap<>(group.build(), liveMaps.apply(key)));
+    }
+
+    @Override
+    public void close() {
+        cells.close();
+    }
+}
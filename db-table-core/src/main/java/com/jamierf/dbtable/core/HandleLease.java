@@ -0,0 +1,13 @@
+package com.jamierf.dbtable.core;
+
+import org.skife.jdbi.v2.Handle;
+
+import java.io.Closeable;
+
+interface HandleLease extends Closeable {
+
+    Handle handle();
+
+    @Override
+    void close();
+}
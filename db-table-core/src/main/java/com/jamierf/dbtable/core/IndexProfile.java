@@ -0,0 +1,14 @@
+package com.jamierf.dbtable.core;
+
+public enum IndexProfile {
+    /**
+     * Only the (row_field, column_field) primary key. Column lookups and scans read the whole table.
+     */
+    PRIMARY_KEY,
+
+    /**
+     * Adds a (column_field, row_field) index, so column lookups and scans are index seeks at the cost of a second
+     * index update on every write. Existing tables are given the index when first opened.
+     */
+    COLUMN_INDEXED
+}
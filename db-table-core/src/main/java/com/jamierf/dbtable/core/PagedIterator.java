@@ -0,0 +1,106 @@
+package com.jamierf.dbtable.core;
+
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.UnmodifiableIterator;
+import org.skife.jdbi.v2.Query;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
+
+import javax.annotation.Nullable;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+final class PagedIterator<T> extends UnmodifiableIterator<T> implements ResumableIterator<T> {
+
+    private final DbContext context;
+    private final DbPages pages;
+    private final int pageSize;
+    private final ResultSetMapper<Map.Entry<ContinuationToken, T>> mapper;
+
+    private ContinuationToken token;
+    private Iterator<Map.Entry<ContinuationToken, T>> page = Iterators.emptyIterator();
+    private boolean lastPage = false;
+
+    PagedIterator(DbContext context, DbPages pages, int pageSize, final ResultSetMapper<T> elementMapper, @Nullable ContinuationToken token) {
+        checkArgument(token == null || token.getKey().size() == pages.pageFields().size(), "token does not match this scan");
+
+        this.context = context;
+        this.pages = pages;
+        this.pageSize = pageSize;
+        this.token = token;
+
+        mapper = new ResultSetMapper<Map.Entry<ContinuationToken, T>>() {
+            @Override
+            public Map.Entry<ContinuationToken, T> map(int index, ResultSet r, StatementContext ctx) throws SQLException {
+                final List<byte[]> key = Lists.newArrayListWithCapacity(PagedIterator.this.pages.pageFields().size());
+                for (String pageField : PagedIterator.this.pages.pageFields()) {
+                    key.add(r.getBytes(pageField));
+                }
+
+                return Maps.immutableEntry(new ContinuationToken(key), elementMapper.map(index, r, ctx));
+            }
+        };
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!page.hasNext()) {
+            if (lastPage) {
+                return false;
+            }
+
+            fetch();
+        }
+
+        return true;
+    }
+
+    private void fetch() {
+        final List<Map.Entry<ContinuationToken, T>> results;
+        try (HandleLease lease = context.lease()) {
+            final Query<Map<String, Object>> query = lease.handle().createQuery(token == null ? pages.first() : pages.next());
+            if (token != null) {
+                for (int i = 0; i < token.getKey().size(); i++) {
+                    query.bind(pages.afterFields().get(i), token.getKey().get(i));
+                }
+            }
+
+            results = query.bind("limit", pageSize)
+                    .map(mapper)
+                    .list();
+        }
+
+        lastPage = results.size() < pageSize;
+        page = results.iterator();
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        final Map.Entry<ContinuationToken, T> entry = page.next();
+        token = entry.getKey();
+        return entry.getValue();
+    }
+
+    @Override
+    public ContinuationToken getContinuationToken() {
+        return token;
+    }
+
+    @Override
+    public void close() {
+        page = Iterators.emptyIterator();
+        lastPage = true;
+    }
+}
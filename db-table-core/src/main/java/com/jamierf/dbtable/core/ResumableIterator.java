@@ -0,0 +1,17 @@
+package com.jamierf.dbtable.core;
+
+import javax.annotation.Nullable;
+
+/**
+ * A paginated scan. Each page is a separate, short query ordered by the primary key, so no cursor is held
+ * between pages.
+ */
+public interface ResumableIterator<T> extends CloseableIterator<T> {
+
+    /**
+     * The token to resume this scan after the last element returned by {@link #next()}, or the token the scan
+     * was started from if nothing has been returned yet.
+     */
+    @Nullable
+    ContinuationToken getContinuationToken();
+}
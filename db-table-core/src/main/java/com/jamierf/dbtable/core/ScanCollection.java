@@ -0,0 +1,9 @@
+package com.jamierf.dbtable.core;
+
+import java.util.Collection;
+
+public interface ScanCollection<T> extends Collection<T> {
+
+    @Override
+    CloseableIterator<T> iterator();
+}
@@ -0,0 +1,6 @@
+package com.jamierf.dbtable.core;
+
+import java.util.Set;
+
+public interface ScanSet<T> extends Set<T>, ScanCollection<T> {
+}
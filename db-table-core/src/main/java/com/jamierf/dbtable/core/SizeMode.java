@@ -0,0 +1,19 @@
+package com.jamierf.dbtable.core;
+
+public enum SizeMode {
+    /**
+     * Count the table on every call.
+     */
+    QUERY,
+
+    /**
+     * Keep exact counts in a side table, updated in the same transaction as every write.
+     */
+    COUNTER,
+
+    /**
+     * Estimate counts from the database statistics. Cheap, but only as fresh as the last statistics update. Dialects
+     * without statistics to estimate from count the table as QUERY does.
+     */
+    APPROXIMATE
+}
@@ -0,0 +1,191 @@
+package com.jamierf.dbtable.core;
+
+import com.google.common.collect.ForwardingMap;
+import com.google.common.collect.ForwardingMapEntry;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Reads from a snapshot of a map until it is first modified, after which everything goes to the live map. Writes
+ * through any of its views, iterators or entries go to the live map, the same as writes to the map itself.
+ */
+class SnapshotMap<K, V> extends ForwardingMap<K, V> {
+
+    private final Map<K, V> snapshot;
+    private final Map<K, V> live;
+
+    private boolean modified = false;
+
+    SnapshotMap(Map<K, V> snapshot, Map<K, V> live) {
+        this.snapshot = snapshot;
+        this.live = live;
+    }
+
+    @Override
+    protected Map<K, V> delegate() {
+        return modified ? live : snapshot;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        modified = true;
+        return live.put(key, value);
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> map) {
+        modified = true;
+        live.putAll(map);
+    }
+
+    @Override
+    public V remove(Object key) {
+        modified = true;
+        return live.remove(key);
+    }
+
+    @Override
+    public void clear() {
+        modified = true;
+        live.clear();
+    }
+
+    // Keys and values without a usable equals, such as byte arrays, are only matched by the live views
+    @Override
+    public Set<K> keySet() {
+        return new StandardKeySet() {
+            @Override
+            public boolean remove(Object key) {
+                modified = true;
+                return live.keySet().remove(key);
+            }
+
+            @Override
+            public boolean removeAll(Collection<?> keys) {
+                modified = true;
+                return live.keySet().removeAll(keys);
+            }
+
+            @Override
+            public boolean retainAll(Collection<?> keys) {
+                modified = true;
+                return live.keySet().retainAll(keys);
+            }
+        };
+    }
+
+    @Override
+    public Collection<V> values() {
+        return new StandardValues() {
+            @Override
+            public boolean remove(Object value) {
+                modified = true;
+                return live.values().remove(value);
+            }
+
+            @Override
+            public boolean removeAll(Collection<?> values) {
+                modified = true;
+                return live.values().removeAll(values);
+            }
+
+            @Override
+            public boolean retainAll(Collection<?> values) {
+                modified = true;
+                return live.values().retainAll(values);
+            }
+        };
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new StandardEntrySet() {
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                return modified ? live.entrySet().iterator() : new SnapshotIterator(snapshot.entrySet().iterator());
+            }
+
+            @Override
+            public boolean remove(Object entry) {
+                modified = true;
+                return live.entrySet().remove(entry);
+            }
+
+            @Override
+            public boolean removeAll(Collection<?> entries) {
+                modified = true;
+                return live.entrySet().removeAll(entries);
+            }
+
+            @Override
+            public boolean retainAll(Collection<?> entries) {
+                modified = true;
+                return live.entrySet().retainAll(entries);
+            }
+        };
+    }
+
+    // Carries on through the snapshot once the map has been modified, as the entries it would have read are gone
+    private final class SnapshotIterator implements Iterator<Entry<K, V>> {
+
+        private final Iterator<Entry<K, V>> entries;
+
+        private Entry<K, V> last;
+
+        private SnapshotIterator(Iterator<Entry<K, V>> entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return entries.hasNext();
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            final Entry<K, V> entry = entries.next();
+            last = entry;
+            return new ForwardingMapEntry<K, V>() {
+                private V value = entry.getValue();
+
+                @Override
+                protected Entry<K, V> delegate() {
+                    return entry;
+                }
+
+                @Override
+                public V getValue() {
+                    return value;
+                }
+
+                @Override
+                public V setValue(V value) {
+                    this.value = value;
+                    return put(entry.getKey(), value);
+                }
+
+                @Override
+                public boolean equals(Object object) {
+                    return standardEquals(object);
+                }
+
+                @Override
+                public int hashCode() {
+                    return standardHashCode();
+                }
+            };
+        }
+
+        @Override
+        public void remove() {
+            checkState(last != null, "no entry to remove");
+            SnapshotMap.this.remove(last.getKey());
+            last = null;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.jamierf.dbtable.core;
+
+import com.google.common.base.Throwables;
+import org.skife.jdbi.v2.Handle;
+
+import java.util.concurrent.Callable;
+
+final class Transactions {
+
+    // Joins the caller's transaction if there is one, rather than committing it early
+    static <T> T inTransaction(Handle handle, Callable<T> operation) {
+        final boolean nested = handle.isInTransaction();
+        if (!nested) {
+            handle.begin();
+        }
+
+        try {
+            final T result = operation.call();
+            if (!nested) {
+                handle.commit();
+            }
+
+            return result;
+        } catch (Exception e) {
+            if (!nested) {
+                handle.rollback();
+            }
+
+            throw Throwables.propagate(e);
+        }
+    }
+
+    private Transactions() {}
+}
@@ -0,0 +1,682 @@
+package com.jamierf.dbtable.core;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.Table;
+import com.google.common.collect.Tables;
+import com.google.common.collect.TreeBasedTable;
+import com.google.common.primitives.UnsignedBytes;
+import com.jamierf.dbtable.core.mapper.result.field.ByteArrayFieldMapper;
+import com.jamierf.dbtable.core.mapper.result.field.FieldMapper;
+import com.jamierf.dbtable.core.mapper.result.field.FieldMapperFactory;
+import com.jamierf.dbtable.core.mapper.result.map.MapEntryMapper;
+import com.jamierf.dbtable.core.mapper.result.table.TableCellMapper;
+import com.jamierf.dbtable.core.mapper.result.table.TableCellMapperFactory;
+import com.jamierf.dbtable.core.mapper.selection.FieldSelectionMapFactory;
+import com.jamierf.dbtable.core.mapper.selection.SelectionMap;
+import com.jamierf.dbtable.core.mapper.selection.TableCellSelectionMapFactory;
+import com.jamierf.dbtable.core.sql.FieldType;
+import com.jamierf.dbtable.core.sql.SqlDialect;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.PreparedBatch;
+import org.skife.jdbi.v2.Query;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.util.IntegerMapper;
+
+import javax.annotation.Nullable;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * A table whose row keys, column keys and values are stored through the given field mappers, each in the column type
+ * its mapper asks for. Keys of a native type are compared, ordered and indexed by the database as that type.
+ */
+public class TypedDbTable<R, C, V> implements Table<R, C, V> {
+
+    static final int MAX_KEYS_PER_QUERY = 500;
+
+    // Byte array keys have no usable equals or natural order, so are ordered as unsigned bytes as the database does
+    @SuppressWarnings("unchecked")
+    private static <T> Comparator<? super T> keyOrder(FieldMapper<T> mapper) {
+        return mapper instanceof ByteArrayFieldMapper ? (Comparator<? super T>) UnsignedBytes.lexicographicalComparator() : null;
+    }
+
+    final String tableName;
+    final DbHandles handles;
+    final SqlDialect dialect;
+    final boolean lockingWrites;
+    private final boolean truncatingClears;
+    final DbSizes sizes;
+    private final BatchWriter batchWriter;
+    final DbContext context;
+    final TableCellMapper<R, C, V> tableCellMapper;
+    private final FieldMapper<R> rowFieldMapper;
+    private final FieldMapper<C> columnFieldMapper;
+    final FieldMapper<V> valueMapper;
+    private final FieldSelectionMapFactory<R> rowKeys;
+    private final FieldSelectionMapFactory<C> columnKeys;
+    private final FieldSelectionMapFactory<V> valueKeys;
+    private final TableCellSelectionMapFactory<R, C, V> cellKeys;
+    private final Function<Cell<? extends R, ? extends C, ? extends V>, Cell<?, ?, ?>> encodeCell;
+    private final MapEntryMapper<C, V> rowMapper;
+    private final MapEntryMapper<R, V> columnMapper;
+    private final MapEntryMapper<R, Map<C, V>> rowMapMapper;
+    private final MapEntryMapper<C, Map<R, V>> columnMapMapper;
+    private final TableCellMapper<C, R, V> transposedCellMapper;
+    private final Function<R, Map<C, V>> rows;
+    private final Function<C, Map<R, V>> columns;
+
+    private final DbStatements tableStatements;
+    private final DbStatements rowStatements;
+    private final DbStatements columnStatements;
+
+    final DbPages cellPages;
+    final DbPages rowKeyPages;
+    final DbPages columnKeyPages;
+
+    private final String containsSql;
+    private final String containsForUpdateSql;
+    private final String containsRowSql;
+    private final String containsColumnSql;
+    private final String containsValueSql;
+    final String getSql;
+    private final String getForUpdateSql;
+    private final String getAllSql;
+    private final String isEmptySql;
+    private final String clearSql;
+    private final String truncateSql;
+    final String replaceSql;
+    final String removeSql;
+
+    TypedDbTable(String tableName, DbTableBuilder builder, boolean truncatingClears,
+                 FieldMapperFactory<R> rowMapperFactory, FieldMapperFactory<C> columnMapperFactory, FieldMapperFactory<V> valueMapperFactory) {
+        this.tableName = Preconditions.checkNotNull(tableName);
+        this.handles = builder.getHandles();
+        this.dialect = builder.getDialect();
+        this.truncatingClears = truncatingClears;
+
+        final TableCellMapperFactory<R, C, V> tableCellMapperFactory = new TableCellMapperFactory<>(rowMapperFactory, columnMapperFactory, valueMapperFactory);
+        tableCellMapper = tableCellMapperFactory.build("row_field", "column_field", "value_field");
+        rowFieldMapper = tableCellMapper.getRowMapper();
+        columnFieldMapper = tableCellMapper.getColumnMapper();
+        valueMapper = tableCellMapper.getValueMapper();
+
+        createTableIfRequired(builder.getIndexProfile());
+
+        lockingWrites = builder.isLockingWrites();
+        sizes = DbSizes.create(builder.getSizeMode(), handles, tableName, dialect);
+        batchWriter = new BatchWriter(handles, sizes, tableName, dialect, rowFieldMapper.getFieldType(), columnFieldMapper.getFieldType(),
+                builder.getBatchSize(), builder.isBatchCommits(), builder.isMultiRowInserts());
+        context = new DbContext(handles, batchWriter, sizes, dialect, builder.getFetchSize(), builder.getPageSize());
+
+        rowKeys = new FieldSelectionMapFactory<>(rowFieldMapper);
+        columnKeys = new FieldSelectionMapFactory<>(columnFieldMapper);
+        valueKeys = new FieldSelectionMapFactory<>(valueMapper);
+        cellKeys = new TableCellSelectionMapFactory<>(tableCellMapper);
+        encodeCell = new Function<Cell<? extends R, ? extends C, ? extends V>, Cell<?, ?, ?>>() {
+            @Override
+            public Cell<?, ?, ?> apply(Cell<? extends R, ? extends C, ? extends V> cell) {
+                return Tables.immutableCell(encodeRow(cell.getRowKey()), encodeColumn(cell.getColumnKey()), valueMapper.encode(cell.getValue()));
+            }
+        };
+        rowMapper = new MapEntryMapper<>(columnFieldMapper, valueMapper);
+        columnMapper = new MapEntryMapper<>(rowFieldMapper, valueMapper);
+        rowMapMapper = new MapEntryMapper<>(rowFieldMapper, new FieldMapper<Map<C, V>>("column_field, value_field") {
+            @Override
+            public Map<C, V> map(int index, ResultSet r, StatementContext ctx) throws SQLException {
+                return row(rowFieldMapper.map(index, r, ctx));
+            }
+        });
+        columnMapMapper = new MapEntryMapper<>(columnFieldMapper, new FieldMapper<Map<R, V>>("row_field, value_field") {
+            @Override
+            public Map<R, V> map(int index, ResultSet r, StatementContext ctx) throws SQLException {
+                return column(columnFieldMapper.map(index, r, ctx));
+            }
+        });
+        transposedCellMapper = new TableCellMapper<>(columnFieldMapper, rowFieldMapper, valueMapper);
+        rows = new Function<R, Map<C, V>>() {
+            @Override
+            public Map<C, V> apply(R row) {
+                return row(row);
+            }
+        };
+        columns = new Function<C, Map<R, V>>() {
+            @Override
+            public Map<R, V> apply(C column) {
+                return column(column);
+            }
+        };
+
+        tableStatements = new DbStatements(tableName, dialect, SelectionMap.NONE.asSql(), cellKeys);
+        rowStatements = new DbStatements(tableName, dialect, rowKeys.keySql(), columnKeys);
+        columnStatements = new DbStatements(tableName, dialect, columnKeys.keySql(), rowKeys);
+
+        // Continuation tokens hold keys as bytes, so only binary keys can be paged through
+        final boolean pagedKeys = rowFieldMapper.getFieldType() == FieldType.BINARY && columnFieldMapper.getFieldType() == FieldType.BINARY;
+        cellPages = pagedKeys ? new DbPages(tableName, dialect, "SELECT row_field, column_field, value_field", "row_field", "column_field") : null;
+        rowKeyPages = pagedKeys ? new DbPages(tableName, dialect, "SELECT DISTINCT row_field", "row_field") : null;
+        columnKeyPages = pagedKeys ? new DbPages(tableName, dialect, "SELECT DISTINCT column_field", "column_field") : null;
+
+        containsSql = String.format("SELECT 1 FROM %s WHERE row_field = :row_field AND column_field = :column_field", tableName);
+        containsForUpdateSql = dialect.forUpdate(containsSql);
+        containsRowSql = String.format("SELECT 1 FROM %s WHERE row_field = :row_field", tableName);
+        containsColumnSql = String.format("SELECT 1 FROM %s WHERE column_field = :column_field", tableName);
+        containsValueSql = String.format("SELECT 1 FROM %s WHERE value_field = :value_field", tableName);
+        getSql = String.format("SELECT value_field FROM %s WHERE row_field = :row_field AND column_field = :column_field", tableName);
+        getForUpdateSql = dialect.forUpdate(getSql);
+        getAllSql = dialect.selectKeys(tableName, MAX_KEYS_PER_QUERY, rowFieldMapper.getFieldType(), columnFieldMapper.getFieldType());
+        isEmptySql = String.format("SELECT 1 FROM %s", tableName);
+        clearSql = String.format("DELETE FROM %s", tableName);
+        truncateSql = dialect.truncate(tableName);
+        replaceSql = dialect.upsert(tableName, "(:row_field, :column_field, :value_field)");
+        removeSql = String.format("DELETE FROM %s WHERE row_field = :row_field AND column_field = :column_field", tableName);
+    }
+
+    private void createTableIfRequired(IndexProfile indexProfile) {
+        try (HandleLease lease = handles.lease()) {
+            lease.handle().execute(dialect.createTable(tableName, rowFieldMapper.getFieldType(), columnFieldMapper.getFieldType(), valueMapper.getFieldType()));
+
+            if (indexProfile == IndexProfile.COLUMN_INDEXED && !hasColumnIndex(lease.handle())) {
+                lease.handle().execute(dialect.createIndex(tableName + "_column_index", tableName, "column_field, row_field"));
+            }
+        }
+    }
+
+    // Any index leading with (column_field, row_field) will do, including one created outside of this class
+    private boolean hasColumnIndex(Handle handle) {
+        try {
+            final DatabaseMetaData metaData = handle.getConnection().getMetaData();
+            final String storedName = metaData.storesUpperCaseIdentifiers() ? tableName.toUpperCase()
+                    : metaData.storesLowerCaseIdentifiers() ? tableName.toLowerCase() : tableName;
+
+            final Table<String, Short, String> indexColumns = TreeBasedTable.create();
+            try (ResultSet indexInfo = metaData.getIndexInfo(null, null, storedName, false, false)) {
+                while (indexInfo.next()) {
+                    if (indexInfo.getString("INDEX_NAME") != null) {
+                        indexColumns.put(indexInfo.getString("INDEX_NAME"), indexInfo.getShort("ORDINAL_POSITION"), indexInfo.getString("COLUMN_NAME"));
+                    }
+                }
+            }
+
+            for (Map<Short, String> columns : indexColumns.rowMap().values()) {
+                final List<String> names = ImmutableList.copyOf(columns.values());
+                if (names.size() >= 2 && names.get(0).equalsIgnoreCase("column_field") && names.get(1).equalsIgnoreCase("row_field")) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+        catch (SQLException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    // Keys are bound in the form they're stored in
+    @SuppressWarnings("unchecked")
+    Object encodeRow(Object row) {
+        return row == null ? null : rowFieldMapper.encode((R) row);
+    }
+
+    @SuppressWarnings("unchecked")
+    Object encodeColumn(Object column) {
+        return column == null ? null : columnFieldMapper.encode((C) column);
+    }
+
+    // Whether the table was built from a single handle, so can't be used by several threads at once
+    public boolean isSharedHandle() {
+        return handles.isShared();
+    }
+
+    @Override
+    public boolean contains(Object row, Object column) {
+        return containsCell(encodeRow(row), encodeColumn(column));
+    }
+
+    boolean containsCell(Object rowKey, Object columnKey) {
+        try (HandleLease lease = context.lease()) {
+            return lease.handle().createQuery(containsSql)
+                    .bind("row_field", rowKey)
+                    .bind("column_field", columnKey)
+                    .map(IntegerMapper.FIRST)
+                    .first() != null;
+        }
+    }
+
+    @Override
+    public boolean containsRow(Object row) {
+        try (HandleLease lease = context.lease()) {
+            return lease.handle().createQuery(containsRowSql)
+                    .bind("row_field", encodeRow(row))
+                    .map(IntegerMapper.FIRST)
+                    .first() != null;
+        }
+    }
+
+    @Override
+    public boolean containsColumn(Object column) {
+        try (HandleLease lease = context.lease()) {
+            return lease.handle().createQuery(containsColumnSql)
+                    .bind("column_field", encodeColumn(column))
+                    .map(IntegerMapper.FIRST)
+                    .first() != null;
+        }
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        try (HandleLease lease = context.lease()) {
+            return valueKeys.bindKey(lease.handle().createQuery(containsValueSql), value)
+                    .map(IntegerMapper.FIRST)
+                    .first() != null;
+        }
+    }
+
+    @Override
+    public V get(Object row, Object column) {
+        return getCell(encodeRow(row), encodeColumn(column));
+    }
+
+    private V getCell(Object rowKey, Object columnKey) {
+        try (HandleLease lease = context.lease()) {
+            return lease.handle().createQuery(getSql)
+                    .bind("row_field", rowKey)
+                    .bind("column_field", columnKey)
+                    .map(valueMapper)
+                    .first();
+        }
+    }
+
+    // Byte array keys have no usable equals, so the result is keyed by their contents, as the database does
+    private Table<R, C, V> newResultTable() {
+        final Comparator<? super R> rowOrder = keyOrder(rowFieldMapper);
+        final Comparator<? super C> columnOrder = keyOrder(columnFieldMapper);
+        if (rowOrder == null && columnOrder == null) {
+            return HashBasedTable.create();
+        }
+
+        return TreeBasedTable.<R, C, V>create(orNatural(rowOrder), orNatural(columnOrder));
+    }
+
+    // Keys other than byte arrays are assumed comparable
+    @SuppressWarnings("unchecked")
+    private static <T> Comparator<? super T> orNatural(Comparator<? super T> order) {
+        if (order == null) {
+            return (Comparator<? super T>) (Comparator) Ordering.natural();
+        }
+
+        return order;
+    }
+
+    // Encodes the keys, dropping any repeated so each is only selected once
+    private static List<Object> encodeDistinct(Iterable<?> keys, Function<Object, Object> encoder) {
+        final Map<Object, Object> encoded = Maps.newLinkedHashMap();
+        for (Object key : keys) {
+            final Object value = encoder.apply(key);
+            encoded.put(DbSizes.contentKey(value), value);
+        }
+
+        return ImmutableList.copyOf(encoded.values());
+    }
+
+    public Table<R, C, V> getAll(Iterable<R> rows, Iterable<C> columns) {
+        final Table<R, C, V> result = newResultTable();
+
+        final List<Object> rowKeys = encodeDistinct(rows, new Function<Object, Object>() {
+            @Override
+            public Object apply(Object row) {
+                return encodeRow(row);
+            }
+        });
+        final List<Object> columnKeys = encodeDistinct(columns, new Function<Object, Object>() {
+            @Override
+            public Object apply(Object column) {
+                return encodeColumn(column);
+            }
+        });
+
+        try (HandleLease lease = context.lease()) {
+            for (List<Object> rowBatch : Lists.partition(rowKeys, MAX_KEYS_PER_QUERY)) {
+                for (List<Object> columnBatch : Lists.partition(columnKeys, MAX_KEYS_PER_QUERY)) {
+                    final SelectionMap selection = new SelectionMap(ImmutableMap.<String, Object>of(
+                            "row_field", rowBatch,
+                            "column_field", columnBatch
+                    ), dialect);
+
+                    final List<Cell<R, C, V>> cells = lease.handle().createQuery(tableStatements.selectIn(selection))
+                            .bindFromMap(selection.asMap())
+                            .map(tableCellMapper)
+                            .list();
+
+                    for (Cell<R, C, V> cell : cells) {
+                        result.put(cell.getRowKey(), cell.getColumnKey(), cell.getValue());
+                    }
+                }
+            }
+        }
+
+        return Tables.unmodifiableTable(result);
+    }
+
+    // Selects only the requested cells, by whichever key lookup the dialect does best
+    public Table<R, C, V> getAll(Iterable<? extends Map.Entry<R, C>> keys) {
+        final Table<R, C, V> result = newResultTable();
+
+        final Map<Map.Entry<Object, Object>, Map.Entry<Object, Object>> distinct = Maps.newLinkedHashMap();
+        for (Map.Entry<R, C> key : keys) {
+            final Object row = encodeRow(key.getKey());
+            final Object column = encodeColumn(key.getValue());
+            distinct.put(Maps.immutableEntry(DbSizes.contentKey(row), DbSizes.contentKey(column)), Maps.immutableEntry(row, column));
+        }
+
+        try (HandleLease lease = context.lease()) {
+            for (List<Map.Entry<Object, Object>> batch : Iterables.partition(distinct.values(), MAX_KEYS_PER_QUERY)) {
+                final Query<Map<String, Object>> query = lease.handle().createQuery(batch.size() == MAX_KEYS_PER_QUERY ? getAllSql
+                        : dialect.selectKeys(tableName, batch.size(), rowFieldMapper.getFieldType(), columnFieldMapper.getFieldType()));
+                dialect.bindKeys(query, batch);
+
+                final List<Cell<R, C, V>> cells = query
+                        .map(tableCellMapper)
+                        .list();
+
+                for (Cell<R, C, V> cell : cells) {
+                    result.put(cell.getRowKey(), cell.getColumnKey(), cell.getValue());
+                }
+            }
+        }
+
+        return Tables.unmodifiableTable(result);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        try (HandleLease lease = context.lease()) {
+            return lease.handle().createQuery(isEmptySql)
+                    .map(IntegerMapper.FIRST)
+                    .first() == null;
+        }
+    }
+
+    @Override
+    public int size() {
+        return sizes.cells();
+    }
+
+    @Override
+    public void clear() {
+        // Truncating commits straight away, so only when the clear doesn't need to be part of a transaction
+        if (truncatingClears && !sizes.isMaintained() && !handles.isInTransaction()) {
+            try (HandleLease lease = context.lease()) {
+                lease.handle().execute(truncateSql);
+            }
+
+            return;
+        }
+
+        context.write(new Callable<Void>() {
+            @Override
+            public Void call() {
+                try (HandleLease lease = context.lease()) {
+                    lease.handle().execute(clearSql);
+                }
+                sizes.changed();
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public V put(@Nullable R row, @Nullable C column, @Nullable final V value) {
+        final Object rowKey = encodeRow(row);
+        final Object columnKey = encodeColumn(column);
+
+        if (!lockingWrites && !sizes.isMaintained()) {
+            final V result = getCell(rowKey, columnKey);
+            replace(rowKey, columnKey, value);
+            return result;
+        }
+
+        return context.inTransaction(new Callable<V>() {
+            @Override
+            public V call() {
+                final V result = lockingWrites ? getForUpdate(rowKey, columnKey) : getCell(rowKey, columnKey);
+                replace(rowKey, columnKey, value);
+                if (result == null) {
+                    sizes.added(rowKey, columnKey);
+                }
+
+                return result;
+            }
+        });
+    }
+
+    public void set(@Nullable R row, @Nullable C column, @Nullable V value) {
+        if (sizes.isMaintained()) {
+            // Maintained sizes need to know whether the cell is new
+            put(row, column, value);
+            return;
+        }
+
+        replace(encodeRow(row), encodeColumn(column), value);
+    }
+
+    private void replace(Object rowKey, Object columnKey, V value) {
+        try (HandleLease lease = context.lease()) {
+            lease.handle().insert(replaceSql, rowKey, columnKey, valueMapper.encode(value));
+        }
+    }
+
+    @Override
+    public void putAll(@Nullable Table<? extends R, ? extends C, ? extends V> table) {
+        batchWriter.putAll(Iterables.transform(table.cellSet(), encodeCell));
+    }
+
+    @Override
+    public V remove(Object row, Object column) {
+        final Object rowKey = encodeRow(row);
+        final Object columnKey = encodeColumn(column);
+
+        if (!lockingWrites && !sizes.isMaintained()) {
+            final V result = getCell(rowKey, columnKey);
+            deleteCell(rowKey, columnKey);
+            return result;
+        }
+
+        return context.inTransaction(new Callable<V>() {
+            @Override
+            public V call() {
+                final V result = lockingWrites ? getForUpdate(rowKey, columnKey) : getCell(rowKey, columnKey);
+                if (deleteCell(rowKey, columnKey)) {
+                    sizes.removed(rowKey, columnKey);
+                }
+
+                return result;
+            }
+        });
+    }
+
+    public boolean delete(Object row, Object column) {
+        final Object rowKey = encodeRow(row);
+        final Object columnKey = encodeColumn(column);
+
+        return context.write(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                final boolean deleted = deleteCell(rowKey, columnKey);
+                if (deleted) {
+                    sizes.removed(rowKey, columnKey);
+                }
+
+                return deleted;
+            }
+        });
+    }
+
+    // Deletes the cell at each key in a single batch, returning how many there were
+    public int deleteAll(Iterable<? extends Map.Entry<? extends R, ? extends C>> keys) {
+        final List<Map.Entry<Object, Object>> encoded = Lists.newArrayList();
+        for (Map.Entry<? extends R, ? extends C> key : keys) {
+            encoded.add(Maps.immutableEntry(encodeRow(key.getKey()), encodeColumn(key.getValue())));
+        }
+
+        if (encoded.isEmpty()) {
+            return 0;
+        }
+
+        return context.write(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                try (HandleLease lease = context.lease()) {
+                    final PreparedBatch batch = lease.handle().prepareBatch(removeSql);
+                    for (Map.Entry<Object, Object> key : encoded) {
+                        batch.add(key.getKey(), key.getValue());
+                    }
+
+                    final int[] counts = batch.execute();
+
+                    int deleted = 0;
+                    final List<Map.Entry<Object, Object>> removed = Lists.newArrayList();
+                    for (int i = 0; i < counts.length; i++) {
+                        deleted += counts[i];
+                        if (counts[i] > 0) {
+                            removed.add(encoded.get(i));
+                        }
+                    }
+
+                    sizes.changed(Collections.<Map.Entry<Object, Object>>emptyList(), removed);
+                    return deleted;
+                }
+            }
+        });
+    }
+
+    // Deletes the keys and writes the cells in one transaction, so either every change is made or none are
+    public void writeAll(final Table<? extends R, ? extends C, ? extends V> puts, final Iterable<? extends Map.Entry<? extends R, ? extends C>> deletes) {
+        context.inTransaction(new Callable<Void>() {
+            @Override
+            public Void call() {
+                deleteAll(deletes);
+                putAll(puts);
+                return null;
+            }
+        });
+    }
+
+    private boolean deleteCell(Object rowKey, Object columnKey) {
+        try (HandleLease lease = context.lease()) {
+            return lease.handle().update(removeSql, rowKey, columnKey) > 0;
+        }
+    }
+
+    boolean containsForUpdate(Object rowKey, Object columnKey) {
+        try (HandleLease lease = context.lease()) {
+            return lease.handle().createQuery(containsForUpdateSql)
+                    .bind("row_field", rowKey)
+                    .bind("column_field", columnKey)
+                    .map(IntegerMapper.FIRST)
+                    .first() != null;
+        }
+    }
+
+    private V getForUpdate(Object rowKey, Object columnKey) {
+        try (HandleLease lease = context.lease()) {
+            return lease.handle().createQuery(getForUpdateSql)
+                    .bind("row_field", rowKey)
+                    .bind("column_field", columnKey)
+                    .map(valueMapper)
+                    .first();
+        }
+    }
+
+    @Override
+    public Map<C, V> row(@Nullable R row) {
+        return sortedRow(row);
+    }
+
+    DbSortedMap<C, V> sortedRow(@Nullable R row) {
+        return new DbSortedMap<>(rowStatements, context, SelectionMap.of("row_field", encodeRow(row)), columnKeys, rowMapper, keyOrder(columnFieldMapper));
+    }
+
+    @Override
+    public Map<R, V> column(@Nullable C column) {
+        return new DbMap<>(columnStatements, context, SelectionMap.of("column_field", encodeColumn(column)), rowKeys, columnMapper);
+    }
+
+    @Override
+    public ScanSet<Cell<R, C, V>> cellSet() {
+        return new DbSet<Cell<R, C, V>>(tableStatements, context, SelectionMap.NONE, cellKeys, tableCellMapper, cellPages) {
+            @Override
+            public int size() {
+                return sizes.cells();
+            }
+        };
+    }
+
+    @Override
+    public ScanSet<R> rowKeySet() {
+        return new DbSet<R>(tableStatements.forKeys(rowKeys), context, SelectionMap.NONE, rowKeys, rowFieldMapper, rowKeyPages) {
+            @Override
+            public int size() {
+                return sizes.rows();
+            }
+        };
+    }
+
+    @Override
+    public ScanSet<C> columnKeySet() {
+        return new DbSet<C>(tableStatements.forKeys(columnKeys), context, SelectionMap.NONE, columnKeys, columnFieldMapper, columnKeyPages) {
+            @Override
+            public int size() {
+                return sizes.columns();
+            }
+        };
+    }
+
+    @Override
+    public ScanCollection<V> values() {
+        return new DbCollection<V>(tableStatements.forKeys(valueKeys), context, SelectionMap.NONE, valueKeys, valueMapper, cellPages) {
+            @Override
+            public int size() {
+                return sizes.cells();
+            }
+        };
+    }
+
+    @Override
+    public Map<R, Map<C, V>> rowMap() {
+        return groupedRows();
+    }
+
+    DbGroupedMap<R, C, V> groupedRows() {
+        return new DbGroupedMap<R, C, V>(tableStatements.forKeys(rowKeys), context, rowKeys, rowMapMapper, tableCellMapper, rows, keyOrder(rowFieldMapper), keyOrder(columnFieldMapper)) {
+            @Override
+            public int size() {
+                return sizes.rows();
+            }
+        };
+    }
+
+    @Override
+    public Map<C, Map<R, V>> columnMap() {
+        return new DbGroupedMap<C, R, V>(tableStatements.forKeys(columnKeys), context, columnKeys, columnMapMapper, transposedCellMapper, columns, keyOrder(columnFieldMapper), keyOrder(rowFieldMapper)) {
+            @Override
+            public int size() {
+                return sizes.columns();
+            }
+        };
+    }
+}
@@ -0,0 +1,211 @@
+package com.jamierf.dbtable.core.async;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Table;
+import com.google.common.primitives.UnsignedBytes;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.jamierf.dbtable.core.DbTable;
+
+import java.io.Closeable;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs operations against a {@link DbTable} on an executor, so callers are never blocked on JDBC. The table should
+ * be built from a {@link org.skife.jdbi.v2.IDBI} unless the executor is single threaded, since a table built from a
+ * single handle can't be used by several threads at once. Tables built from a single handle are given a single thread
+ * by default.
+ * <p>
+ * At most {@code maxInFlight} operations may be queued or running at once, rather than queueing without bound.
+ * Further operations fail with a {@link RejectedExecutionException}, immediately by default, or once the caller has
+ * waited up to the given {@code maxWait} for one in flight to finish.
+ */
+public class AsyncDbTable implements Closeable {
+
+    public static final int DEFAULT_THREAD_COUNT = 16;
+    public static final int DEFAULT_MAX_IN_FLIGHT = 1024;
+
+    private static final String THREAD_NAME_FORMAT = "async-db-table-%d";
+
+    public static AsyncDbTable create(DbTable table) {
+        return create(table, table.isSharedHandle() ? 1 : DEFAULT_THREAD_COUNT, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    public static AsyncDbTable create(DbTable table, int threadCount, int maxInFlight) {
+        return create(table, threadCount, maxInFlight, 0, TimeUnit.MILLISECONDS);
+    }
+
+    public static AsyncDbTable create(DbTable table, int threadCount, int maxInFlight, long maxWait, TimeUnit unit) {
+        Preconditions.checkArgument(threadCount == 1 || !table.isSharedHandle(), "a table built from a single handle can only be used by one thread");
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threadCount, new ThreadFactoryBuilder()
+                .setNameFormat(THREAD_NAME_FORMAT)
+                .setDaemon(true)
+                .build());
+
+        return new AsyncDbTable(table, executor, maxInFlight, maxWait, unit, true);
+    }
+
+    private static SortedMap<byte[], byte[]> copyOf(Map<byte[], byte[]> map) {
+        // Arrays don't implement equals or hashCode, so the copy is ordered by content instead
+        return ImmutableSortedMap.copyOf(map, UnsignedBytes.lexicographicalComparator());
+    }
+
+    private final DbTable table;
+    private final ExecutorService executor;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final long maxWaitNanos;
+    private final boolean ownsExecutor;
+
+    public AsyncDbTable(DbTable table, ExecutorService executor, int maxInFlight) {
+        this (table, executor, maxInFlight, 0, TimeUnit.MILLISECONDS);
+    }
+
+    public AsyncDbTable(DbTable table, ExecutorService executor, int maxInFlight, long maxWait, TimeUnit unit) {
+        this (table, executor, maxInFlight, maxWait, unit, false);
+    }
+
+    private AsyncDbTable(DbTable table, ExecutorService executor, int maxInFlight, long maxWait, TimeUnit unit, boolean ownsExecutor) {
+        Preconditions.checkArgument(maxInFlight > 0, "maxInFlight must be positive");
+        Preconditions.checkArgument(maxWait >= 0, "maxWait must not be negative");
+
+        this.table = Preconditions.checkNotNull(table);
+        this.executor = Preconditions.checkNotNull(executor);
+        this.maxInFlight = maxInFlight;
+        this.ownsExecutor = ownsExecutor;
+
+        inFlight = new Semaphore(maxInFlight);
+        maxWaitNanos = unit.toNanos(maxWait);
+    }
+
+    public int getInFlight() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    // Blocks the caller for up to maxWait when too many operations are in flight
+    private boolean acquire() throws InterruptedException {
+        return maxWaitNanos == 0 ? inFlight.tryAcquire() : inFlight.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private <T> ListenableFuture<T> submit(Callable<T> callable) {
+        try {
+            if (!acquire()) {
+                return Futures.immediateFailedFuture(new RejectedExecutionException("Too many operations in flight"));
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Futures.immediateFailedFuture(e);
+        }
+
+        final ListenableFutureTask<T> task = ListenableFutureTask.create(callable);
+        task.addListener(new Runnable() {
+            @Override
+            public void run() {
+                inFlight.release();
+            }
+        }, MoreExecutors.sameThreadExecutor());
+
+        try {
+            executor.execute(task);
+        }
+        catch (RejectedExecutionException e) {
+            // Cancelling releases the permit through the listener
+            task.cancel(false);
+            return Futures.immediateFailedFuture(e);
+        }
+
+        return task;
+    }
+
+    public ListenableFuture<Boolean> contains(final byte[] row, final byte[] column) {
+        return submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return table.contains(row, column);
+            }
+        });
+    }
+
+    public ListenableFuture<byte[]> get(final byte[] row, final byte[] column) {
+        return submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() {
+                return table.get(row, column);
+            }
+        });
+    }
+
+    public ListenableFuture<Table<byte[], byte[], byte[]>> getAll(final Iterable<byte[]> rows, final Iterable<byte[]> columns) {
+        return submit(new Callable<Table<byte[], byte[], byte[]>>() {
+            @Override
+            public Table<byte[], byte[], byte[]> call() {
+                return table.getAll(rows, columns);
+            }
+        });
+    }
+
+    public ListenableFuture<Table<byte[], byte[], byte[]>> getAll(final Iterable<? extends Map.Entry<byte[], byte[]>> keys) {
+        return submit(new Callable<Table<byte[], byte[], byte[]>>() {
+            @Override
+            public Table<byte[], byte[], byte[]> call() {
+                return table.getAll(keys);
+            }
+        });
+    }
+
+    public ListenableFuture<SortedMap<byte[], byte[]>> getRow(final byte[] row) {
+        return submit(new Callable<SortedMap<byte[], byte[]>>() {
+            @Override
+            public SortedMap<byte[], byte[]> call() {
+                return copyOf(table.row(row));
+            }
+        });
+    }
+
+    public ListenableFuture<SortedMap<byte[], byte[]>> getColumn(final byte[] column) {
+        return submit(new Callable<SortedMap<byte[], byte[]>>() {
+            @Override
+            public SortedMap<byte[], byte[]> call() {
+                return copyOf(table.column(column));
+            }
+        });
+    }
+
+    public ListenableFuture<byte[]> put(final byte[] row, final byte[] column, final byte[] value) {
+        return submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() {
+                return table.put(row, column, value);
+            }
+        });
+    }
+
+    public ListenableFuture<byte[]> remove(final byte[] row, final byte[] column) {
+        return submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() {
+                return table.remove(row, column);
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package com.jamierf.dbtable.core.cache;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Table;
+
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class CachingDbTable implements Table<byte[], byte[], byte[]> {
+
+    private static final int GENERATION_STRIPES = 64;
+
+    private static final Weigher<CellKey, Optional<byte[]>> CELL_WEIGHER = new Weigher<CellKey, Optional<byte[]>>() {
+        @Override
+        public int weigh(CellKey key, Optional<byte[]> value) {
+            return key.weight() + (value.isPresent() ? value.get().length : 0);
+        }
+    };
+
+    public static CachingDbTable withMaximumSize(Table<byte[], byte[], byte[]> delegate, long maximumSize) {
+        return new CachingDbTable(delegate, CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .<CellKey, Optional<byte[]>>build());
+    }
+
+    public static CachingDbTable withMaximumWeight(Table<byte[], byte[], byte[]> delegate, long maximumWeight) {
+        return new CachingDbTable(delegate, CacheBuilder.newBuilder()
+                .maximumWeight(maximumWeight)
+                .weigher(CELL_WEIGHER)
+                .recordStats()
+                .<CellKey, Optional<byte[]>>build());
+    }
+
+    private final Table<byte[], byte[], byte[]> delegate;
+    private final Cache<CellKey, Optional<byte[]>> cache;
+    // Bumped by every invalidation, so a load can tell whether a write raced with it
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    private final Runnable invalidateAll = new Runnable() {
+        @Override
+        public void run() {
+            invalidateAll();
+        }
+    };
+
+    private CachingDbTable(Table<byte[], byte[], byte[]> delegate, Cache<CellKey, Optional<byte[]>> cache) {
+        this.delegate = Preconditions.checkNotNull(delegate);
+        this.cache = Preconditions.checkNotNull(cache);
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public void invalidateAll() {
+        nextGenerations();
+        cache.invalidateAll();
+    }
+
+    private static int stripe(CellKey key) {
+        return (key.hashCode() & Integer.MAX_VALUE) % GENERATION_STRIPES;
+    }
+
+    private void nextGenerations() {
+        for (int i = 0; i < GENERATION_STRIPES; i++) {
+            generations.incrementAndGet(i);
+        }
+    }
+
+    private Runnable invalidateRow(final byte[] row) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                nextGenerations();
+                Iterables.removeIf(cache.asMap().keySet(), new Predicate<CellKey>() {
+                    @Override
+                    public boolean apply(CellKey key) {
+                        return key.hasRow(row);
+                    }
+                });
+            }
+        };
+    }
+
+    private Runnable invalidateColumn(final byte[] column) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                nextGenerations();
+                Iterables.removeIf(cache.asMap().keySet(), new Predicate<CellKey>() {
+                    @Override
+                    public boolean apply(CellKey key) {
+                        return key.hasColumn(column);
+                    }
+                });
+            }
+        };
+    }
+
+    private void invalidate(Object row, Object column) {
+        if (row instanceof byte[] && column instanceof byte[]) {
+            final CellKey key = new CellKey((byte[]) row, (byte[]) column);
+            generations.incrementAndGet(stripe(key));
+            cache.invalidate(key);
+        }
+    }
+
+    private Optional<byte[]> load(CellKey key, Object row, Object column) {
+        final int stripe = stripe(key);
+        final long generation = generations.get(stripe);
+
+        final Optional<byte[]> value = Optional.fromNullable(delegate.get(row, column));
+        cache.put(key, value);
+
+        // A write that committed during the read may have invalidated the key before we cached what we read
+        if (generations.get(stripe) != generation) {
+            cache.invalidate(key);
+        }
+
+        return value;
+    }
+
+    @Override
+    public boolean contains(Object row, Object column) {
+        if (row instanceof byte[] && column instanceof byte[]) {
+            return get(row, column) != null;
+        }
+
+        return delegate.contains(row, column);
+    }
+
+    @Override
+    public boolean containsRow(Object row) {
+        return delegate.containsRow(row);
+    }
+
+    @Override
+    public boolean containsColumn(Object column) {
+        return delegate.containsColumn(column);
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        return delegate.containsValue(value);
+    }
+
+    @Override
+    public byte[] get(Object row, Object column) {
+        if (!(row instanceof byte[] && column instanceof byte[])) {
+            return delegate.get(row, column);
+        }
+
+        final CellKey key = new CellKey((byte[]) row, (byte[]) column);
+
+        Optional<byte[]> value = cache.getIfPresent(key);
+        if (value == null) {
+            value = load(key, row, column);
+        }
+
+        // Cached arrays are shared between callers, so never hand out the instance we hold
+        return value.isPresent() ? value.get().clone() : null;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return delegate.isEmpty();
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public void clear() {
+        try {
+            delegate.clear();
+        }
+        finally {
+            invalidateAll();
+        }
+    }
+
+    @Override
+    public byte[] put(@Nullable byte[] row, @Nullable byte[] column, @Nullable byte[] value) {
+        try {
+            return delegate.put(row, column, value);
+        }
+        finally {
+            invalidate(row, column);
+        }
+    }
+
+    @Override
+    public void putAll(@Nullable Table<? extends byte[], ? extends byte[], ? extends byte[]> table) {
+        try {
+            delegate.putAll(table);
+        }
+        finally {
+            for (Table.Cell<? extends byte[], ? extends byte[], ? extends byte[]> cell : table.cellSet()) {
+                invalidate(cell.getRowKey(), cell.getColumnKey());
+            }
+        }
+    }
+
+    @Override
+    public byte[] remove(Object row, Object column) {
+        try {
+            return delegate.remove(row, column);
+        }
+        finally {
+            invalidate(row, column);
+        }
+    }
+
+    @Override
+    public Map<byte[], byte[]> row(@Nullable final byte[] row) {
+        return new InvalidatingMap<byte[], byte[]>(delegate.row(row), invalidateRow(row)) {
+            @Override
+            public byte[] get(Object column) {
+                return CachingDbTable.this.get(row, column);
+            }
+
+            @Override
+            public boolean containsKey(Object column) {
+                return CachingDbTable.this.contains(row, column);
+            }
+        };
+    }
+
+    @Override
+    public Map<byte[], byte[]> column(@Nullable final byte[] column) {
+        return new InvalidatingMap<byte[], byte[]>(delegate.column(column), invalidateColumn(column)) {
+            @Override
+            public byte[] get(Object row) {
+                return CachingDbTable.this.get(row, column);
+            }
+
+            @Override
+            public boolean containsKey(Object row) {
+                return CachingDbTable.this.contains(row, column);
+            }
+        };
+    }
+
+    @Override
+    public Set<Cell<byte[], byte[], byte[]>> cellSet() {
+        return new InvalidatingSet<>(delegate.cellSet(), invalidateAll);
+    }
+
+    @Override
+    public Set<byte[]> rowKeySet() {
+        return new InvalidatingSet<>(delegate.rowKeySet(), invalidateAll);
+    }
+
+    @Override
+    public Set<byte[]> columnKeySet() {
+        return new InvalidatingSet<>(delegate.columnKeySet(), invalidateAll);
+    }
+
+    @Override
+    public Collection<byte[]> values() {
+        return new InvalidatingCollection<>(delegate.values(), invalidateAll);
+    }
+
+    @Override
+    public Map<byte[], Map<byte[], byte[]>> rowMap() {
+        return new InvalidatingMap<>(Maps.transformEntries(delegate.rowMap(), new Maps.EntryTransformer<byte[], Map<byte[], byte[]>, Map<byte[], byte[]>>() {
+            @Override
+            public Map<byte[], byte[]> transformEntry(byte[] row, Map<byte[], byte[]> map) {
+                return new InvalidatingMap<>(map, invalidateRow(row));
+            }
+        }), invalidateAll);
+    }
+
+    @Override
+    public Map<byte[], Map<byte[], byte[]>> columnMap() {
+        return new InvalidatingMap<>(Maps.transformEntries(delegate.columnMap(), new Maps.EntryTransformer<byte[], Map<byte[], byte[]>, Map<byte[], byte[]>>() {
+            @Override
+            public Map<byte[], byte[]> transformEntry(byte[] column, Map<byte[], byte[]> map) {
+                return new InvalidatingMap<>(map, invalidateColumn(column));
+            }
+        }), invalidateAll);
+    }
+}
@@ -0,0 +1,52 @@
+package com.jamierf.dbtable.core.cache;
+
+import java.util.Arrays;
+
+final class CellKey {
+
+    private final byte[] row;
+    private final byte[] column;
+    private final int hashCode;
+
+    // Copies the keys, as the hash code is only computed once
+    CellKey(byte[] row, byte[] column) {
+        this.row = row.clone();
+        this.column = column.clone();
+
+        hashCode = 31 * Arrays.hashCode(row) + Arrays.hashCode(column);
+    }
+
+    public byte[] getRow() {
+        return row;
+    }
+
+    public byte[] getColumn() {
+        return column;
+    }
+
+    public boolean hasRow(byte[] row) {
+        return Arrays.equals(this.row, row);
+    }
+
+    public boolean hasColumn(byte[] column) {
+        return Arrays.equals(this.column, column);
+    }
+
+    public int weight() {
+        return row.length + column.length;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        final CellKey cellKey = (CellKey) o;
+        return hashCode == cellKey.hashCode && Arrays.equals(row, cellKey.row) && Arrays.equals(column, cellKey.column);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+}
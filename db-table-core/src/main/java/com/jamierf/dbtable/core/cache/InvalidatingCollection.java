@@ -0,0 +1,107 @@
+package com.jamierf.dbtable.core.cache;
+
+import com.google.common.collect.ForwardingCollection;
+import com.google.common.collect.ForwardingIterator;
+
+import java.util.Collection;
+import java.util.Iterator;
+
+class InvalidatingCollection<E> extends ForwardingCollection<E> {
+
+    static <E> Iterator<E> iterator(final Iterator<E> iterator, final Runnable invalidator) {
+        return new ForwardingIterator<E>() {
+            @Override
+            protected Iterator<E> delegate() {
+                return iterator;
+            }
+
+            @Override
+            public void remove() {
+                try {
+                    super.remove();
+                }
+                finally {
+                    invalidator.run();
+                }
+            }
+        };
+    }
+
+    private final Collection<E> delegate;
+    protected final Runnable invalidator;
+
+    InvalidatingCollection(Collection<E> delegate, Runnable invalidator) {
+        this.delegate = delegate;
+        this.invalidator = invalidator;
+    }
+
+    @Override
+    protected Collection<E> delegate() {
+        return delegate;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return iterator(super.iterator(), invalidator);
+    }
+
+    @Override
+    public boolean add(E element) {
+        try {
+            return super.add(element);
+        }
+        finally {
+            invalidator.run();
+        }
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends E> collection) {
+        try {
+            return super.addAll(collection);
+        }
+        finally {
+            invalidator.run();
+        }
+    }
+
+    @Override
+    public boolean remove(Object object) {
+        try {
+            return super.remove(object);
+        }
+        finally {
+            invalidator.run();
+        }
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> collection) {
+        try {
+            return super.removeAll(collection);
+        }
+        finally {
+            invalidator.run();
+        }
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> collection) {
+        try {
+            return super.retainAll(collection);
+        }
+        finally {
+            invalidator.run();
+        }
+    }
+
+    @Override
+    public void clear() {
+        try {
+            super.clear();
+        }
+        finally {
+            invalidator.run();
+        }
+    }
+}
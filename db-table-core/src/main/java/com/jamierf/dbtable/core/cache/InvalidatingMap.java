@@ -0,0 +1,78 @@
+package com.jamierf.dbtable.core.cache;
+
+import com.google.common.collect.ForwardingMap;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+class InvalidatingMap<K, V> extends ForwardingMap<K, V> {
+
+    private final Map<K, V> delegate;
+    protected final Runnable invalidator;
+
+    InvalidatingMap(Map<K, V> delegate, Runnable invalidator) {
+        this.delegate = delegate;
+        this.invalidator = invalidator;
+    }
+
+    @Override
+    protected Map<K, V> delegate() {
+        return delegate;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        try {
+            return super.put(key, value);
+        }
+        finally {
+            invalidator.run();
+        }
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> map) {
+        try {
+            super.putAll(map);
+        }
+        finally {
+            invalidator.run();
+        }
+    }
+
+    @Override
+    public V remove(Object key) {
+        try {
+            return super.remove(key);
+        }
+        finally {
+            invalidator.run();
+        }
+    }
+
+    @Override
+    public void clear() {
+        try {
+            super.clear();
+        }
+        finally {
+            invalidator.run();
+        }
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return new InvalidatingSet<>(super.keySet(), invalidator);
+    }
+
+    @Override
+    public Collection<V> values() {
+        return new InvalidatingCollection<>(super.values(), invalidator);
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new InvalidatingSet<>(super.entrySet(), invalidator);
+    }
+}
@@ -0,0 +1,20 @@
+package com.jamierf.dbtable.core.cache;
+
+import java.util.Set;
+
+class InvalidatingSet<E> extends InvalidatingCollection<E> implements Set<E> {
+
+    InvalidatingSet(Set<E> delegate, Runnable invalidator) {
+        super (delegate, invalidator);
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        return object == this || delegate().equals(object);
+    }
+
+    @Override
+    public int hashCode() {
+        return delegate().hashCode();
+    }
+}
@@ -0,0 +1,344 @@
+package com.jamierf.dbtable.core.cache;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Table;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.jamierf.dbtable.core.DbTable;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Buffers puts and removes in memory, keyed by cell so repeated writes to a cell replace each other, and writes
+ * them to the underlying table in batches. The buffer is flushed every {@code flushInterval}, or sooner once it
+ * holds {@code maxBufferedCells} cells.
+ * <p>
+ * The buffer never holds more than {@code bufferCapacity} cells. A write of a new cell to a full buffer flushes it
+ * on the writer's thread, so writers are held back while the table falls behind and see the error if it's failing.
+ * <p>
+ * Point reads see buffered writes. Every other read flushes the buffer first, so it sees them too. Buffered writes
+ * are only durable once {@link #flush()} or {@link #close()} has returned.
+ */
+public class WriteBehindDbTable implements Table<byte[], byte[], byte[]>, Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(WriteBehindDbTable.class.getName());
+    private static final String THREAD_NAME_FORMAT = "write-behind-db-table-%d";
+
+    // Room for a few background flushes to fall behind before writers are made to wait
+    private static final int DEFAULT_CAPACITY_FACTOR = 4;
+
+    public static WriteBehindDbTable create(DbTable delegate, long flushInterval, TimeUnit unit, int maxBufferedCells) {
+        return create(delegate, flushInterval, unit, maxBufferedCells, maxBufferedCells * DEFAULT_CAPACITY_FACTOR);
+    }
+
+    public static WriteBehindDbTable create(DbTable delegate, long flushInterval, TimeUnit unit, int maxBufferedCells, int bufferCapacity) {
+        Preconditions.checkArgument(flushInterval > 0, "flushInterval must be positive");
+        Preconditions.checkArgument(maxBufferedCells > 0, "maxBufferedCells must be positive");
+        Preconditions.checkArgument(bufferCapacity >= maxBufferedCells, "bufferCapacity must be at least maxBufferedCells");
+
+        final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat(THREAD_NAME_FORMAT)
+                .setDaemon(true)
+                .build());
+
+        final WriteBehindDbTable table = new WriteBehindDbTable(delegate, flusher, maxBufferedCells, bufferCapacity);
+        flusher.scheduleWithFixedDelay(table.backgroundFlush, flushInterval, flushInterval, unit);
+        return table;
+    }
+
+    private final DbTable delegate;
+    private final ScheduledExecutorService flusher;
+    private final int maxBufferedCells;
+    private final int bufferCapacity;
+
+    // An absent value is a buffered remove
+    private final ConcurrentMap<CellKey, Optional<byte[]>> buffer = Maps.newConcurrentMap();
+    // Only one flush may run at a time, or an older value could overwrite a newer one
+    private final Lock flushLock = new ReentrantLock();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private final AtomicLong writeCount = new AtomicLong();
+    private final AtomicLong flushedCount = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong totalFlushTime = new AtomicLong();
+    private final AtomicLong failedFlushCount = new AtomicLong();
+
+    private final Runnable backgroundFlush = new Runnable() {
+        @Override
+        public void run() {
+            flushScheduled.set(false);
+
+            try {
+                flush();
+            }
+            catch (RuntimeException e) {
+                // Failed cells stay buffered, so they're retried by the next flush
+                LOGGER.log(Level.WARNING, "Failed to flush " + buffer.size() + " buffered cells", e);
+            }
+        }
+    };
+
+    private WriteBehindDbTable(DbTable delegate, ScheduledExecutorService flusher, int maxBufferedCells, int bufferCapacity) {
+        this.delegate = Preconditions.checkNotNull(delegate);
+        this.flusher = Preconditions.checkNotNull(flusher);
+        this.maxBufferedCells = maxBufferedCells;
+        this.bufferCapacity = bufferCapacity;
+    }
+
+    public WriteBehindStats stats() {
+        return new WriteBehindStats(buffer.size(), writeCount.get(), flushedCount.get(), flushCount.get(), totalFlushTime.get(), failedFlushCount.get());
+    }
+
+    public void flush() {
+        flushLock.lock();
+        try {
+            if (buffer.isEmpty()) {
+                return;
+            }
+
+            flushBuffer();
+        }
+        catch (RuntimeException e) {
+            failedFlushCount.incrementAndGet();
+            throw e;
+        }
+        finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushBuffer() {
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        final Map<CellKey, Optional<byte[]>> pending = ImmutableMap.copyOf(buffer);
+
+        final Table<byte[], byte[], byte[]> puts = HashBasedTable.create();
+        final List<Map.Entry<byte[], byte[]>> deletes = Lists.newArrayList();
+        for (Map.Entry<CellKey, Optional<byte[]>> entry : pending.entrySet()) {
+            if (entry.getValue().isPresent()) {
+                puts.put(entry.getKey().getRow(), entry.getKey().getColumn(), entry.getValue().get());
+            }
+            else {
+                deletes.add(Maps.immutableEntry(entry.getKey().getRow(), entry.getKey().getColumn()));
+            }
+        }
+
+        // A failed flush writes nothing, so every cell is retried rather than only those after the failure
+        delegate.writeAll(puts, deletes);
+
+        // Cells written to again during the flush keep their newer value for the next flush
+        for (Map.Entry<CellKey, Optional<byte[]>> entry : pending.entrySet()) {
+            buffer.remove(entry.getKey(), entry.getValue());
+        }
+
+        flushedCount.addAndGet(pending.size());
+        flushCount.incrementAndGet();
+        totalFlushTime.addAndGet(stopwatch.elapsed(TimeUnit.NANOSECONDS));
+    }
+
+    @Override
+    public void close() {
+        closed.set(true);
+        flusher.shutdown();
+        flush();
+    }
+
+    private Optional<byte[]> write(byte[] row, byte[] column, Optional<byte[]> value) {
+        Preconditions.checkNotNull(row);
+        Preconditions.checkNotNull(column);
+        Preconditions.checkState(!closed.get(), "write-behind table is closed");
+
+        final CellKey key = new CellKey(row, column);
+        if (buffer.size() >= bufferCapacity && !buffer.containsKey(key)) {
+            flush();
+        }
+
+        // The caller may reuse its array before the value is flushed
+        final Optional<byte[]> previous = buffer.put(key, value.isPresent() ? Optional.of(value.get().clone()) : value);
+        writeCount.incrementAndGet();
+
+        // A write racing with close may have missed its final flush
+        if (closed.get()) {
+            flush();
+        }
+        else if (buffer.size() >= maxBufferedCells && flushScheduled.compareAndSet(false, true)) {
+            try {
+                flusher.execute(backgroundFlush);
+            }
+            catch (RejectedExecutionException e) {
+                // Closed since the check above
+                flush();
+            }
+        }
+
+        return previous;
+    }
+
+    // The stored value is read before the write is buffered, as a flush could store the new value as soon as it is
+    private byte[] replace(byte[] row, byte[] column, Optional<byte[]> value) {
+        final byte[] stored = buffer.containsKey(new CellKey(row, column)) ? null : delegate.get(row, column);
+        final Optional<byte[]> previous = write(row, column, value);
+        return previous == null ? stored : previous.orNull();
+    }
+
+    @Override
+    public boolean contains(Object row, Object column) {
+        if (row instanceof byte[] && column instanceof byte[]) {
+            final Optional<byte[]> value = buffer.get(new CellKey((byte[]) row, (byte[]) column));
+            if (value != null) {
+                return value.isPresent();
+            }
+        }
+
+        return delegate.contains(row, column);
+    }
+
+    @Override
+    public boolean containsRow(Object row) {
+        flush();
+        return delegate.containsRow(row);
+    }
+
+    @Override
+    public boolean containsColumn(Object column) {
+        flush();
+        return delegate.containsColumn(column);
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        flush();
+        return delegate.containsValue(value);
+    }
+
+    @Override
+    public byte[] get(Object row, Object column) {
+        if (row instanceof byte[] && column instanceof byte[]) {
+            final Optional<byte[]> value = buffer.get(new CellKey((byte[]) row, (byte[]) column));
+            if (value != null) {
+                return value.isPresent() ? value.get().clone() : null;
+            }
+        }
+
+        return delegate.get(row, column);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        flush();
+        return delegate.isEmpty();
+    }
+
+    @Override
+    public int size() {
+        flush();
+        return delegate.size();
+    }
+
+    @Override
+    public void clear() {
+        flushLock.lock();
+        try {
+            buffer.clear();
+            delegate.clear();
+        }
+        finally {
+            flushLock.unlock();
+        }
+    }
+
+    @Override
+    public byte[] put(@Nullable byte[] row, @Nullable byte[] column, @Nullable byte[] value) {
+        return replace(row, column, Optional.of(value));
+    }
+
+    // Unlike put this never reads the previous value, so repeated writes to a cell don't touch the database
+    public void set(@Nullable byte[] row, @Nullable byte[] column, @Nullable byte[] value) {
+        write(row, column, Optional.of(value));
+    }
+
+    @Override
+    public void putAll(@Nullable Table<? extends byte[], ? extends byte[], ? extends byte[]> table) {
+        for (Table.Cell<? extends byte[], ? extends byte[], ? extends byte[]> cell : table.cellSet()) {
+            set(cell.getRowKey(), cell.getColumnKey(), cell.getValue());
+        }
+    }
+
+    @Override
+    public byte[] remove(Object row, Object column) {
+        if (!(row instanceof byte[] && column instanceof byte[])) {
+            return null;
+        }
+
+        return replace((byte[]) row, (byte[]) column, Optional.<byte[]>absent());
+    }
+
+    @Override
+    public Map<byte[], byte[]> row(@Nullable byte[] row) {
+        flush();
+        return delegate.row(row);
+    }
+
+    @Override
+    public Map<byte[], byte[]> column(@Nullable byte[] column) {
+        flush();
+        return delegate.column(column);
+    }
+
+    @Override
+    public Set<Cell<byte[], byte[], byte[]>> cellSet() {
+        flush();
+        return delegate.cellSet();
+    }
+
+    @Override
+    public Set<byte[]> rowKeySet() {
+        flush();
+        return delegate.rowKeySet();
+    }
+
+    @Override
+    public Set<byte[]> columnKeySet() {
+        flush();
+        return delegate.columnKeySet();
+    }
+
+    @Override
+    public Collection<byte[]> values() {
+        flush();
+        return delegate.values();
+    }
+
+    @Override
+    public Map<byte[], Map<byte[], byte[]>> rowMap() {
+        flush();
+        return delegate.rowMap();
+    }
+
+    @Override
+    public Map<byte[], Map<byte[], byte[]>> columnMap() {
+        flush();
+        return delegate.columnMap();
+    }
+}
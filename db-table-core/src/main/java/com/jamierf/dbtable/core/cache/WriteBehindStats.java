@@ -0,0 +1,87 @@
+package com.jamierf.dbtable.core.cache;
+
+import com.google.common.base.Objects;
+
+/**
+ * A snapshot of the activity of a {@link WriteBehindDbTable}.
+ */
+public final class WriteBehindStats {
+
+    private final long bufferDepth;
+    private final long writeCount;
+    private final long flushedCount;
+    private final long flushCount;
+    private final long totalFlushTime;
+    private final long failedFlushCount;
+
+    WriteBehindStats(long bufferDepth, long writeCount, long flushedCount, long flushCount, long totalFlushTime, long failedFlushCount) {
+        this.bufferDepth = bufferDepth;
+        this.writeCount = writeCount;
+        this.flushedCount = flushedCount;
+        this.flushCount = flushCount;
+        this.totalFlushTime = totalFlushTime;
+        this.failedFlushCount = failedFlushCount;
+    }
+
+    /**
+     * The number of cells currently waiting to be written.
+     */
+    public long bufferDepth() {
+        return bufferDepth;
+    }
+
+    /**
+     * The number of puts and removes accepted into the buffer.
+     */
+    public long writeCount() {
+        return writeCount;
+    }
+
+    /**
+     * The number of cells written to the underlying table.
+     */
+    public long flushedCount() {
+        return flushedCount;
+    }
+
+    public long flushCount() {
+        return flushCount;
+    }
+
+    /**
+     * The total time spent flushing, in nanoseconds.
+     */
+    public long totalFlushTime() {
+        return totalFlushTime;
+    }
+
+    /**
+     * The number of flushes that failed, leaving their cells buffered to be retried.
+     */
+    public long failedFlushCount() {
+        return failedFlushCount;
+    }
+
+    public double averageFlushPenalty() {
+        return flushCount == 0 ? 0.0 : (double) totalFlushTime / flushCount;
+    }
+
+    /**
+     * The number of writes accepted for each cell written, so higher is better and 1.0 means nothing coalesced.
+     */
+    public double coalescingRatio() {
+        return flushedCount == 0 ? 1.0 : (double) writeCount / flushedCount;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("bufferDepth", bufferDepth)
+                .add("writeCount", writeCount)
+                .add("flushedCount", flushedCount)
+                .add("flushCount", flushCount)
+                .add("totalFlushTime", totalFlushTime)
+                .add("failedFlushCount", failedFlushCount)
+                .toString();
+    }
+}
@@ -1,7 +1,13 @@
 package com.jamierf.dbtable.core.mapper.result.field;
 
+import com.google.common.io.ByteStreams;
+import com.jamierf.dbtable.core.sql.FieldType;
 import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.tweak.Argument;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 
@@ -15,4 +21,39 @@ public class ByteArrayFieldMapper extends FieldMapper<byte[]> {
     public byte[] map(int index, ResultSet r, StatementContext ctx) throws SQLException {
         return r.getBytes(getFieldName());
     }
+
+    @Override
+    public FieldType getFieldType() {
+        return FieldType.BINARY;
+    }
+
+    // The stream is only readable while the result set is open
+    public InputStream mapStream(ResultSet r) throws SQLException {
+        final InputStream stored = r.getBinaryStream(getFieldName());
+        if (stored == null) {
+            return null;
+        }
+
+        try {
+            return decode(stored);
+        }
+        catch (IOException e) {
+            throw new SQLException("Unable to read value header", e);
+        }
+    }
+
+    protected InputStream decode(InputStream stored) throws IOException {
+        return stored;
+    }
+
+    // Drivers may read the stream to its end regardless of the length they're given
+    public Argument encode(InputStream value, final long length) {
+        final InputStream limited = ByteStreams.limit(value, length);
+        return new Argument() {
+            @Override
+            public void apply(int position, PreparedStatement statement, StatementContext ctx) throws SQLException {
+                statement.setBinaryStream(position, limited, length);
+            }
+        };
+    }
 }
@@ -2,7 +2,7 @@ package com.jamierf.dbtable.core.mapper.result.field;
 
 public class ByteArrayFieldMapperFactory implements FieldMapperFactory<byte[]> {
     @Override
-    public FieldMapper<byte[]> build(String fieldName) {
+    public ByteArrayFieldMapper build(String fieldName) {
         return new ByteArrayFieldMapper(fieldName);
     }
 }
@@ -0,0 +1,223 @@
+package com.jamierf.dbtable.core.mapper.result.field;
+
+import com.google.common.base.Throwables;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+import com.google.common.io.FileBackedOutputStream;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.tweak.Argument;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Stores values deflated once they reach a size threshold, unless deflating wouldn't make them smaller. Every stored
+ * value starts with a one byte header saying whether the rest is deflated, so compressed and uncompressed values sit
+ * side by side. Values are matched by their stored form, so a value written under one threshold won't be found by
+ * value under another, and a table must always be opened with the same threshold. Values written before compression
+ * was enabled have no header, so aren't readable through this mapper.
+ */
+public class CompressingFieldMapper extends ByteArrayFieldMapper {
+
+    private static final byte UNCOMPRESSED = 0;
+    private static final byte DEFLATED = 1;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    // Streams above this size are spooled to a temporary file while deciding how to store them
+    private static final int SPOOL_THRESHOLD = 1024 * 1024;
+
+    private final int threshold;
+
+    public CompressingFieldMapper(String fieldName, int threshold) {
+        super (fieldName);
+
+        this.threshold = threshold;
+    }
+
+    @Override
+    public byte[] map(int index, ResultSet r, StatementContext ctx) throws SQLException {
+        final byte[] stored = super.map(index, r, ctx);
+        return stored == null ? null : decode(stored);
+    }
+
+    @Override
+    public byte[] encode(byte[] value) {
+        if (value == null) {
+            return null;
+        }
+
+        if (value.length >= threshold) {
+            final ByteArrayOutputStream deflated = new ByteArrayOutputStream(value.length / 2 + 1);
+            deflated.write(DEFLATED);
+            try {
+                deflate(new ByteArrayInputStream(value), deflated);
+            }
+            catch (IOException e) {
+                // Neither stream is backed by anything that can fail
+                throw new AssertionError(e);
+            }
+
+            // Incompressible values are kept as they are rather than grown
+            if (deflated.size() - 1 < value.length) {
+                return deflated.toByteArray();
+            }
+        }
+
+        final byte[] stored = new byte[value.length + 1];
+        stored[0] = UNCOMPRESSED;
+        System.arraycopy(value, 0, stored, 1, value.length);
+        return stored;
+    }
+
+    // Whether a stream shrinks is only known once it has been deflated, so it's stored the same way as the array of
+    // its bytes would be, and so matched by value the same way
+    @Override
+    public Argument encode(InputStream value, long length) {
+        if (length < threshold) {
+            return super.encode(withHeader(UNCOMPRESSED, value), length + 1);
+        }
+
+        final FileBackedOutputStream raw = new FileBackedOutputStream(SPOOL_THRESHOLD, true);
+        final FileBackedOutputStream deflated = new FileBackedOutputStream(SPOOL_THRESHOLD, true);
+        try {
+            final long rawLength = ByteStreams.copy(ByteStreams.limit(value, length), raw);
+            final long deflatedLength;
+            try (InputStream spooled = raw.asByteSource().openStream()) {
+                deflatedLength = deflate(spooled, deflated);
+            }
+
+            if (deflatedLength < rawLength) {
+                raw.reset();
+                return new SpooledValue(DEFLATED, deflated, deflatedLength);
+            }
+
+            deflated.reset();
+            return new SpooledValue(UNCOMPRESSED, raw, rawLength);
+        }
+        catch (IOException e) {
+            try {
+                raw.reset();
+                deflated.reset();
+            }
+            catch (IOException ignored) {
+                // The spools are deleted once unreachable regardless
+            }
+
+            throw Throwables.propagate(e);
+        }
+    }
+
+    @Override
+    protected InputStream decode(InputStream stored) throws IOException {
+        final int header = stored.read();
+        switch (header) {
+            case UNCOMPRESSED:
+                return stored;
+            case DEFLATED:
+                return new InflaterInputStream(stored);
+            default:
+                throw new IOException("Unknown value header: " + header);
+        }
+    }
+
+    private static InputStream withHeader(byte header, InputStream value) {
+        return new SequenceInputStream(new ByteArrayInputStream(new byte[] { header }), value);
+    }
+
+    // Closed once the statement it was bound to has run, deleting any temporary file
+    private static final class SpooledValue implements Argument, Closeable {
+
+        private final byte header;
+        private final FileBackedOutputStream spool;
+        private final long length;
+
+        private SpooledValue(byte header, FileBackedOutputStream spool, long length) {
+            this.header = header;
+            this.spool = spool;
+            this.length = length;
+        }
+
+        @Override
+        public void apply(int position, PreparedStatement statement, StatementContext ctx) throws SQLException {
+            try {
+                statement.setBinaryStream(position, withHeader(header, spool.asByteSource().openStream()), length + 1);
+            }
+            catch (IOException e) {
+                throw new SQLException("Unable to read spooled value", e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            spool.reset();
+        }
+    }
+
+    private byte[] decode(byte[] stored) {
+        switch (stored[0]) {
+            case UNCOMPRESSED:
+                return Arrays.copyOfRange(stored, 1, stored.length);
+            case DEFLATED:
+                return inflate(stored);
+            default:
+                throw new IllegalArgumentException("Unknown value header: " + stored[0]);
+        }
+    }
+
+    // Both arrays and streams are deflated through here in the same sized chunks, so a value always deflates to the
+    // same bytes however it was written
+    private static long deflate(InputStream value, OutputStream out) throws IOException {
+        final Deflater deflater = new Deflater();
+        try {
+            final CountingOutputStream counted = new CountingOutputStream(out);
+            final DeflaterOutputStream deflating = new DeflaterOutputStream(counted, deflater, BUFFER_SIZE);
+            ByteStreams.copy(value, deflating);
+            deflating.finish();
+            return counted.getCount();
+        }
+        finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] stored) {
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(stored, 1, stored.length - 1);
+
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(stored.length * 4);
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            while (!inflater.finished()) {
+                final int inflated = inflater.inflate(buffer);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Truncated deflated value");
+                }
+
+                out.write(buffer, 0, inflated);
+            }
+
+            return out.toByteArray();
+        }
+        catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupt deflated value", e);
+        }
+        finally {
+            inflater.end();
+        }
+    }
+}
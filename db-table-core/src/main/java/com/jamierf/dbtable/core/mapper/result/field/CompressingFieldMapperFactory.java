@@ -0,0 +1,18 @@
+package com.jamierf.dbtable.core.mapper.result.field;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+public class CompressingFieldMapperFactory extends ByteArrayFieldMapperFactory {
+
+    private final int threshold;
+
+    public CompressingFieldMapperFactory(int threshold) {
+        checkArgument(threshold >= 0, "compression threshold must not be negative");
+        this.threshold = threshold;
+    }
+
+    @Override
+    public ByteArrayFieldMapper build(String fieldName) {
+        return new CompressingFieldMapper(fieldName, threshold);
+    }
+}
@@ -1,5 +1,6 @@
 package com.jamierf.dbtable.core.mapper.result.field;
 
+import com.jamierf.dbtable.core.sql.FieldType;
 import org.skife.jdbi.v2.tweak.ResultSetMapper;
 
 public abstract class FieldMapper<T> implements ResultSetMapper<T> {
@@ -13,4 +14,14 @@ public abstract class FieldMapper<T> implements ResultSetMapper<T> {
     public String getFieldName() {
         return fieldName;
     }
+
+    // The form a value is stored and matched in, the reverse of map
+    public Object encode(T value) {
+        return value;
+    }
+
+    // The kind of column the field is stored in, binary unless the mapper stores a native type
+    public FieldType getFieldType() {
+        return FieldType.BINARY;
+    }
 }
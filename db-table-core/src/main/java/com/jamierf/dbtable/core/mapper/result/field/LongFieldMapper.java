@@ -0,0 +1,25 @@
+package com.jamierf.dbtable.core.mapper.result.field;
+
+import com.jamierf.dbtable.core.sql.FieldType;
+import org.skife.jdbi.v2.StatementContext;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+public class LongFieldMapper extends FieldMapper<Long> {
+
+    public LongFieldMapper(String fieldName) {
+        super (fieldName);
+    }
+
+    @Override
+    public Long map(int index, ResultSet r, StatementContext ctx) throws SQLException {
+        final long value = r.getLong(getFieldName());
+        return r.wasNull() ? null : value;
+    }
+
+    @Override
+    public FieldType getFieldType() {
+        return FieldType.BIGINT;
+    }
+}
@@ -0,0 +1,8 @@
+package com.jamierf.dbtable.core.mapper.result.field;
+
+public class LongFieldMapperFactory implements FieldMapperFactory<Long> {
+    @Override
+    public LongFieldMapper build(String fieldName) {
+        return new LongFieldMapper(fieldName);
+    }
+}
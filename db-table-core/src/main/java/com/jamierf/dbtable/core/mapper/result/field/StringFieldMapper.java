@@ -0,0 +1,24 @@
+package com.jamierf.dbtable.core.mapper.result.field;
+
+import com.jamierf.dbtable.core.sql.FieldType;
+import org.skife.jdbi.v2.StatementContext;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+public class StringFieldMapper extends FieldMapper<String> {
+
+    public StringFieldMapper(String fieldName) {
+        super (fieldName);
+    }
+
+    @Override
+    public String map(int index, ResultSet r, StatementContext ctx) throws SQLException {
+        return r.getString(getFieldName());
+    }
+
+    @Override
+    public FieldType getFieldType() {
+        return FieldType.VARCHAR;
+    }
+}
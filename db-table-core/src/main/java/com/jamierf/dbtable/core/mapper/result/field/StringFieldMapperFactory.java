@@ -0,0 +1,8 @@
+package com.jamierf.dbtable.core.mapper.result.field;
+
+public class StringFieldMapperFactory implements FieldMapperFactory<String> {
+    @Override
+    public StringFieldMapper build(String fieldName) {
+        return new StringFieldMapper(fieldName);
+    }
+}
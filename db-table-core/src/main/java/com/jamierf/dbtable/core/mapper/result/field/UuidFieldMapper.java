@@ -0,0 +1,25 @@
+package com.jamierf.dbtable.core.mapper.result.field;
+
+import com.jamierf.dbtable.core.sql.FieldType;
+import org.skife.jdbi.v2.StatementContext;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.UUID;
+
+public class UuidFieldMapper extends FieldMapper<UUID> {
+
+    public UuidFieldMapper(String fieldName) {
+        super (fieldName);
+    }
+
+    @Override
+    public UUID map(int index, ResultSet r, StatementContext ctx) throws SQLException {
+        return (UUID) r.getObject(getFieldName());
+    }
+
+    @Override
+    public FieldType getFieldType() {
+        return FieldType.UUID;
+    }
+}
@@ -0,0 +1,10 @@
+package com.jamierf.dbtable.core.mapper.result.field;
+
+import java.util.UUID;
+
+public class UuidFieldMapperFactory implements FieldMapperFactory<UUID> {
+    @Override
+    public UuidFieldMapper build(String fieldName) {
+        return new UuidFieldMapper(fieldName);
+    }
+}
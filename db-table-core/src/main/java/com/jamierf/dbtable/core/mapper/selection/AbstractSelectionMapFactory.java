@@ -1,13 +1,30 @@
 package com.jamierf.dbtable.core.mapper.selection;
 
 import com.google.common.base.Function;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.jamierf.dbtable.core.mapper.result.field.FieldMapper;
+import com.jamierf.dbtable.core.sql.SqlDialect;
+import org.skife.jdbi.v2.SQLStatement;
 
 import javax.annotation.Nullable;
 import java.util.Collection;
 
 public abstract class AbstractSelectionMapFactory<T> {
 
+    private static final Joiner FIELD_JOINER = Joiner.on(", ");
+
+    protected static <T> Function<T, Object> encoder(final FieldMapper<T> mapper) {
+        return new Function<T, Object>() {
+            @Nullable
+            @Override
+            public Object apply(@Nullable T input) {
+                return mapper.encode(input);
+            }
+        };
+    }
+
     private final Function<Object, T> cast = new Function<Object, T>() {
         @Nullable
         @Override
@@ -17,18 +34,51 @@ public abstract class AbstractSelectionMapFactory<T> {
         }
     };
 
+    private final Collection<String> keyFields;
+    private final String keyFieldsSql;
+    private final String keySql;
+
+    protected AbstractSelectionMapFactory(String... keyFields) {
+        this.keyFields = ImmutableSet.copyOf(keyFields);
+
+        keyFieldsSql = FIELD_JOINER.join(this.keyFields);
+        keySql = SelectionMap.asSql(this.keyFields);
+    }
+
     protected abstract SelectionMap getSelectionMap(T value);
-    protected abstract SelectionMap getSelectionMap(Iterable<T> value);
+    protected abstract void bind(SQLStatement<?> statement, T value);
+
+    // A list of values per field would match their cross product, so only keys of a single field can be listed
+    protected SelectionMap getSelectionMap(Iterable<T> value, SqlDialect dialect) {
+        throw new UnsupportedOperationException(keyFieldsSql + " can only be selected a key at a time");
+    }
+
+    public final Collection<String> keyFields() {
+        return keyFields;
+    }
+
+    public final String keyFieldsSql() {
+        return keyFieldsSql;
+    }
 
-    public abstract Collection<String> keyFields();
+    public final String keySql() {
+        return keySql;
+    }
 
     @SuppressWarnings("unchecked")
     public final SelectionMap get(Object key) {
         return getSelectionMap(cast.apply(key));
     }
 
+    // Key conditions come first in every keyed statement, so a single key is bound by position rather than through a
+    // selection map
+    public final <S extends SQLStatement<S>> S bindKey(S statement, Object key) {
+        bind(statement, cast.apply(key));
+        return statement;
+    }
+
     @SuppressWarnings("unchecked")
-    public final SelectionMap get(Iterable<?> keys) {
-        return getSelectionMap(Iterables.transform(keys, cast));
+    public final SelectionMap get(Iterable<?> keys, SqlDialect dialect) {
+        return getSelectionMap(Iterables.transform(keys, cast), dialect);
     }
 }
@@ -1,34 +1,50 @@
 package com.jamierf.dbtable.core.mapper.selection;
 
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.ImmutableSet;
-
-import java.util.Collection;
+import com.google.common.collect.Iterables;
+import com.jamierf.dbtable.core.mapper.result.field.FieldMapper;
+import com.jamierf.dbtable.core.sql.SqlDialect;
+import org.skife.jdbi.v2.SQLStatement;
 
 public class FieldSelectionMapFactory<T> extends AbstractSelectionMapFactory<T> {
 
     private final String fieldName;
+    private final Function<? super T, ?> encoder;
 
     public FieldSelectionMapFactory(String fieldName) {
-        this.fieldName = fieldName;
+        this (fieldName, Functions.identity());
     }
 
-    @Override
-    public Collection<String> keyFields() {
-        return ImmutableSet.of(fieldName);
+    // Matches values in the form the mapper stores them
+    public FieldSelectionMapFactory(FieldMapper<T> mapper) {
+        this (mapper.getFieldName(), encoder(mapper));
+    }
+
+    private FieldSelectionMapFactory(String fieldName, Function<? super T, ?> encoder) {
+        super (fieldName);
+
+        this.fieldName = fieldName;
+        this.encoder = encoder;
     }
 
     @Override
     public SelectionMap getSelectionMap(T value) {
         return new SelectionMap(ImmutableMap.<String, Object>of(
-                fieldName, value
+                fieldName, encoder.apply(value)
         ));
     }
 
     @Override
-    public SelectionMap getSelectionMap(Iterable<T> value) {
+    public SelectionMap getSelectionMap(Iterable<T> value, SqlDialect dialect) {
         return new SelectionMap(ImmutableMap.<String, Object>of(
-                fieldName, value
-        ));
+                fieldName, Iterables.transform(value, encoder)
+        ), dialect);
+    }
+
+    @Override
+    protected void bind(SQLStatement<?> statement, T value) {
+        statement.bind(0, encoder.apply(value));
     }
 }
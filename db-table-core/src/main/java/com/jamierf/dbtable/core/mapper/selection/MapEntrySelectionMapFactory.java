@@ -1,12 +1,13 @@
 package com.jamierf.dbtable.core.mapper.selection;
 
 import com.google.common.base.Function;
+import com.google.common.base.Functions;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Iterables;
 import com.jamierf.dbtable.core.mapper.MapEntryExtractor;
+import com.jamierf.dbtable.core.mapper.result.field.FieldMapper;
+import com.jamierf.dbtable.core.mapper.result.map.MapEntryMapper;
+import org.skife.jdbi.v2.SQLStatement;
 
-import java.util.Collection;
 import java.util.Map;
 
 public class MapEntrySelectionMapFactory<K, V> extends AbstractSelectionMapFactory<Map.Entry<K, V>> {
@@ -14,35 +15,39 @@ public class MapEntrySelectionMapFactory<K, V> extends AbstractSelectionMapFacto
     private final String keyFieldName;
     private final String valueFieldName;
 
-    private final Function<Map.Entry<K, V>, K> keyExtractor;
-    private final Function<Map.Entry<K, V>, V> valueExtrator;
+    private final Function<Map.Entry<K, V>, ?> keyExtractor;
+    private final Function<Map.Entry<K, V>, ?> valueExtrator;
 
     public MapEntrySelectionMapFactory(String keyFieldName, String valueFieldName) {
-        this.keyFieldName = keyFieldName;
-        this.valueFieldName = valueFieldName;
+        this (keyFieldName, valueFieldName, Functions.identity(), Functions.identity());
+    }
 
-        keyExtractor = MapEntryExtractor.getKey();
-        valueExtrator = MapEntryExtractor.getValue();
+    // Matches entries in the form the mappers store them
+    public MapEntrySelectionMapFactory(MapEntryMapper<K, V> mapper) {
+        this (mapper.getKeyMapper().getFieldName(), mapper.getValueMapper().getFieldName(), encoder(mapper.getKeyMapper()), encoder(mapper.getValueMapper()));
     }
 
-    @Override
-    public Collection<String> keyFields() {
-        return ImmutableSet.of(keyFieldName, valueFieldName);
+    private MapEntrySelectionMapFactory(String keyFieldName, String valueFieldName, Function<? super K, ?> keyEncoder, Function<? super V, ?> valueEncoder) {
+        super (keyFieldName, valueFieldName);
+
+        this.keyFieldName = keyFieldName;
+        this.valueFieldName = valueFieldName;
+
+        keyExtractor = Functions.compose(keyEncoder, MapEntryExtractor.<K, V>getKey());
+        valueExtrator = Functions.compose(valueEncoder, MapEntryExtractor.<K, V>getValue());
     }
 
     @Override
     public SelectionMap getSelectionMap(Map.Entry<K, V> value) {
-        return new SelectionMap(ImmutableMap.of(
-                keyFieldName, value.getKey(),
-                valueFieldName, value.getValue()
+        return new SelectionMap(ImmutableMap.<String, Object>of(
+                keyFieldName, keyExtractor.apply(value),
+                valueFieldName, valueExtrator.apply(value)
         ));
     }
 
     @Override
-    public SelectionMap getSelectionMap(Iterable<Map.Entry<K, V>> value) {
-        return new SelectionMap(ImmutableMap.<String, Object>of(
-                keyFieldName, Iterables.transform(value, keyExtractor),
-                valueFieldName, Iterables.transform(value, valueExtrator)
-        ));
+    protected void bind(SQLStatement<?> statement, Map.Entry<K, V> value) {
+        statement.bind(0, keyExtractor.apply(value));
+        statement.bind(1, valueExtrator.apply(value));
     }
 }
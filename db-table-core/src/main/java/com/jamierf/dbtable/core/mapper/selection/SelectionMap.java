@@ -1,13 +1,20 @@
 package com.jamierf.dbtable.core.mapper.selection;
 
 import com.google.common.base.Joiner;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
+import com.jamierf.dbtable.core.sql.FieldType;
 import com.jamierf.dbtable.core.sql.InClauseArgumentList;
+import com.jamierf.dbtable.core.sql.SqlDialect;
 
+import javax.annotation.Nullable;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 public class SelectionMap {
@@ -22,38 +29,121 @@ public class SelectionMap {
     private static final Joiner CONDITION_JOINER = Joiner.on(" AND ");
     private static final String EQUALS_CONDITION_TEMPLATE = "%1$s = :%1$s";
     private static final String IN_CONDITION_TEMPLATE = "%1$s IN (%2$s)";
-    private static final String EMPTY_CONDITION = "1";
+    // An empty IN list isn't valid SQL, and matches nothing anyway
+    private static final String NO_MATCH_CONDITION = "1 = 0";
+    // Values may be stored in a wider column than keys of the same kind
+    private static final String VALUE_FIELD = "value_field";
+    private static final String FROM_CONDITION_TEMPLATE = "%1$s >= :%1$s_from";
+    private static final String TO_CONDITION_TEMPLATE = "%1$s < :%1$s_to";
+    private static final String EMPTY_SQL = String.format(SQL_TEMPLATE, "1");
+
+    // Equality conditions only depend on the field name, so share them between every selection
+    private static final LoadingCache<String, String> EQUALS_CONDITIONS = CacheBuilder.newBuilder()
+            .build(new CacheLoader<String, String>() {
+                @Override
+                public String load(String fieldName) {
+                    return String.format(EQUALS_CONDITION_TEMPLATE, fieldName);
+                }
+            });
+
+    // Lists longer than this are bound as a single array where the dialect allows, so the statement doesn't grow
+    // with the list and is reused
+    public static final int MAX_INLINE_VALUES = 64;
+
+    public static String asSql(Collection<String> fieldNames) {
+        final List<String> conditions = Lists.newArrayListWithCapacity(fieldNames.size());
+        for (String fieldName : fieldNames) {
+            conditions.add(EQUALS_CONDITIONS.getUnchecked(fieldName));
+        }
+
+        return asSql(conditions);
+    }
+
+    private static String asSql(List<String> conditions) {
+        return conditions.isEmpty() ? EMPTY_SQL : String.format(SQL_TEMPLATE, CONDITION_JOINER.join(conditions));
+    }
 
     private final Map<String, Object> mapping;
-    private final Collection<String> conditions;
+    private final Map<String, Object> unmodifiableMapping;
+    private final List<String> conditions;
+
+    private String sql;
 
-    @SuppressWarnings("unchecked")
     public SelectionMap(Map<String, Object> selection) {
+        this (selection, SqlDialect.H2);
+    }
+
+    @SuppressWarnings("unchecked")
+    public SelectionMap(Map<String, Object> selection, SqlDialect dialect) {
         mapping = Maps.newHashMap();
-        conditions = Sets.newHashSet();
+        unmodifiableMapping = Collections.unmodifiableMap(mapping);
+        conditions = Lists.newArrayListWithCapacity(selection.size());
 
         for (Map.Entry<String, Object> input : selection.entrySet()) {
             if (input.getValue() instanceof Iterable) {
-                final InClauseArgumentList<Object> in = new InClauseArgumentList<>("bla", (Iterable<Object>) input.getValue());
-                conditions.add(String.format(IN_CONDITION_TEMPLATE, input.getKey(), in.asSql()));
-                mapping.putAll(in.asMap());
+                final List<Object> values = Lists.newArrayList((Iterable<Object>) input.getValue());
+                if (values.isEmpty()) {
+                    conditions.add(NO_MATCH_CONDITION);
+                    continue;
+                }
+
+                final FieldType type = FieldType.of(values.get(0));
+                final String inArray = values.size() > MAX_INLINE_VALUES ? dialect.inArray(input.getKey(), type, !VALUE_FIELD.equals(input.getKey())) : null;
+                if (inArray != null) {
+                    conditions.add(inArray);
+                    mapping.put(input.getKey(), dialect.arrayParameter(values, type));
+                }
+                else {
+                    final InClauseArgumentList<Object> in = new InClauseArgumentList<>(input.getKey(), values);
+                    conditions.add(String.format(IN_CONDITION_TEMPLATE, input.getKey(), in.asSql()));
+                    mapping.putAll(in.asMap());
+                }
             }
             else {
-                conditions.add(String.format(EQUALS_CONDITION_TEMPLATE, input.getKey()));
+                conditions.add(EQUALS_CONDITIONS.getUnchecked(input.getKey()));
                 mapping.put(input.getKey(), input.getValue());
             }
         }
+    }
+
+    private SelectionMap(SelectionMap selection) {
+        mapping = Maps.newHashMap(selection.mapping);
+        unmodifiableMapping = Collections.unmodifiableMap(mapping);
+        conditions = Lists.newArrayList(selection.conditions);
+    }
+
+    // Further restricts the field to the range [from, to), where a null bound leaves that end of the range open.
+    // Keys are compared by the database, so binary keys are ordered as unsigned bytes.
+    public SelectionMap withRange(String fieldName, @Nullable Object from, @Nullable Object to) {
+        final SelectionMap range = new SelectionMap(this);
+
+        if (from != null) {
+            range.conditions.add(String.format(FROM_CONDITION_TEMPLATE, fieldName));
+            range.mapping.put(fieldName + "_from", from);
+        }
 
-        if (conditions.isEmpty()) {
-            conditions.add(EMPTY_CONDITION);
+        if (to != null) {
+            range.conditions.add(String.format(TO_CONDITION_TEMPLATE, fieldName));
+            range.mapping.put(fieldName + "_to", to);
         }
+
+        return range;
+    }
+
+    // Whether there are no conditions, so every cell is selected
+    public boolean isEmpty() {
+        return conditions.isEmpty();
     }
 
     public Map<String, Object> asMap() {
-        return Collections.unmodifiableMap(mapping);
+        return unmodifiableMapping;
     }
 
     public String asSql() {
-        return String.format(SQL_TEMPLATE, CONDITION_JOINER.join(conditions));
+        if (sql == null) {
+            sql = asSql(conditions);
+        }
+
+        return sql;
     }
 }
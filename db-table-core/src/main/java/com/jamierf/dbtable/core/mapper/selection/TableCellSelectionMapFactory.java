@@ -1,13 +1,12 @@
 package com.jamierf.dbtable.core.mapper.selection;
 
 import com.google.common.base.Function;
+import com.google.common.base.Functions;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Iterables;
 import com.google.common.collect.Table;
 import com.jamierf.dbtable.core.mapper.TableCellExtractor;
-
-import java.util.Collection;
+import com.jamierf.dbtable.core.mapper.result.table.TableCellMapper;
+import org.skife.jdbi.v2.SQLStatement;
 
 public class TableCellSelectionMapFactory<R, C, V> extends AbstractSelectionMapFactory<Table.Cell<R, C, V>> {
 
@@ -15,40 +14,46 @@ public class TableCellSelectionMapFactory<R, C, V> extends AbstractSelectionMapF
     private final String columnFieldName;
     private final String valueFieldName;
 
-    private final Function<Table.Cell<R, C, V>, R> rowExtractor;
-    private final Function<Table.Cell<R, C, V>, C> columnExtractor;
-    private final Function<Table.Cell<R, C, V>, V> valueExtractor;
+    private final Function<Table.Cell<R, C, V>, ?> rowExtractor;
+    private final Function<Table.Cell<R, C, V>, ?> columnExtractor;
+    private final Function<Table.Cell<R, C, V>, ?> valueExtractor;
 
     public TableCellSelectionMapFactory(String rowFieldName, String columnFieldName, String valueFieldName) {
+        this (rowFieldName, columnFieldName, valueFieldName, Functions.identity(), Functions.identity(), Functions.identity());
+    }
+
+    // Matches cells in the form the mappers store them
+    public TableCellSelectionMapFactory(TableCellMapper<R, C, V> mapper) {
+        this (mapper.getRowMapper().getFieldName(), mapper.getColumnMapper().getFieldName(), mapper.getValueMapper().getFieldName(),
+                encoder(mapper.getRowMapper()), encoder(mapper.getColumnMapper()), encoder(mapper.getValueMapper()));
+    }
+
+    private TableCellSelectionMapFactory(String rowFieldName, String columnFieldName, String valueFieldName,
+                                         Function<? super R, ?> rowEncoder, Function<? super C, ?> columnEncoder, Function<? super V, ?> valueEncoder) {
+        super (rowFieldName, columnFieldName, valueFieldName);
+
         this.rowFieldName = rowFieldName;
         this.columnFieldName = columnFieldName;
         this.valueFieldName = valueFieldName;
 
-        rowExtractor = TableCellExtractor.getRow();
-        columnExtractor = TableCellExtractor.getColumn();
-        valueExtractor = TableCellExtractor.getValue();
-    }
-
-    @Override
-    public Collection<String> keyFields() {
-        return ImmutableSet.of(rowFieldName, columnFieldName, valueFieldName);
+        rowExtractor = Functions.compose(rowEncoder, TableCellExtractor.<R, C, V>getRow());
+        columnExtractor = Functions.compose(columnEncoder, TableCellExtractor.<R, C, V>getColumn());
+        valueExtractor = Functions.compose(valueEncoder, TableCellExtractor.<R, C, V>getValue());
     }
 
     @Override
     public SelectionMap getSelectionMap(Table.Cell<R, C, V> value) {
-        return new SelectionMap(ImmutableMap.of(
-                rowFieldName, value.getRowKey(),
-                columnFieldName, value.getColumnKey(),
-                valueFieldName, value.getValue()
+        return new SelectionMap(ImmutableMap.<String, Object>of(
+                rowFieldName, rowExtractor.apply(value),
+                columnFieldName, columnExtractor.apply(value),
+                valueFieldName, valueExtractor.apply(value)
         ));
     }
 
     @Override
-    public SelectionMap getSelectionMap(Iterable<Table.Cell<R, C, V>> value) {
-        return new SelectionMap(ImmutableMap.<String, Object>of(
-                rowFieldName, Iterables.transform(value, rowExtractor),
-                columnFieldName, Iterables.transform(value, columnExtractor),
-                valueFieldName, Iterables.transform(value, valueExtractor)
-        ));
+    protected void bind(SQLStatement<?> statement, Table.Cell<R, C, V> value) {
+        statement.bind(0, rowExtractor.apply(value));
+        statement.bind(1, columnExtractor.apply(value));
+        statement.bind(2, valueExtractor.apply(value));
     }
 }
@@ -0,0 +1,908 @@
+package com.jamierf.dbtable.core.shard;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ForwardingMap;
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Table;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.primitives.UnsignedBytes;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.jamierf.dbtable.core.CloseableIterator;
+import com.jamierf.dbtable.core.DbTable;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Spreads a table over several {@link DbTable}s, each in its own database or as partitions of one database, by a
+ * consistent hash of the row key. Every cell of a row lives in the same shard, so operations on a single row go to one shard while the rest
+ * query every shard concurrently and merge the results. Iterators read one shard at a time, opening the next shard's
+ * cursor on the executor while the current one is read, and are closeable.
+ * <p>
+ * Each shard is used from the executor's threads, so shards should be built from a {@link org.skife.jdbi.v2.IDBI}
+ * unless the executor runs tasks on the calling thread.
+ */
+public class ShardedDbTable implements Table<byte[], byte[], byte[]>, Closeable {
+
+    private static final String THREAD_NAME_FORMAT = "sharded-db-table-%d";
+    private static final HashFunction ROW_HASH = Hashing.murmur3_128();
+
+    public static ShardedDbTable create(List<DbTable> shards) {
+        for (DbTable shard : shards) {
+            Preconditions.checkArgument(!shard.isSharedHandle(), "a shard built from a single handle can only be used by one thread");
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(shards.size(), new ThreadFactoryBuilder()
+                .setNameFormat(THREAD_NAME_FORMAT)
+                .setDaemon(true)
+                .build());
+
+        return new ShardedDbTable(shards, executor, true);
+    }
+
+    private final List<DbTable> shards;
+    private final ListeningExecutorService executor;
+    private final boolean ownsExecutor;
+
+    public ShardedDbTable(List<DbTable> shards, ExecutorService executor) {
+        this (shards, executor, false);
+    }
+
+    private ShardedDbTable(List<DbTable> shards, ExecutorService executor, boolean ownsExecutor) {
+        Preconditions.checkArgument(!shards.isEmpty(), "at least one shard is required");
+
+        this.shards = ImmutableList.copyOf(shards);
+        this.executor = MoreExecutors.listeningDecorator(Preconditions.checkNotNull(executor));
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    // Adding a shard only moves the rows that now hash to it
+    private DbTable shard(Object row) {
+        if (!(row instanceof byte[])) {
+            return shards.get(0);
+        }
+
+        return shards.get(Hashing.consistentHash(ROW_HASH.hashBytes((byte[]) row), shards.size()));
+    }
+
+    private <T> List<T> fanOut(final Function<DbTable, T> operation) {
+        final List<ListenableFuture<T>> futures = Lists.newArrayListWithCapacity(shards.size());
+        for (final DbTable shard : shards) {
+            futures.add(executor.submit(new Callable<T>() {
+                @Override
+                public T call() {
+                    return operation.apply(shard);
+                }
+            }));
+        }
+
+        return await(Futures.allAsList(futures));
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw Throwables.propagate(e);
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    private static int sum(List<Integer> sizes) {
+        int total = 0;
+        for (int size : sizes) {
+            total += size;
+        }
+
+        return total;
+    }
+
+    private static boolean any(List<Boolean> results) {
+        return results.contains(Boolean.TRUE);
+    }
+
+    // Holds at most the current shard's cursor and the next one's, whose first page is read while the current is
+    private <T> CloseableIterator<T> concat(final Function<DbTable, ? extends Collection<T>> view) {
+        return new ShardIterator<>(view);
+    }
+
+    private int size(final Function<DbTable, ? extends Collection<?>> view) {
+        return sum(fanOut(new Function<DbTable, Integer>() {
+            @Override
+            public Integer apply(DbTable shard) {
+                return view.apply(shard).size();
+            }
+        }));
+    }
+
+    @Override
+    public boolean contains(Object row, Object column) {
+        return shard(row).contains(row, column);
+    }
+
+    @Override
+    public boolean containsRow(Object row) {
+        return shard(row).containsRow(row);
+    }
+
+    @Override
+    public boolean containsColumn(final Object column) {
+        return any(fanOut(new Function<DbTable, Boolean>() {
+            @Override
+            public Boolean apply(DbTable shard) {
+                return shard.containsColumn(column);
+            }
+        }));
+    }
+
+    @Override
+    public boolean containsValue(final Object value) {
+        return any(fanOut(new Function<DbTable, Boolean>() {
+            @Override
+            public Boolean apply(DbTable shard) {
+                return shard.containsValue(value);
+            }
+        }));
+    }
+
+    @Override
+    public byte[] get(Object row, Object column) {
+        return shard(row).get(row, column);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return !fanOut(new Function<DbTable, Boolean>() {
+            @Override
+            public Boolean apply(DbTable shard) {
+                return shard.isEmpty();
+            }
+        }).contains(Boolean.FALSE);
+    }
+
+    @Override
+    public int size() {
+        return sum(fanOut(new Function<DbTable, Integer>() {
+            @Override
+            public Integer apply(DbTable shard) {
+                return shard.size();
+            }
+        }));
+    }
+
+    @Override
+    public void clear() {
+        fanOut(new Function<DbTable, Void>() {
+            @Override
+            public Void apply(DbTable shard) {
+                shard.clear();
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public byte[] put(@Nullable byte[] row, @Nullable byte[] column, @Nullable byte[] value) {
+        return shard(Preconditions.checkNotNull(row)).put(row, column, value);
+    }
+
+    @Override
+    public void putAll(@Nullable Table<? extends byte[], ? extends byte[], ? extends byte[]> table) {
+        final Map<DbTable, Table<byte[], byte[], byte[]>> partitions = Maps.newHashMap();
+        for (Table.Cell<? extends byte[], ? extends byte[], ? extends byte[]> cell : table.cellSet()) {
+            final DbTable shard = shard(cell.getRowKey());
+
+            Table<byte[], byte[], byte[]> partition = partitions.get(shard);
+            if (partition == null) {
+                partition = HashBasedTable.create();
+                partitions.put(shard, partition);
+            }
+
+            partition.put(cell.getRowKey(), cell.getColumnKey(), cell.getValue());
+        }
+
+        fanOut(new Function<DbTable, Void>() {
+            @Override
+            public Void apply(DbTable shard) {
+                final Table<byte[], byte[], byte[]> partition = partitions.get(shard);
+                if (partition != null) {
+                    shard.putAll(partition);
+                }
+
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public byte[] remove(Object row, Object column) {
+        return shard(row).remove(row, column);
+    }
+
+    @Override
+    public Map<byte[], byte[]> row(@Nullable byte[] row) {
+        return shard(row).row(row);
+    }
+
+    @Override
+    public Map<byte[], byte[]> column(@Nullable final byte[] column) {
+        return new AbstractMap<byte[], byte[]>() {
+            @Override
+            public boolean containsKey(Object row) {
+                return ShardedDbTable.this.contains(row, column);
+            }
+
+            @Override
+            public byte[] get(Object row) {
+                return ShardedDbTable.this.get(row, column);
+            }
+
+            @Override
+            public byte[] put(byte[] row, byte[] value) {
+                return ShardedDbTable.this.put(row, column, value);
+            }
+
+            @Override
+            public byte[] remove(Object row) {
+                return ShardedDbTable.this.remove(row, column);
+            }
+
+            @Override
+            public void clear() {
+                keySet().clear();
+            }
+
+            @Override
+            public Set<byte[]> keySet() {
+                return new ShardedSet<byte[]>() {
+                    @Override
+                    protected Collection<byte[]> view(DbTable shard) {
+                        return shard.column(column).keySet();
+                    }
+
+                    @Override
+                    protected Object row(Object row) {
+                        return row;
+                    }
+                };
+            }
+
+            @Override
+            public Collection<byte[]> values() {
+                return new ShardedCollection<byte[]>() {
+                    @Override
+                    protected Collection<byte[]> view(DbTable shard) {
+                        return shard.column(column).values();
+                    }
+                };
+            }
+
+            @Override
+            public Set<Entry<byte[], byte[]>> entrySet() {
+                return new ShardedSet<Entry<byte[], byte[]>>() {
+                    @Override
+                    protected Collection<Entry<byte[], byte[]>> view(DbTable shard) {
+                        return shard.column(column).entrySet();
+                    }
+
+                    @Override
+                    protected Object row(Object entry) {
+                        return entry instanceof Entry ? ((Entry<?, ?>) entry).getKey() : null;
+                    }
+                };
+            }
+        };
+    }
+
+    @Override
+    public Set<Cell<byte[], byte[], byte[]>> cellSet() {
+        return new ShardedSet<Cell<byte[], byte[], byte[]>>() {
+            @Override
+            protected Collection<Cell<byte[], byte[], byte[]>> view(DbTable shard) {
+                return shard.cellSet();
+            }
+
+            @Override
+            protected Object row(Object cell) {
+                return cell instanceof Cell ? ((Cell<?, ?, ?>) cell).getRowKey() : null;
+            }
+
+            @Override
+            public int size() {
+                return ShardedDbTable.this.size();
+            }
+        };
+    }
+
+    @Override
+    public Set<byte[]> rowKeySet() {
+        return new ShardedSet<byte[]>() {
+            @Override
+            protected Collection<byte[]> view(DbTable shard) {
+                return shard.rowKeySet();
+            }
+
+            @Override
+            protected Object row(Object row) {
+                return row;
+            }
+        };
+    }
+
+    // A column may have cells in every shard, so each iteration merges the keys of every shard into a snapshot
+    @Override
+    public Set<byte[]> columnKeySet() {
+        return new ShardedSet<byte[]>() {
+            @Override
+            protected Collection<byte[]> view(DbTable shard) {
+                return shard.columnKeySet();
+            }
+
+            @Override
+            public boolean contains(Object column) {
+                return containsColumn(column);
+            }
+
+            @Override
+            public boolean remove(final Object column) {
+                return any(fanOut(new Function<DbTable, Boolean>() {
+                    @Override
+                    public Boolean apply(DbTable shard) {
+                        return view(shard).remove(column);
+                    }
+                }));
+            }
+
+            @Override
+            public CloseableIterator<byte[]> iterator() {
+                final Iterator<byte[]> columns = columnKeys().iterator();
+                return new CloseableIterator<byte[]>() {
+                    private byte[] last;
+
+                    @Override
+                    public boolean hasNext() {
+                        return columns.hasNext();
+                    }
+
+                    @Override
+                    public byte[] next() {
+                        last = columns.next();
+                        return last;
+                    }
+
+                    @Override
+                    public void remove() {
+                        Preconditions.checkState(last != null, "no column to remove");
+                        ShardedDbTable.this.columnKeySet().remove(last);
+                        last = null;
+                    }
+
+                    @Override
+                    public void close() {}
+                };
+            }
+
+            @Override
+            public int size() {
+                return columnKeys().size();
+            }
+        };
+    }
+
+    private Set<byte[]> columnKeys() {
+        final List<Set<byte[]>> columns = fanOut(new Function<DbTable, Set<byte[]>>() {
+            @Override
+            public Set<byte[]> apply(DbTable shard) {
+                return ImmutableSortedSet.copyOf(UnsignedBytes.lexicographicalComparator(), shard.columnKeySet());
+            }
+        });
+
+        return ImmutableSortedSet.copyOf(UnsignedBytes.lexicographicalComparator(), Iterables.concat(columns));
+    }
+
+    @Override
+    public Collection<byte[]> values() {
+        return new ShardedCollection<byte[]>() {
+            @Override
+            protected Collection<byte[]> view(DbTable shard) {
+                return shard.values();
+            }
+
+            @Override
+            public int size() {
+                return ShardedDbTable.this.size();
+            }
+        };
+    }
+
+    @Override
+    public Map<byte[], Map<byte[], byte[]>> rowMap() {
+        return new AbstractMap<byte[], Map<byte[], byte[]>>() {
+            @Override
+            public boolean containsKey(Object row) {
+                return containsRow(row);
+            }
+
+            @Override
+            public Map<byte[], byte[]> get(Object row) {
+                return shard(row).rowMap().get(row);
+            }
+
+            @Override
+            public Map<byte[], byte[]> remove(Object row) {
+                return shard(row).rowMap().remove(row);
+            }
+
+            @Override
+            public void clear() {
+                ShardedDbTable.this.clear();
+            }
+
+            @Override
+            public Set<byte[]> keySet() {
+                return rowKeySet();
+            }
+
+            @Override
+            public Collection<Map<byte[], byte[]>> values() {
+                return new ShardedCollection<Map<byte[], byte[]>>() {
+                    @Override
+                    protected Collection<Map<byte[], byte[]>> view(DbTable shard) {
+                        return shard.rowMap().values();
+                    }
+
+                    @Override
+                    public int size() {
+                        return rowKeySet().size();
+                    }
+
+                    @Override
+                    public boolean contains(final Object cells) {
+                        return !matchingRows(new Predicate<byte[]>() {
+                            @Override
+                            public boolean apply(byte[] row) {
+                                return holds(row, cells);
+                            }
+                        }, true).isEmpty();
+                    }
+
+                    @Override
+                    public boolean remove(final Object cells) {
+                        return rowKeySet().removeAll(matchingRows(new Predicate<byte[]>() {
+                            @Override
+                            public boolean apply(byte[] row) {
+                                return holds(row, cells);
+                            }
+                        }, true));
+                    }
+
+                    @Override
+                    public boolean removeAll(final Collection<?> values) {
+                        return rowKeySet().removeAll(matchingRows(new Predicate<byte[]>() {
+                            @Override
+                            public boolean apply(byte[] row) {
+                                return holdsAny(row, values);
+                            }
+                        }, false));
+                    }
+
+                    @Override
+                    public boolean retainAll(final Collection<?> values) {
+                        return rowKeySet().removeAll(matchingRows(new Predicate<byte[]>() {
+                            @Override
+                            public boolean apply(byte[] row) {
+                                return !holdsAny(row, values);
+                            }
+                        }, false));
+                    }
+                };
+            }
+
+            @Override
+            public Set<Entry<byte[], Map<byte[], byte[]>>> entrySet() {
+                return new ShardedSet<Entry<byte[], Map<byte[], byte[]>>>() {
+                    @Override
+                    protected Collection<Entry<byte[], Map<byte[], byte[]>>> view(DbTable shard) {
+                        return shard.rowMap().entrySet();
+                    }
+
+                    @Override
+                    protected Object row(Object entry) {
+                        return entry instanceof Entry ? ((Entry<?, ?>) entry).getKey() : null;
+                    }
+
+                    @Override
+                    public int size() {
+                        return rowKeySet().size();
+                    }
+
+                    @Override
+                    public boolean contains(Object entry) {
+                        return entry instanceof Entry && holds(((Entry<?, ?>) entry).getKey(), ((Entry<?, ?>) entry).getValue());
+                    }
+
+                    @Override
+                    public boolean remove(Object entry) {
+                        return contains(entry) && rowKeySet().remove(((Entry<?, ?>) entry).getKey());
+                    }
+
+                    @Override
+                    public boolean removeAll(Collection<?> entries) {
+                        boolean changed = false;
+                        for (Object entry : entries) {
+                            changed |= remove(entry);
+                        }
+
+                        return changed;
+                    }
+
+                    @Override
+                    public boolean retainAll(Collection<?> entries) {
+                        final Map<ByteBuffer, Object> retained = Maps.newHashMap();
+                        for (Object entry : entries) {
+                            if (entry instanceof Entry && ((Entry<?, ?>) entry).getKey() instanceof byte[]) {
+                                retained.put(ByteBuffer.wrap((byte[]) ((Entry<?, ?>) entry).getKey()), ((Entry<?, ?>) entry).getValue());
+                            }
+                        }
+
+                        return rowKeySet().removeAll(matchingRows(new Predicate<byte[]>() {
+                            @Override
+                            public boolean apply(byte[] row) {
+                                final Object cells = retained.get(ByteBuffer.wrap(row));
+                                return cells == null || !holds(row, cells);
+                            }
+                        }, false));
+                    }
+                };
+            }
+        };
+    }
+
+    // Rows span several records, so the database can't match a row's cells as a whole and each row is compared
+    // cell by cell instead
+    private boolean holds(Object row, Object cells) {
+        if (!(row instanceof byte[]) || !(cells instanceof Map)) {
+            return false;
+        }
+
+        final Map<byte[], byte[]> stored = row((byte[]) row);
+        final Map<?, ?> given = (Map<?, ?>) cells;
+        if (given.isEmpty() || stored.size() != given.size()) {
+            return false;
+        }
+
+        for (Map.Entry<?, ?> cell : given.entrySet()) {
+            if (!Objects.deepEquals(stored.get(cell.getKey()), cell.getValue())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean holdsAny(byte[] row, Collection<?> values) {
+        for (Object cells : values) {
+            if (holds(row, cells)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // The keys are read before any row is compared, so no cursor is held open while rows are read or removed
+    private List<byte[]> matchingRows(Predicate<byte[]> matching, boolean first) {
+        final List<byte[]> rows = Lists.newArrayList();
+        for (byte[] row : ImmutableList.copyOf(rowKeySet())) {
+            if (matching.apply(row)) {
+                rows.add(row);
+                if (first) {
+                    break;
+                }
+            }
+        }
+
+        return rows;
+    }
+
+    // The column map is as live as the column key set, and removes a column's cells from every shard
+    @Override
+    public Map<byte[], Map<byte[], byte[]>> columnMap() {
+        final Map<byte[], Map<byte[], byte[]>> columns = Maps.asMap(columnKeySet(), new Function<byte[], Map<byte[], byte[]>>() {
+            @Override
+            public Map<byte[], byte[]> apply(byte[] column) {
+                return column(column);
+            }
+        });
+
+        return new ForwardingMap<byte[], Map<byte[], byte[]>>() {
+            @Override
+            protected Map<byte[], Map<byte[], byte[]>> delegate() {
+                return columns;
+            }
+
+            @Override
+            public Map<byte[], byte[]> remove(Object column) {
+                if (!(column instanceof byte[]) || !containsColumn(column)) {
+                    return null;
+                }
+
+                final Map<byte[], byte[]> removed = ImmutableSortedMap.copyOf(column((byte[]) column), UnsignedBytes.lexicographicalComparator());
+                columnKeySet().remove(column);
+                return removed;
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    // The union of the same view of every shard. Writes go to every shard, except that elements kept under a row key
+    // only go to the shard holding that row.
+    private abstract class ShardedCollection<E> extends AbstractCollection<E> {
+
+        private final Function<DbTable, Collection<E>> views = new Function<DbTable, Collection<E>>() {
+            @Override
+            public Collection<E> apply(DbTable shard) {
+                return view(shard);
+            }
+        };
+
+        protected abstract Collection<E> view(DbTable shard);
+
+        // The row key an element is kept under, or null if it could be in any shard
+        @Nullable
+        protected Object row(Object element) {
+            return null;
+        }
+
+        @Override
+        public CloseableIterator<E> iterator() {
+            return concat(views);
+        }
+
+        @Override
+        public int size() {
+            return ShardedDbTable.this.size(views);
+        }
+
+        @Override
+        public boolean contains(final Object element) {
+            final Object row = row(element);
+            if (row != null) {
+                return view(shard(row)).contains(element);
+            }
+
+            return any(fanOut(new Function<DbTable, Boolean>() {
+                @Override
+                public Boolean apply(DbTable shard) {
+                    return view(shard).contains(element);
+                }
+            }));
+        }
+
+        // Removes a single element, so shards are tried in turn until one holds it
+        @Override
+        public boolean remove(Object element) {
+            final Object row = row(element);
+            if (row != null) {
+                return view(shard(row)).remove(element);
+            }
+
+            for (DbTable shard : shards) {
+                if (view(shard).remove(element)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        @Override
+        public boolean removeAll(Collection<?> elements) {
+            return update(elements, false);
+        }
+
+        @Override
+        public boolean retainAll(Collection<?> elements) {
+            return update(elements, true);
+        }
+
+        private boolean update(Collection<?> elements, final boolean retain) {
+            final ListMultimap<DbTable, Object> partitions = ArrayListMultimap.create();
+            final List<Object> anywhere = Lists.newArrayList();
+            for (Object element : elements) {
+                final Object row = row(element);
+                if (row == null) {
+                    anywhere.add(element);
+                }
+                else {
+                    partitions.put(shard(row), element);
+                }
+            }
+
+            return any(fanOut(new Function<DbTable, Boolean>() {
+                @Override
+                public Boolean apply(DbTable shard) {
+                    final List<Object> partition = Lists.newArrayList(partitions.get(shard));
+                    partition.addAll(anywhere);
+                    return retain ? view(shard).retainAll(partition) : view(shard).removeAll(partition);
+                }
+            }));
+        }
+
+        @Override
+        public void clear() {
+            fanOut(new Function<DbTable, Void>() {
+                @Override
+                public Void apply(DbTable shard) {
+                    view(shard).clear();
+                    return null;
+                }
+            });
+        }
+    }
+
+    private abstract class ShardedSet<E> extends ShardedCollection<E> implements Set<E> {
+
+        @Override
+        public boolean equals(Object object) {
+            if (object == this) {
+                return true;
+            }
+
+            if (!(object instanceof Set)) {
+                return false;
+            }
+
+            final Set<?> other = (Set<?>) object;
+            return size() == other.size() && containsAll(other);
+        }
+
+        @Override
+        public int hashCode() {
+            int hashCode = 0;
+            for (E element : this) {
+                hashCode += element == null ? 0 : element.hashCode();
+            }
+
+            return hashCode;
+        }
+    }
+
+    private class ShardIterator<T> extends AbstractIterator<T> implements CloseableIterator<T> {
+
+        private final Function<DbTable, ? extends Collection<T>> view;
+        private final Iterator<DbTable> remaining = shards.iterator();
+        private ListenableFuture<Iterator<T>> next;
+        private Iterator<T> current = Iterators.emptyIterator();
+        private boolean closed;
+
+        private ShardIterator(Function<DbTable, ? extends Collection<T>> view) {
+            this.view = view;
+        }
+
+        private ListenableFuture<Iterator<T>> open() {
+            if (!remaining.hasNext()) {
+                return null;
+            }
+
+            final DbTable shard = remaining.next();
+            return executor.submit(new Callable<Iterator<T>>() {
+                @Override
+                public Iterator<T> call() {
+                    final Iterator<T> iterator = view.apply(shard).iterator();
+                    // Runs the query, so the first page is ready by the time it's read
+                    iterator.hasNext();
+                    return iterator;
+                }
+            });
+        }
+
+        @Override
+        protected T computeNext() {
+            while (!current.hasNext()) {
+                closeIterator(current);
+                current = Iterators.emptyIterator();
+
+                if (next == null && !closed) {
+                    next = open();
+                }
+
+                if (closed || next == null) {
+                    close();
+                    return endOfData();
+                }
+
+                final ListenableFuture<Iterator<T>> opening = next;
+                next = null;
+                current = await(opening);
+                next = open();
+            }
+
+            return current.next();
+        }
+
+        // Waits for a cursor that's still being opened, so every one is closed by the time this returns
+        @Override
+        public void close() {
+            closed = true;
+
+            closeIterator(current);
+            current = Iterators.emptyIterator();
+
+            if (next != null) {
+                try {
+                    closeIterator(next.get());
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    closeWhenOpened(next);
+                }
+                catch (ExecutionException e) {
+                    // Nothing was opened
+                }
+
+                next = null;
+            }
+        }
+
+        private void closeWhenOpened(ListenableFuture<Iterator<T>> opening) {
+            Futures.addCallback(opening, new FutureCallback<Iterator<T>>() {
+                @Override
+                public void onSuccess(Iterator<T> iterator) {
+                    closeIterator(iterator);
+                }
+
+                @Override
+                public void onFailure(Throwable t) {}
+            });
+        }
+
+        private void closeIterator(Iterator<T> iterator) {
+            if (iterator instanceof CloseableIterator) {
+                ((CloseableIterator<T>) iterator).close();
+            }
+        }
+    }
+}
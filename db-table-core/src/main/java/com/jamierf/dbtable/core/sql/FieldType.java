@@ -0,0 +1,28 @@
+package com.jamierf.dbtable.core.sql;
+
+/**
+ * The kind of column a field is stored in. Each dialect chooses the column type for each kind.
+ */
+public enum FieldType {
+    BINARY,
+    BIGINT,
+    VARCHAR,
+    UUID;
+
+    // The kind of column the given stored value belongs in, for array parameters holding it
+    public static FieldType of(Object value) {
+        if (value instanceof Long || value instanceof Integer) {
+            return BIGINT;
+        }
+
+        if (value instanceof String) {
+            return VARCHAR;
+        }
+
+        if (value instanceof java.util.UUID) {
+            return UUID;
+        }
+
+        return BINARY;
+    }
+}
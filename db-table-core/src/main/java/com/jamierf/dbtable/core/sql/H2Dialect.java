@@ -0,0 +1,73 @@
+package com.jamierf.dbtable.core.sql;
+
+import org.skife.jdbi.v2.SQLStatement;
+
+import java.util.List;
+import java.util.Map;
+
+class H2Dialect extends SqlDialect {
+
+    @Override
+    protected String keyType() {
+        return "VARBINARY";
+    }
+
+    @Override
+    protected String valueType() {
+        return "BLOB";
+    }
+
+    @Override
+    protected String stringKeyType() {
+        return "VARCHAR";
+    }
+
+    @Override
+    protected String stringValueType() {
+        return "VARCHAR";
+    }
+
+    // MERGE updates an existing row in place, where REPLACE deletes and reinserts it
+    @Override
+    public String upsert(String tableName, String valuesSql) {
+        return String.format("MERGE INTO %s (%s) KEY (row_field, column_field) VALUES %s", tableName, FIELDS_SQL, valuesSql);
+    }
+
+    // H2 stores unquoted names in upper case. Selectivity is the percentage of values in a column that are distinct.
+    @Override
+    public String estimateCells() {
+        return "SELECT ROW_COUNT_ESTIMATE FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = UPPER(:table_name)";
+    }
+
+    @Override
+    public String estimateDistinct() {
+        return "SELECT CASE WHEN t.ROW_COUNT_ESTIMATE = 0 THEN 0 ELSE GREATEST(1, t.ROW_COUNT_ESTIMATE * c.SELECTIVITY / 100) END"
+                + " FROM INFORMATION_SCHEMA.TABLES t INNER JOIN INFORMATION_SCHEMA.COLUMNS c ON c.TABLE_SCHEMA = t.TABLE_SCHEMA AND c.TABLE_NAME = t.TABLE_NAME"
+                + " WHERE t.TABLE_NAME = UPPER(:table_name) AND c.COLUMN_NAME = UPPER(:field_name)";
+    }
+
+    @Override
+    public String inArray(String fieldName, FieldType type, boolean key) {
+        return String.format("%1$s IN (SELECT v FROM TABLE(v %2$s = :%1$s))", fieldName, columnType(type, key));
+    }
+
+    // Row value IN lists are table scans in H2, so the keys are bound as arrays and joined against instead
+    @Override
+    public String selectKeys(String tableName, int keys, FieldType rowType, FieldType columnType) {
+        return String.format("SELECT t.row_field, t.column_field, t.value_field FROM TABLE(row_field %2$s = :row_field, column_field %3$s = :column_field) k INNER JOIN %1$s t ON t.row_field = k.row_field AND t.column_field = k.column_field",
+                tableName, columnType(rowType, true), columnType(columnType, true));
+    }
+
+    @Override
+    public void bindKeys(SQLStatement<?> statement, List<? extends Map.Entry<?, ?>> keys) {
+        final Object[] rows = new Object[keys.size()];
+        final Object[] columns = new Object[keys.size()];
+        for (int i = 0; i < keys.size(); i++) {
+            rows[i] = keys.get(i).getKey();
+            columns[i] = keys.get(i).getValue();
+        }
+
+        statement.bind("row_field", rows);
+        statement.bind("column_field", columns);
+    }
+}
@@ -0,0 +1,55 @@
+package com.jamierf.dbtable.core.sql;
+
+class MySqlDialect extends SqlDialect {
+
+    // Both keys fit in InnoDB's index key limit even with the COMPACT row format
+    @Override
+    protected String keyType() {
+        return "VARBINARY(767)";
+    }
+
+    @Override
+    protected String valueType() {
+        return "LONGBLOB";
+    }
+
+    // 191 four byte characters fit in the same index key limit. The default collation ignores case and accents,
+    // so "a" and "A" would be the same key and keys wouldn't be ordered as Java orders them.
+    @Override
+    protected String stringKeyType() {
+        return "VARCHAR(191) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin";
+    }
+
+    @Override
+    protected String stringValueType() {
+        return "LONGTEXT";
+    }
+
+    // Connector/J can't bind UUID objects
+    @Override
+    protected String uuidType() {
+        throw new UnsupportedOperationException("MySQL has no UUID type");
+    }
+
+    @Override
+    public String upsert(String tableName, String valuesSql) {
+        return String.format("INSERT INTO %s (%s) VALUES %s ON DUPLICATE KEY UPDATE value_field = VALUES(value_field)", tableName, FIELDS_SQL, valuesSql);
+    }
+
+    // InnoDB samples both from its indexes, and every table has one leading with each of its key fields
+    @Override
+    public String estimateCells() {
+        return "SELECT table_rows FROM information_schema.tables WHERE table_schema = DATABASE() AND table_name = :table_name";
+    }
+
+    @Override
+    public String estimateDistinct() {
+        return "SELECT MAX(cardinality) FROM information_schema.statistics WHERE table_schema = DATABASE() AND table_name = :table_name AND column_name = :field_name AND seq_in_index = 1";
+    }
+
+    // MySQL has no CREATE INDEX IF NOT EXISTS, tables only create the index once they've checked it's missing
+    @Override
+    public String createIndex(String indexName, String tableName, String fieldsSql) {
+        return String.format("CREATE INDEX %s ON %s (%s)", indexName, tableName, fieldsSql);
+    }
+}
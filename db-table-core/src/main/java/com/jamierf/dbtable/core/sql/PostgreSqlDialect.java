@@ -0,0 +1,67 @@
+package com.jamierf.dbtable.core.sql;
+
+import java.util.List;
+
+class PostgreSqlDialect extends SqlDialect {
+
+    @Override
+    protected String keyType() {
+        return "BYTEA";
+    }
+
+    @Override
+    protected String valueType() {
+        return "BYTEA";
+    }
+
+    @Override
+    public String upsert(String tableName, String valuesSql) {
+        return String.format("INSERT INTO %s (%s) VALUES %s ON CONFLICT (row_field, column_field) DO UPDATE SET value_field = EXCLUDED.value_field", tableName, FIELDS_SQL, valuesSql);
+    }
+
+    // Both are only known once the table has been analysed. A negative n_distinct is the fraction of rows that are
+    // distinct, for values expected to grow with the table.
+    @Override
+    public String estimateCells() {
+        return "SELECT CAST(reltuples AS BIGINT) FROM pg_class WHERE oid = CAST(:table_name AS regclass) AND reltuples >= 0";
+    }
+
+    @Override
+    public String estimateDistinct() {
+        return "SELECT CAST(CASE WHEN s.n_distinct < 0 THEN -s.n_distinct * c.reltuples ELSE s.n_distinct END AS BIGINT)"
+                + " FROM pg_class c INNER JOIN pg_namespace n ON n.oid = c.relnamespace INNER JOIN pg_stats s ON s.schemaname = n.nspname AND s.tablename = c.relname"
+                + " WHERE c.oid = CAST(:table_name AS regclass) AND c.reltuples >= 0 AND s.attname = :field_name";
+    }
+
+    // The driver only binds arrays of a known element type, which is cast to the type of the column
+    @Override
+    public String inArray(String fieldName, FieldType type, boolean key) {
+        return String.format("%1$s = ANY(CAST(:%1$s AS %2$s[]))", fieldName, columnType(type, key));
+    }
+
+    @Override
+    public Object arrayParameter(List<?> values, FieldType type) {
+        switch (type) {
+            case BINARY:
+                return values.toArray(new byte[values.size()][]);
+            case BIGINT:
+                final Long[] longs = new Long[values.size()];
+                for (int i = 0; i < longs.length; i++) {
+                    longs[i] = ((Number) values.get(i)).longValue();
+                }
+
+                return longs;
+            case VARCHAR:
+            case UUID:
+                // UUIDs are bound as text, then cast
+                final String[] strings = new String[values.size()];
+                for (int i = 0; i < strings.length; i++) {
+                    strings[i] = values.get(i).toString();
+                }
+
+                return strings;
+            default:
+                throw new IllegalArgumentException("Unknown field type: " + type);
+        }
+    }
+}
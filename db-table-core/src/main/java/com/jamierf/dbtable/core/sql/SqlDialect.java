@@ -0,0 +1,123 @@
+package com.jamierf.dbtable.core.sql;
+
+import com.google.common.base.Joiner;
+import org.skife.jdbi.v2.SQLStatement;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The SQL that differs between database engines. Tables build every statement that isn't plain standard SQL
+ * through their dialect, so another engine is supported by implementing a dialect for it.
+ */
+public abstract class SqlDialect {
+
+    public static final SqlDialect H2 = new H2Dialect();
+    public static final SqlDialect MYSQL = new MySqlDialect();
+    public static final SqlDialect POSTGRESQL = new PostgreSqlDialect();
+    public static final SqlDialect SQLITE = new SqliteDialect();
+
+    protected static final String FIELDS_SQL = "row_field, column_field, value_field";
+
+    private static final String KEY_VALUES = "(?, ?)";
+    private static final Joiner VALUES_JOINER = Joiner.on(", ");
+
+    // The column types for row and column keys, and for values
+    protected abstract String keyType();
+    protected abstract String valueType();
+
+    protected String stringKeyType() {
+        return "VARCHAR(255)";
+    }
+
+    protected String stringValueType() {
+        return "TEXT";
+    }
+
+    protected String uuidType() {
+        return "UUID";
+    }
+
+    // Keys are part of the primary key, so may need a more limited type than values of the same kind
+    public String columnType(FieldType type, boolean key) {
+        switch (type) {
+            case BINARY:
+                return key ? keyType() : valueType();
+            case BIGINT:
+                return "BIGINT";
+            case VARCHAR:
+                return key ? stringKeyType() : stringValueType();
+            case UUID:
+                return uuidType();
+            default:
+                throw new IllegalArgumentException("Unknown field type: " + type);
+        }
+    }
+
+    // Inserts the given rows of (row_field, column_field, value_field), replacing the value of any cell that exists
+    public abstract String upsert(String tableName, String valuesSql);
+
+    public String createTable(String tableName) {
+        return createTable(tableName, FieldType.BINARY, FieldType.BINARY, FieldType.BINARY);
+    }
+
+    public String createTable(String tableName, FieldType rowType, FieldType columnType, FieldType valueType) {
+        return String.format("CREATE TABLE IF NOT EXISTS %1$s (row_field %2$s NOT NULL, column_field %3$s NOT NULL, value_field %4$s NOT NULL, PRIMARY KEY (row_field, column_field))",
+                tableName, columnType(rowType, true), columnType(columnType, true), columnType(valueType, false));
+    }
+
+    public String createIndex(String indexName, String tableName, String fieldsSql) {
+        return String.format("CREATE INDEX IF NOT EXISTS %s ON %s (%s)", indexName, tableName, fieldsSql);
+    }
+
+    public String truncate(String tableName) {
+        return String.format("TRUNCATE TABLE %s", tableName);
+    }
+
+    public String forUpdate(String selectSql) {
+        return selectSql + " FOR UPDATE";
+    }
+
+    public String limit(String selectSql, String limitSql) {
+        return String.format("%s LIMIT %s", selectSql, limitSql);
+    }
+
+    // Estimates the number of cells in the :table_name table from the engine's statistics, or null if it keeps none
+    public String estimateCells() {
+        return null;
+    }
+
+    // Estimates the number of distinct values of :field_name in the :table_name table, or null as for estimateCells
+    public String estimateDistinct() {
+        return null;
+    }
+
+    // A condition matching the field against every value in the arrayParameter bound to the parameter of the same
+    // name, or null if a list of values can't be bound as a single parameter, when the values are listed inline instead
+    public String inArray(String fieldName, FieldType type, boolean key) {
+        return null;
+    }
+
+    // The array bound for inArray, holding each of the values
+    public Object arrayParameter(List<?> values, FieldType type) {
+        return values.toArray();
+    }
+
+    // Selects the cells with the given number of (row_field, column_field) keys, bound by bindKeys
+    public String selectKeys(String tableName, int keys) {
+        return selectKeys(tableName, keys, FieldType.BINARY, FieldType.BINARY);
+    }
+
+    public String selectKeys(String tableName, int keys, FieldType rowType, FieldType columnType) {
+        return String.format("SELECT %s FROM %s WHERE (row_field, column_field) IN (%s)", FIELDS_SQL, tableName, VALUES_JOINER.join(Collections.nCopies(keys, KEY_VALUES)));
+    }
+
+    public void bindKeys(SQLStatement<?> statement, List<? extends Map.Entry<?, ?>> keys) {
+        int position = 0;
+        for (Map.Entry<?, ?> key : keys) {
+            statement.bind(position++, key.getKey());
+            statement.bind(position++, key.getValue());
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.jamierf.dbtable.core.sql;
+
+// Upserts and row values need SQLite 3.24 or later
+class SqliteDialect extends SqlDialect {
+
+    @Override
+    protected String keyType() {
+        return "BLOB";
+    }
+
+    @Override
+    protected String valueType() {
+        return "BLOB";
+    }
+
+    @Override
+    protected String uuidType() {
+        throw new UnsupportedOperationException("SQLite has no UUID type");
+    }
+
+    @Override
+    public String upsert(String tableName, String valuesSql) {
+        return String.format("INSERT INTO %s (%s) VALUES %s ON CONFLICT (row_field, column_field) DO UPDATE SET value_field = excluded.value_field", tableName, FIELDS_SQL, valuesSql);
+    }
+
+    @Override
+    public String truncate(String tableName) {
+        return String.format("DELETE FROM %s", tableName);
+    }
+
+    // SQLite locks the whole database for writes, so there are no row locks to take
+    @Override
+    public String forUpdate(String selectSql) {
+        return selectSql;
+    }
+}
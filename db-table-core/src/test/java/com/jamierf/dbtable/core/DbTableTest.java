@@ -1,6 +1,17 @@
 package com.jamierf.dbtable.core;
 
+import com.google.common.base.Strings;
 import com.google.common.collect.*;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+import com.jamierf.dbtable.core.mapper.result.field.FieldMapper;
+import com.jamierf.dbtable.core.mapper.result.field.FieldMapperFactory;
+import com.jamierf.dbtable.core.mapper.result.field.LongFieldMapperFactory;
+import com.jamierf.dbtable.core.mapper.result.field.StringFieldMapperFactory;
+import com.jamierf.dbtable.core.mapper.selection.SelectionMap;
+import com.jamierf.dbtable.core.shard.ShardedDbTable;
+import com.jamierf.dbtable.core.sql.SqlDialect;
 import com.jamierf.dbtable.core.util.StringCodec;
 import com.yammer.collections.transforming.TransformingTable;
 import org.apache.commons.lang3.RandomStringUtils;
@@ -9,10 +20,32 @@ import org.junit.Before;
 import org.junit.Test;
 import org.skife.jdbi.v2.DBI;
 import org.skife.jdbi.v2.Handle;
-
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.TimingCollector;
+import org.skife.jdbi.v2.util.ByteArrayMapper;
+import org.skife.jdbi.v2.util.IntegerMapper;
+import org.skife.jdbi.v2.util.StringMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.*;
 
@@ -41,6 +74,10 @@ public class DbTableTest {
         );
     }
 
+    private static byte[] bytes(String value) {
+        return StringCodec.ENCODER.apply(value);
+    }
+
     private void dropTable(String name) {
         handle.execute(String.format("DROP TABLE %s", name));
     }
@@ -150,6 +187,55 @@ public class DbTableTest {
         assertEquals(1, table.size());
     }
 
+    // Test set
+
+    @Test
+    public void testSet_PutsExpectedValue() {
+        new DbTable(DATABASE_NAME, handle).set(bytes(TEST_ROW), bytes(TEST_COLUMN), bytes(TEST_VALUE));
+
+        assertEquals(TEST_VALUE, table.get(TEST_ROW, TEST_COLUMN));
+    }
+
+    @Test
+    public void testSet_ExistingValueOverwritten() {
+        table.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
+        new DbTable(DATABASE_NAME, handle).set(bytes(TEST_ROW), bytes(TEST_COLUMN), bytes("value1"));
+
+        assertEquals(1, table.size());
+        assertEquals("value1", table.get(TEST_ROW, TEST_COLUMN));
+    }
+
+    // Test locking writes
+
+    @Test
+    public void testLockingWrites_PutReturnsPreviousValue() {
+        final DbTable lockingTable = new DbTableBuilder(handle).withLockingWrites(true).build(DATABASE_NAME);
+
+        assertNull(lockingTable.put(bytes(TEST_ROW), bytes(TEST_COLUMN), bytes(TEST_VALUE)));
+        assertArrayEquals(bytes(TEST_VALUE), lockingTable.put(bytes(TEST_ROW), bytes(TEST_COLUMN), bytes("value1")));
+        assertEquals("value1", table.get(TEST_ROW, TEST_COLUMN));
+    }
+
+    @Test
+    public void testLockingWrites_RemoveReturnsPreviousValue() {
+        final DbTable lockingTable = new DbTableBuilder(handle).withLockingWrites(true).build(DATABASE_NAME);
+        table.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
+
+        assertArrayEquals(bytes(TEST_VALUE), lockingTable.remove(bytes(TEST_ROW), bytes(TEST_COLUMN)));
+        assertTrue(table.isEmpty());
+    }
+
+    @Test
+    public void testLockingWrites_JoinsOuterTransaction() {
+        final DbTable lockingTable = new DbTableBuilder(handle).withLockingWrites(true).build(DATABASE_NAME);
+
+        handle.begin();
+        lockingTable.put(bytes(TEST_ROW), bytes(TEST_COLUMN), bytes(TEST_VALUE));
+        handle.rollback();
+
+        assertTrue(table.isEmpty());
+    }
+
     // Test putAll
 
     @Test
@@ -189,6 +275,53 @@ public class DbTableTest {
         assertEquals(2, table.size());
     }
 
+    private Table<String, String, String> createTable(DbTableBuilder builder) {
+        return TransformingTable.create(
+                builder.build(DATABASE_NAME),
+                StringCodec.ENCODER, StringCodec.DECODER,
+                StringCodec.ENCODER, StringCodec.DECODER,
+                StringCodec.ENCODER, StringCodec.DECODER
+        );
+    }
+
+    private static Table<String, String, String> createCells(int count) {
+        final ImmutableTable.Builder<String, String, String> builder = ImmutableTable.builder();
+        for (int i = 0; i < count; i++) {
+            builder.put("row" + i, TEST_COLUMN, TEST_VALUE);
+        }
+
+        return builder.build();
+    }
+
+    @Test
+    public void testPutAll_BatchesAllEntriesInserted() {
+        createTable(new DbTableBuilder(handle).withBatchSize(2)).putAll(createCells(5));
+
+        assertEquals(5, table.size());
+    }
+
+    @Test
+    public void testPutAll_CommittedBatchesAllEntriesInserted() {
+        createTable(new DbTableBuilder(handle).withBatchSize(2).withBatchCommits(true)).putAll(createCells(5));
+
+        assertEquals(5, table.size());
+    }
+
+    @Test
+    public void testPutAll_MultiRowInsertsAllEntriesInserted() {
+        final Table<String, String, String> multiRowTable = createTable(new DbTableBuilder(handle).withBatchSize(2).withMultiRowInserts(true));
+        multiRowTable.putAll(createCells(5));
+        multiRowTable.row(TEST_ROW).putAll(ImmutableMap.of(TEST_COLUMN, TEST_VALUE, "column1", "value1", "column2", "value2"));
+
+        assertEquals(8, table.size());
+        assertEquals("value1", table.get(TEST_ROW, "column1"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testPutAll_MultiRowInsertsRequireBatchSize() {
+        new DbTableBuilder(handle).withMultiRowInserts(true).build(DATABASE_NAME);
+    }
+
     // Test get
 
     @Test
@@ -203,6 +336,82 @@ public class DbTableTest {
         assertEquals(TEST_VALUE, table.get(TEST_ROW, TEST_COLUMN));
     }
 
+    // Test getAll
+
+    @Test
+    public void testGetAll_ReturnsRequestedRowsAndColumns() {
+        table.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
+        table.put(TEST_ROW, "column1", "value1");
+        table.put("row1", TEST_COLUMN, TEST_VALUE);
+        table.put("row2", TEST_COLUMN, TEST_VALUE);
+
+        final Table<byte[], byte[], byte[]> result = new DbTable(DATABASE_NAME, handle).getAll(
+                ImmutableList.of(bytes(TEST_ROW), bytes("row1")),
+                ImmutableList.of(bytes(TEST_COLUMN), bytes("column1"), bytes("column2"))
+        );
+
+        assertEquals(3, result.size());
+    }
+
+    @Test
+    public void testGetAll_EmptyKeysReturnsEmptyTable() {
+        table.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
+
+        assertTrue(new DbTable(DATABASE_NAME, handle).getAll(ImmutableList.<byte[]>of(), ImmutableList.of(bytes(TEST_COLUMN))).isEmpty());
+        assertTrue(new DbTable(DATABASE_NAME, handle).getAll(ImmutableList.<Map.Entry<byte[], byte[]>>of()).isEmpty());
+    }
+
+    @Test
+    public void testGetAll_ReturnsOnlyRequestedCells() {
+        table.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
+        table.put(TEST_ROW, "column1", "value1");
+        table.put("row1", TEST_COLUMN, TEST_VALUE);
+        table.put("row1", "column1", "value1");
+
+        final Table<byte[], byte[], byte[]> result = new DbTable(DATABASE_NAME, handle).getAll(ImmutableList.of(
+                Maps.immutableEntry(bytes(TEST_ROW), bytes("column1")),
+                Maps.immutableEntry(bytes("row1"), bytes(TEST_COLUMN)),
+                Maps.immutableEntry(bytes("row2"), bytes(TEST_COLUMN))
+        ));
+
+        assertEquals(2, result.size());
+        for (Table.Cell<byte[], byte[], byte[]> cell : result.cellSet()) {
+            assertEquals(TEST_ROW.equals(StringCodec.DECODER.apply(cell.getRowKey())) ? "value1" : TEST_VALUE, StringCodec.DECODER.apply(cell.getValue()));
+        }
+    }
+
+    @Test
+    public void testGetAll_LargeKeySetIsSplit() {
+        final ImmutableList.Builder<Map.Entry<byte[], byte[]>> keys = ImmutableList.builder();
+        for (int i = 0; i < 1200; i++) {
+            table.put(String.valueOf(i), TEST_COLUMN, TEST_VALUE);
+            keys.add(Maps.immutableEntry(bytes(String.valueOf(i)), bytes(TEST_COLUMN)));
+        }
+
+        assertEquals(1200, new DbTable(DATABASE_NAME, handle).getAll(keys.build()).size());
+    }
+
+    @Test
+    public void testGetAll_RepeatedKeysAreReturnedOnceAndFoundByContent() {
+        table.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
+
+        final DbTable dbTable = new DbTable(DATABASE_NAME, handle);
+
+        final Table<byte[], byte[], byte[]> byRowsAndColumns = dbTable.getAll(
+                ImmutableList.of(bytes(TEST_ROW), bytes(TEST_ROW)),
+                ImmutableList.of(bytes(TEST_COLUMN), bytes(TEST_COLUMN))
+        );
+        assertEquals(1, byRowsAndColumns.size());
+        assertArrayEquals(bytes(TEST_VALUE), byRowsAndColumns.get(bytes(TEST_ROW), bytes(TEST_COLUMN)));
+
+        final Table<byte[], byte[], byte[]> byKeys = dbTable.getAll(ImmutableList.of(
+                Maps.immutableEntry(bytes(TEST_ROW), bytes(TEST_COLUMN)),
+                Maps.immutableEntry(bytes(TEST_ROW), bytes(TEST_COLUMN))
+        ));
+        assertEquals(1, byKeys.size());
+        assertTrue(byKeys.contains(bytes(TEST_ROW), bytes(TEST_COLUMN)));
+    }
+
     // Test rowKeySet
 
     @Test
@@ -285,6 +494,55 @@ public class DbTableTest {
         assertEquals(2, table.size());
     }
 
+    private static List<String> keys(String prefix, int from, int to) {
+        final List<String> keys = Lists.newArrayList();
+        for (int i = from; i < to; i++) {
+            keys.add(prefix + i);
+        }
+
+        return keys;
+    }
+
+    @Test
+    public void testRowKeySet_RemoveAllLargeCollection() {
+        table.putAll(createCells(200));
+
+        assertTrue(table.rowKeySet().removeAll(keys("row", 50, 300)));
+        assertEquals(50, table.size());
+        assertTrue(table.containsRow("row49"));
+        assertFalse(table.containsRow("row50"));
+    }
+
+    @Test
+    public void testRowKeySet_RetainAllLargeCollection() {
+        table.putAll(createCells(200));
+
+        assertTrue(table.rowKeySet().retainAll(keys("row", 50, 300)));
+        assertEquals(150, table.size());
+        assertFalse(table.containsRow("row49"));
+        assertTrue(table.containsRow("row50"));
+    }
+
+    @Test
+    public void testRowKeySet_LargeRemoveAllReusesStatement() {
+        table.putAll(createCells(500));
+
+        final Set<String> statements = Sets.newHashSet();
+        handle.setTimingCollector(new TimingCollector() {
+            @Override
+            public void collect(long elapsedTime, StatementContext ctx) {
+                statements.add(ctx.getRawSql());
+            }
+        });
+
+        table.rowKeySet().removeAll(keys("row", 0, 100));
+        table.rowKeySet().removeAll(keys("row", 100, 300));
+        handle.setTimingCollector(TimingCollector.NOP_TIMING_COLLECTOR);
+
+        assertEquals(1, statements.size());
+        assertEquals(200, table.size());
+    }
+
     @Test
     public void testRowKeySet_ContainsAllExpected() {
         table.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
@@ -419,6 +677,60 @@ public class DbTableTest {
         assertEquals(TEST_VALUE, table.remove(TEST_ROW, TEST_COLUMN));
     }
 
+    // Test delete
+
+    @Test
+    public void testDelete_NonExistingCellNotDeleted() {
+        assertFalse(new DbTable(DATABASE_NAME, handle).delete(bytes(TEST_ROW), bytes(TEST_COLUMN)));
+    }
+
+    @Test
+    public void testDelete_DeletedCellIsGone() {
+        table.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
+
+        assertTrue(new DbTable(DATABASE_NAME, handle).delete(bytes(TEST_ROW), bytes(TEST_COLUMN)));
+        assertTrue(table.isEmpty());
+    }
+
+    @Test
+    public void testDeleteAll_DeletesEachKeyAndCountsThem() {
+        final DbTable counted = new DbTableBuilder(handle).withSizeMode(SizeMode.COUNTER).build(DATABASE_NAME);
+        createTable(counted).putAll(createCells(3));
+        createTable(counted).put("row0", "column1", TEST_VALUE);
+
+        assertEquals(2, counted.deleteAll(ImmutableList.of(
+                Maps.immutableEntry(bytes("row0"), bytes(TEST_COLUMN)),
+                Maps.immutableEntry(bytes("row1"), bytes(TEST_COLUMN)),
+                Maps.immutableEntry(bytes("row1"), bytes("invalid")))));
+        assertEquals(0, counted.deleteAll(ImmutableList.<Map.Entry<byte[], byte[]>>of()));
+
+        assertFalse(table.contains("row0", TEST_COLUMN));
+        assertFalse(table.containsRow("row1"));
+        assertSizes(createTable(counted), 2, 2, 2);
+    }
+
+    @Test
+    public void testWriteAll_RollsBackDeletesWithFailedPuts() {
+        final DbTable raw = new DbTable(DATABASE_NAME, handle);
+        table.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
+        handle.execute(String.format("ALTER TABLE %s ADD CONSTRAINT short_values CHECK (LENGTH(value_field) < 10)", DATABASE_NAME));
+
+        try {
+            raw.writeAll(ImmutableTable.of(bytes("row1"), bytes(TEST_COLUMN), bytes("a value too long for the table")),
+                    ImmutableList.of(Maps.immutableEntry(bytes(TEST_ROW), bytes(TEST_COLUMN))));
+            fail("writeAll should fail to write the long value");
+        }
+        catch (RuntimeException expected) {
+            // The long value breaks the constraint
+        }
+
+        assertEquals(TEST_VALUE, table.get(TEST_ROW, TEST_COLUMN));
+
+        raw.writeAll(ImmutableTable.of(bytes("row1"), bytes(TEST_COLUMN), bytes(TEST_VALUE)),
+                ImmutableList.of(Maps.immutableEntry(bytes(TEST_ROW), bytes(TEST_COLUMN))));
+        assertEquals(ImmutableSet.of("row1"), ImmutableSet.copyOf(table.rowKeySet()));
+    }
+
     // Test row
 
     @Test
@@ -692,6 +1004,93 @@ public class DbTableTest {
         assertFalse(table.rowMap().containsKey("invalid"));
     }
 
+    @Test
+    public void testRowMap_IteratesInSingleQuery() {
+        table.putAll(createCells(5));
+        table.put("row0", "column1", "value1");
+
+        final AtomicInteger statements = new AtomicInteger();
+        handle.setTimingCollector(new TimingCollector() {
+            @Override
+            public void collect(long elapsedTime, StatementContext ctx) {
+                statements.incrementAndGet();
+            }
+        });
+
+        final Map<String, Map<String, String>> rows = Maps.newHashMap();
+        for (Map.Entry<String, Map<String, String>> entry : table.rowMap().entrySet()) {
+            rows.put(entry.getKey(), ImmutableMap.copyOf(entry.getValue()));
+        }
+
+        assertEquals(1, statements.get());
+        handle.setTimingCollector(TimingCollector.NOP_TIMING_COLLECTOR);
+
+        assertEquals(5, rows.size());
+        assertEquals(ImmutableMap.of(TEST_COLUMN, TEST_VALUE, "column1", "value1"), rows.get("row0"));
+    }
+
+    @Test
+    public void testRowMap_IteratedValueSupportsLookupsAndWrites() {
+        table.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
+
+        final Map<String, String> row = Iterables.getOnlyElement(table.rowMap().values());
+        assertEquals(TEST_VALUE, row.get(TEST_COLUMN));
+        assertTrue(row.containsKey(TEST_COLUMN));
+
+        row.put("column1", "value1");
+        assertEquals("value1", table.get(TEST_ROW, "column1"));
+        assertEquals(2, row.size());
+    }
+
+    private Map<String, String> iteratedRow(String rowKey) {
+        for (Map.Entry<String, Map<String, String>> entry : table.rowMap().entrySet()) {
+            if (entry.getKey().equals(rowKey)) {
+                return entry.getValue();
+            }
+        }
+
+        throw new AssertionError("Missing row: " + rowKey);
+    }
+
+    @Test
+    public void testRowMap_IteratedValueViewsWriteThrough() {
+        table.putAll(createCells(1));
+        table.put("row0", "column1", "value1");
+        table.put("row0", "column2", "value2");
+        table.put("row0", "column3", "value3");
+
+        assertTrue(iteratedRow("row0").keySet().remove(TEST_COLUMN));
+        assertFalse(table.contains("row0", TEST_COLUMN));
+
+        final Map<String, String> row = iteratedRow("row0");
+        final Iterator<Map.Entry<String, String>> entries = row.entrySet().iterator();
+        assertEquals("column1", entries.next().getKey());
+        entries.remove();
+        assertFalse(table.contains("row0", "column1"));
+        assertEquals(ImmutableMap.of("column2", "value2", "column3", "value3"), ImmutableMap.copyOf(row));
+
+        final Map.Entry<String, String> entry = iteratedRow("row0").entrySet().iterator().next();
+        assertEquals("value2", entry.setValue("changed"));
+        assertEquals("changed", entry.getValue());
+        assertEquals("changed", table.get("row0", "column2"));
+
+        assertTrue(iteratedRow("row0").values().remove("changed"));
+        assertFalse(table.contains("row0", "column2"));
+
+        table.put("row0", "column4", "value4");
+        assertTrue(iteratedRow("row0").values().removeAll(ImmutableSet.of("value3")));
+        assertEquals(ImmutableMap.of("column4", "value4"), table.row("row0"));
+
+        table.put("row0", "column5", "value5");
+        final Map<String, String> retained = iteratedRow("row0");
+        assertTrue(retained.keySet().retainAll(ImmutableSet.of("column5")));
+        assertEquals(ImmutableMap.of("column5", "value5"), table.row("row0"));
+        assertEquals(ImmutableMap.of("column5", "value5"), ImmutableMap.copyOf(retained));
+
+        assertTrue(iteratedRow("row0").entrySet().remove(Maps.immutableEntry("column5", "value5")));
+        assertFalse(table.containsRow("row0"));
+    }
+
     // Test columnMap
 
     @Test
@@ -737,6 +1136,23 @@ public class DbTableTest {
         assertFalse(table.columnMap().containsKey("invalid"));
     }
 
+    @Test
+    public void testColumnMap_GroupsByColumn() {
+        table.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
+        table.put("row1", TEST_COLUMN, "value1");
+        table.put("row1", "column1", TEST_VALUE);
+
+        final Map<String, Map<String, String>> columns = Maps.newHashMap();
+        for (Map.Entry<String, Map<String, String>> entry : table.columnMap().entrySet()) {
+            columns.put(entry.getKey(), ImmutableMap.copyOf(entry.getValue()));
+        }
+
+        assertEquals(ImmutableMap.of(
+                TEST_COLUMN, ImmutableMap.of(TEST_ROW, TEST_VALUE, "row1", "value1"),
+                "column1", ImmutableMap.of("row1", TEST_VALUE)
+        ), columns);
+    }
+
     // Test values
 
     @Test
@@ -759,6 +1175,17 @@ public class DbTableTest {
         assertEquals(2, table.values().size());
     }
 
+    @Test
+    public void testValues_RemoveAllLargeCollection() {
+        for (int i = 0; i < 200; i++) {
+            table.put("row" + i, TEST_COLUMN, "value" + i);
+        }
+
+        assertTrue(table.values().removeAll(keys("value", 0, 150)));
+        assertEquals(50, table.size());
+        assertTrue(table.containsValue("value150"));
+    }
+
     // Test cellSet
 
     @Test
@@ -820,6 +1247,1441 @@ public class DbTableTest {
         assertFalse(table.cellSet().contains(Tables.immutableCell(TEST_ROW, TEST_COLUMN, "invalid")));
     }
 
+    @Test
+    public void testCellSet_RemoveAllOnlyRemovesRequestedCells() {
+        table.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
+        table.put(TEST_ROW, "column1", TEST_VALUE);
+        table.put("row1", TEST_COLUMN, TEST_VALUE);
+        table.put("row1", "column1", TEST_VALUE);
+
+        // Every row, column and value here is requested, but only two of the four cells
+        assertTrue(table.cellSet().removeAll(ImmutableSet.of(
+                Tables.immutableCell(TEST_ROW, TEST_COLUMN, TEST_VALUE),
+                Tables.immutableCell("row1", "column1", TEST_VALUE),
+                Tables.immutableCell("row1", TEST_COLUMN, "other")
+        )));
+
+        assertEquals(2, table.size());
+        assertTrue(table.contains(TEST_ROW, "column1"));
+        assertTrue(table.contains("row1", TEST_COLUMN));
+        assertFalse(table.cellSet().removeAll(ImmutableSet.of(Tables.immutableCell("row1", TEST_COLUMN, "other"))));
+    }
+
+    @Test
+    public void testCellSet_RetainAllOnlyKeepsRequestedCells() {
+        table.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
+        table.put(TEST_ROW, "column1", TEST_VALUE);
+        table.put("row1", TEST_COLUMN, TEST_VALUE);
+        table.put("row1", "column1", TEST_VALUE);
+
+        assertTrue(table.cellSet().retainAll(ImmutableSet.of(
+                Tables.immutableCell(TEST_ROW, TEST_COLUMN, TEST_VALUE),
+                Tables.immutableCell("row1", "column1", TEST_VALUE)
+        )));
+
+        assertEquals(2, table.size());
+        assertTrue(table.contains(TEST_ROW, TEST_COLUMN));
+        assertTrue(table.contains("row1", "column1"));
+    }
+
+    @Test
+    public void testCellSet_RetainAllDeletesInBatches() {
+        table.putAll(createCells(DbCollection.DELETE_BATCH_SIZE * 2 + 100));
+
+        final Set<Table.Cell<String, String, String>> cells = Sets.newHashSet();
+        for (String row : keys("row", 0, 50)) {
+            cells.add(Tables.immutableCell(row, TEST_COLUMN, TEST_VALUE));
+        }
+
+        assertTrue(table.cellSet().retainAll(cells));
+        assertEquals(50, table.size());
+        assertEquals(cells, ImmutableSet.copyOf(table.cellSet()));
+    }
+
+    @Test
+    public void testCellSet_RemoveAllLargeCollection() {
+        table.putAll(createCells(500));
+
+        final Set<Table.Cell<String, String, String>> cells = Sets.newHashSet();
+        for (String row : keys("row", 0, 300)) {
+            cells.add(Tables.immutableCell(row, TEST_COLUMN, TEST_VALUE));
+        }
+
+        assertTrue(table.cellSet().removeAll(cells));
+        assertEquals(200, table.size());
+    }
+
+    @Test
+    public void testRow_EntrySetRemoveAllOnlyRemovesRequestedEntries() {
+        table.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
+        table.put(TEST_ROW, "column1", "value1");
+
+        assertTrue(table.row(TEST_ROW).entrySet().removeAll(ImmutableSet.of(
+                Maps.immutableEntry(TEST_COLUMN, TEST_VALUE),
+                Maps.immutableEntry("column1", TEST_VALUE)
+        )));
+
+        assertEquals(ImmutableMap.of("column1", "value1"), ImmutableMap.copyOf(table.row(TEST_ROW)));
+    }
+
+    @Test
+    public void testRow_EntrySetRetainAllOnlyKeepsRequestedEntries() {
+        table.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
+        table.put(TEST_ROW, "column1", "value1");
+        table.put("row1", "column1", TEST_VALUE);
+
+        assertTrue(table.row(TEST_ROW).entrySet().retainAll(ImmutableSet.of(
+                Maps.immutableEntry("column1", "value1"),
+                Maps.immutableEntry(TEST_COLUMN, "value1")
+        )));
+
+        assertEquals(ImmutableMap.of("column1", "value1"), ImmutableMap.copyOf(table.row(TEST_ROW)));
+        assertTrue(table.contains("row1", "column1"));
+    }
+
+    // Test scan iterators
+
+    @Test
+    public void testScan_ClosedOnExhaustion() {
+        table.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
+
+        final DbIterator<Table.Cell<byte[], byte[], byte[]>> iterator = (DbIterator<Table.Cell<byte[], byte[], byte[]>>) new DbTable(DATABASE_NAME, handle).cellSet().iterator();
+        assertEquals(1, Iterators.size(iterator));
+        assertTrue(iterator.isClosed());
+    }
+
+    @Test
+    public void testScan_CloseEarly() {
+        table.putAll(createCells(5));
+
+        try (CloseableIterator<byte[]> iterator = new DbTable(DATABASE_NAME, handle).values().iterator()) {
+            assertNotNull(iterator.next());
+
+            iterator.close();
+            assertFalse(iterator.hasNext());
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testScan_RemoveUnsupported() {
+        table.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
+
+        try (CloseableIterator<byte[]> iterator = new DbTable(DATABASE_NAME, handle).rowKeySet().iterator()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    @Test
+    public void testScan_WithFetchSize() {
+        final Table<String, String, String> fetchTable = createTable(new DbTableBuilder(handle).withFetchSize(2));
+        fetchTable.putAll(createCells(5));
+
+        assertEquals(5, Iterables.size(fetchTable.cellSet()));
+        assertEquals(createCells(5), HashBasedTable.create(fetchTable));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testScan_NegativeFetchSize() {
+        new DbTableBuilder(handle).withFetchSize(-1);
+    }
+
+    // Test paginated scans
+
+    @Test
+    public void testPaged_CellSetReadsAllPages() {
+        final Table<String, String, String> pagedTable = createTable(new DbTableBuilder(handle).withPageSize(2));
+        pagedTable.putAll(createCells(5));
+
+        assertEquals(createCells(5), HashBasedTable.create(pagedTable));
+        assertEquals(5, Iterables.size(pagedTable.values()));
+    }
+
+    @Test
+    public void testPaged_KeySetsAreDistinct() {
+        final Table<String, String, String> pagedTable = createTable(new DbTableBuilder(handle).withPageSize(2));
+        pagedTable.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
+        pagedTable.put(TEST_ROW, "column1", TEST_VALUE);
+        pagedTable.put("row1", "column1", TEST_VALUE);
+        pagedTable.put("row2", "column2", TEST_VALUE);
+
+        assertEquals(ImmutableSet.of(TEST_ROW, "row1", "row2"), ImmutableSet.copyOf(pagedTable.rowKeySet()));
+        assertEquals(ImmutableSet.of(TEST_COLUMN, "column1", "column2"), ImmutableSet.copyOf(pagedTable.columnKeySet()));
+    }
+
+    @Test
+    public void testPaged_ResumeFromToken() {
+        table.putAll(createCells(5));
+
+        final DbTable raw = new DbTableBuilder(handle).withPageSize(2).build(DATABASE_NAME);
+        final ResumableIterator<Table.Cell<byte[], byte[], byte[]>> first = raw.scanCells(null);
+        assertNull(first.getContinuationToken());
+
+        final Set<String> rows = Sets.newHashSet();
+        for (int i = 0; i < 3; i++) {
+            rows.add(StringCodec.DECODER.apply(first.next().getRowKey()));
+        }
+
+        final String token = first.getContinuationToken().toString();
+        first.close();
+
+        final ResumableIterator<Table.Cell<byte[], byte[], byte[]>> second = raw.scanCells(ContinuationToken.parse(token));
+        while (second.hasNext()) {
+            assertTrue(rows.add(StringCodec.DECODER.apply(second.next().getRowKey())));
+        }
+
+        assertEquals(createCells(5).rowKeySet(), rows);
+    }
+
+    @Test
+    public void testPaged_TokenRoundTrip() {
+        table.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
+
+        final ResumableIterator<byte[]> iterator = new DbTable(DATABASE_NAME, handle).scanValues(null);
+        assertEquals(TEST_VALUE, StringCodec.DECODER.apply(iterator.next()));
+        assertFalse(iterator.hasNext());
+
+        final ContinuationToken token = iterator.getContinuationToken();
+        assertEquals(token, ContinuationToken.parse(token.toString()));
+    }
+
+    private static String token(int... ints) {
+        final ByteArrayDataOutput output = ByteStreams.newDataOutput();
+        for (int value : ints) {
+            output.writeInt(value);
+        }
+
+        return BaseEncoding.base64Url().omitPadding().encode(output.toByteArray());
+    }
+
+    private static void assertInvalidToken(String token) {
+        try {
+            ContinuationToken.parse(token);
+            fail("token should be rejected: " + token);
+        }
+        catch (IllegalArgumentException e) {
+            assertEquals("Invalid continuation token", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testPaged_InvalidTokensRejected() {
+        assertInvalidToken("!!!");
+        assertInvalidToken(token());
+        assertInvalidToken(token(0));
+        assertInvalidToken(token(Integer.MAX_VALUE, 0));
+        assertInvalidToken(token(1, Integer.MAX_VALUE));
+        assertInvalidToken(token(1, -1));
+        assertInvalidToken(token(1, 0, 0));
+        assertInvalidToken(token(2, 0));
+
+        assertEquals(1, ContinuationToken.parse(token(1, 0)).getKey().size());
+    }
+
+    @Test
+    public void testPaged_ResumesWithinRow() {
+        final Table<String, String, String> pagedTable = createTable(new DbTableBuilder(handle).withPageSize(2));
+        for (int i = 0; i < 5; i++) {
+            pagedTable.put(TEST_ROW, "column" + i, TEST_VALUE);
+            pagedTable.put("row1", "column" + i, TEST_VALUE);
+        }
+
+        assertEquals(10, Iterables.size(pagedTable.cellSet()));
+        assertEquals(ImmutableSet.of(TEST_ROW, "row1"), ImmutableSet.copyOf(pagedTable.rowKeySet()));
+    }
+
+    @Test
+    public void testPaged_NextPageSeeksPrimaryKey() {
+        final DbPages pages = new DbPages(DATABASE_NAME, SqlDialect.H2, "SELECT row_field, column_field, value_field", "row_field", "column_field");
+        final String plan = handle.createQuery("EXPLAIN " + pages.next())
+                .bind("after_row_field", bytes(TEST_ROW))
+                .bind("after_column_field", bytes(TEST_COLUMN))
+                .bind("limit", 2)
+                .map(StringMapper.FIRST)
+                .first();
+
+        // The primary key is only searched from the token's row, rather than scanned from its start
+        assertTrue(plan, plan.matches("(?s).*PRIMARY_KEY_\\w*: ROW_FIELD >= \\?.*"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPaged_TokenFromDifferentScan() {
+        table.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
+
+        final DbTable raw = new DbTable(DATABASE_NAME, handle);
+        final ResumableIterator<byte[]> rows = raw.scanRowKeys(null);
+        rows.next();
+
+        raw.scanCells(rows.getContinuationToken());
+    }
+
+    // Test size modes
+
+    private void assertSizes(Table<String, String, String> counted, int cells, int rows, int columns) {
+        assertEquals(cells, counted.size());
+        assertEquals(cells, counted.cellSet().size());
+        assertEquals(cells, counted.values().size());
+        assertEquals(rows, counted.rowKeySet().size());
+        assertEquals(rows, counted.rowMap().size());
+        assertEquals(columns, counted.columnKeySet().size());
+        assertEquals(columns, counted.columnMap().size());
+    }
+
+    @Test
+    public void testCounter_PointWrites() {
+        final Table<String, String, String> counted = createTable(new DbTableBuilder(handle).withSizeMode(SizeMode.COUNTER));
+        assertSizes(counted, 0, 0, 0);
+
+        counted.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
+        counted.put(TEST_ROW, TEST_COLUMN, "value1");
+        assertSizes(counted, 1, 1, 1);
+
+        counted.put(TEST_ROW, "column1", TEST_VALUE);
+        counted.row("row1").put(TEST_COLUMN, TEST_VALUE);
+        assertSizes(counted, 3, 2, 2);
+
+        counted.remove(TEST_ROW, TEST_COLUMN);
+        counted.remove(TEST_ROW, TEST_COLUMN);
+        assertSizes(counted, 2, 2, 2);
+
+        counted.column(TEST_COLUMN).remove("row1");
+        assertSizes(counted, 1, 1, 1);
+    }
+
+    @Test
+    public void testCounter_BulkWrites() {
+        final Table<String, String, String> counted = createTable(new DbTableBuilder(handle).withSizeMode(SizeMode.COUNTER).withBatchSize(2).withBatchCommits(true));
+
+        counted.putAll(createCells(5));
+        assertSizes(counted, 5, 5, 1);
+
+        counted.rowKeySet().removeAll(ImmutableSet.of("row0", "row1"));
+        assertSizes(counted, 3, 3, 1);
+
+        counted.rowMap().remove("row2");
+        assertSizes(counted, 2, 2, 1);
+
+        counted.clear();
+        assertSizes(counted, 0, 0, 0);
+    }
+
+    @Test
+    public void testCounter_ViewWritesCountOnlyChangedCells() {
+        final DBI dbi = new DBI("jdbc:h2:mem:test");
+        final DbTable counter = new DbTableBuilder(dbi).withSizeMode(SizeMode.COUNTER).withBatchSize(4).build(DATABASE_NAME);
+
+        final AtomicInteger recounts = new AtomicInteger();
+        dbi.setTimingCollector(new TimingCollector() {
+            @Override
+            public void collect(long elapsedTime, StatementContext ctx) {
+                if (ctx.getRawSql().contains("SET cell_count = (SELECT")) {
+                    recounts.incrementAndGet();
+                }
+            }
+        });
+
+        final ImmutableTable.Builder<byte[], byte[], byte[]> cells = ImmutableTable.builder();
+        for (int row = 0; row < 5; row++) {
+            for (int column = 0; column < 3; column++) {
+                cells.put(bytes("row" + row), bytes("column" + column), bytes(TEST_VALUE + row));
+            }
+        }
+
+        counter.putAll(cells.build());
+        // Rewriting stored cells alongside a new one only counts the new one
+        counter.putAll(ImmutableTable.of(bytes("row0"), bytes("column0"), bytes(TEST_VALUE)));
+        counter.putAll(ImmutableTable.of(bytes("row5"), bytes("column0"), bytes(TEST_VALUE)));
+
+        final Table<String, String, String> counted = createPooledTable(counter);
+        assertSizes(counted, 16, 6, 3);
+
+        counted.cellSet().remove(Tables.immutableCell("row5", "column0", TEST_VALUE));
+        assertSizes(counted, 15, 5, 3);
+
+        counted.rowKeySet().remove("row4");
+        assertSizes(counted, 12, 4, 3);
+
+        counted.row("row3").clear();
+        assertSizes(counted, 9, 3, 3);
+
+        counted.rowMap().remove("row2");
+        assertSizes(counted, 6, 2, 3);
+
+        counted.column("column2").clear();
+        assertSizes(counted, 4, 2, 2);
+
+        counted.values().remove(TEST_VALUE + 1);
+        assertSizes(counted, 2, 1, 2);
+
+        counted.cellSet().retainAll(ImmutableSet.of(Tables.immutableCell("row0", "column1", TEST_VALUE + 0)));
+        assertSizes(counted, 1, 1, 1);
+
+        counted.columnKeySet().removeAll(ImmutableSet.of("column1"));
+        assertSizes(counted, 0, 0, 0);
+
+        assertEquals(0, recounts.get());
+
+        counted.clear();
+        assertSizes(counted, 0, 0, 0);
+    }
+
+    @Test
+    public void testCounter_CommittedBatchesCountedWhenLaterBatchFails() {
+        final DbTable counter = new DbTableBuilder(handle).withSizeMode(SizeMode.COUNTER).withBatchSize(2).withBatchCommits(true).build(DATABASE_NAME);
+        handle.execute(String.format("ALTER TABLE %s ADD CHECK LENGTH(row_field) < 8", DATABASE_NAME));
+
+        // Written straight to the table, as a transformed table puts cells one at a time
+        final Table<byte[], byte[], byte[]> cells = ImmutableTable.<byte[], byte[], byte[]>builder()
+                .put(bytes("row0"), bytes(TEST_COLUMN), bytes(TEST_VALUE))
+                .put(bytes("row1"), bytes(TEST_COLUMN), bytes(TEST_VALUE))
+                .put(bytes("row2"), bytes(TEST_COLUMN), bytes(TEST_VALUE))
+                .put(bytes("invalid-row"), bytes(TEST_COLUMN), bytes(TEST_VALUE))
+                .build();
+
+        try {
+            counter.putAll(cells);
+            fail("the second batch should break the check constraint");
+        }
+        catch (RuntimeException expected) {
+            // The first batch stays committed
+        }
+
+        assertSizes(createPooledTable(counter), 2, 2, 1);
+    }
+
+    @Test
+    public void testCounter_InitializedFromExistingTable() {
+        table.putAll(createCells(5));
+
+        assertSizes(createTable(new DbTableBuilder(handle).withSizeMode(SizeMode.COUNTER)), 5, 5, 1);
+    }
+
+    @Test
+    public void testApproximate_EstimatesSizes() {
+        final Table<String, String, String> estimated = createTable(new DbTableBuilder(handle).withSizeMode(SizeMode.APPROXIMATE));
+        assertEquals(0, estimated.size());
+        assertEquals(0, estimated.rowKeySet().size());
+
+        estimated.putAll(createCells(5));
+        assertEquals(5, estimated.size());
+        assertTrue(estimated.rowKeySet().size() > 0);
+        assertTrue(estimated.columnKeySet().size() > 0);
+    }
+
+    // Test pooled handles
+
+    private static final int THREAD_COUNT = 8;
+    private static final int CELLS_PER_THREAD = 50;
+
+    private int openSessions() {
+        return handle.createQuery("SELECT COUNT(*) FROM INFORMATION_SCHEMA.SESSIONS")
+                .map(IntegerMapper.FIRST)
+                .first();
+    }
+
+    private Table<String, String, String> createPooledTable(DbTableBuilder builder) {
+        return createPooledTable(builder.build(DATABASE_NAME));
+    }
+
+    private Table<String, String, String> createPooledTable(Table<byte[], byte[], byte[]> table) {
+        return TransformingTable.create(
+                table,
+                StringCodec.ENCODER, StringCodec.DECODER,
+                StringCodec.ENCODER, StringCodec.DECODER,
+                StringCodec.ENCODER, StringCodec.DECODER
+        );
+    }
+
+    @Test
+    public void testPooled_ConcurrentWritesAndReads() throws Exception {
+        final Table<String, String, String> pooledTable = createPooledTable(new DbTableBuilder(new DBI("jdbc:h2:mem:test")).withLockingWrites(true));
+
+        final ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        try {
+            final List<Future<Void>> futures = Lists.newArrayList();
+            for (int i = 0; i < THREAD_COUNT; i++) {
+                final String row = "row" + i;
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        for (int j = 0; j < CELLS_PER_THREAD; j++) {
+                            pooledTable.put(row, "column" + j, TEST_VALUE);
+                            assertEquals(TEST_VALUE, pooledTable.row(row).get("column" + j));
+                        }
+
+                        assertEquals(CELLS_PER_THREAD, Iterables.size(pooledTable.row(row).entrySet()));
+                        return null;
+                    }
+                }));
+            }
+
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+
+        assertEquals(THREAD_COUNT * CELLS_PER_THREAD, pooledTable.size());
+        assertEquals(THREAD_COUNT, pooledTable.rowMap().size());
+    }
+
+    private int count(String expression) {
+        return handle.createQuery(String.format("SELECT COUNT(%s) FROM %s", expression, DATABASE_NAME))
+                .map(IntegerMapper.FIRST)
+                .first();
+    }
+
+    @Test
+    public void testPooled_ConcurrentCountedWritesKeepExactSizes() throws Exception {
+        final Table<String, String, String> pooledTable = createPooledTable(new DbTableBuilder(new DBI("jdbc:h2:mem:test")).withSizeMode(SizeMode.COUNTER));
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        try {
+            final List<Future<Void>> futures = Lists.newArrayList();
+            for (int i = 0; i < THREAD_COUNT; i++) {
+                final Random random = new Random(i);
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws InterruptedException {
+                        start.await();
+
+                        // Few enough keys that writers keep adding the first and removing the last cell of a row or column
+                        for (int j = 0; j < CELLS_PER_THREAD; j++) {
+                            final String row = "row" + random.nextInt(3);
+                            final String column = "column" + random.nextInt(3);
+                            if (random.nextBoolean()) {
+                                pooledTable.put(row, column, TEST_VALUE);
+                            }
+                            else {
+                                pooledTable.remove(row, column);
+                            }
+                        }
+
+                        return null;
+                    }
+                }));
+            }
+
+            start.countDown();
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+
+        assertEquals(count("*"), pooledTable.size());
+        assertEquals(count("DISTINCT row_field"), pooledTable.rowKeySet().size());
+        assertEquals(count("DISTINCT column_field"), pooledTable.columnKeySet().size());
+    }
+
+    @Test
+    public void testPooled_ConcurrentCountedTablesShareOneCountsRow() throws Exception {
+        table.putAll(createCells(5));
+
+        final DBI dbi = new DBI("jdbc:h2:mem:test");
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        try {
+            final List<Future<DbTable>> futures = Lists.newArrayList();
+            for (int i = 0; i < THREAD_COUNT; i++) {
+                futures.add(executor.submit(new Callable<DbTable>() {
+                    @Override
+                    public DbTable call() throws InterruptedException {
+                        start.await();
+                        return new DbTableBuilder(dbi).withSizeMode(SizeMode.COUNTER).build(DATABASE_NAME);
+                    }
+                }));
+            }
+
+            start.countDown();
+            for (Future<DbTable> future : futures) {
+                assertSizes(createPooledTable(future.get()), 5, 5, 1);
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+
+        assertEquals(1, (int) handle.createQuery(String.format("SELECT COUNT(*) FROM %s_counts", DATABASE_NAME))
+                .map(IntegerMapper.FIRST)
+                .first());
+    }
+
+    @Test
+    public void testPooled_HandlesReturnedAfterOperations() {
+        final Table<String, String, String> pooledTable = createPooledTable(new DbTableBuilder(new DBI("jdbc:h2:mem:test")).withSizeMode(SizeMode.COUNTER));
+        final int sessions = openSessions();
+
+        pooledTable.putAll(createCells(5));
+        pooledTable.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
+        pooledTable.remove(TEST_ROW, TEST_COLUMN);
+        assertEquals(5, Iterables.size(pooledTable.cellSet()));
+        assertEquals(5, pooledTable.rowMap().size());
+
+        try (CloseableIterator<byte[]> iterator = new DbTable(DATABASE_NAME, new DBI("jdbc:h2:mem:test")).rowKeySet().iterator()) {
+            iterator.next();
+            assertEquals(sessions + 1, openSessions());
+        }
+
+        assertEquals(sessions, openSessions());
+    }
+
+    // Test group commit
+
+    @Test
+    public void testGroupCommit_ReturnsPreviousValues() {
+        final Table<String, String, String> grouped = createPooledTable(new DbTableBuilder(new DBI("jdbc:h2:mem:test"))
+                .withGroupCommit(0, TimeUnit.MILLISECONDS)
+                .withSizeMode(SizeMode.COUNTER));
+
+        assertNull(grouped.put(TEST_ROW, TEST_COLUMN, TEST_VALUE));
+        assertEquals(TEST_VALUE, grouped.put(TEST_ROW, TEST_COLUMN, "value1"));
+        assertEquals("value1", grouped.get(TEST_ROW, TEST_COLUMN));
+        assertSizes(grouped, 1, 1, 1);
+
+        assertEquals("value1", grouped.remove(TEST_ROW, TEST_COLUMN));
+        assertNull(grouped.remove(TEST_ROW, TEST_COLUMN));
+        assertSizes(grouped, 0, 0, 0);
+    }
+
+    @Test
+    public void testGroupCommit_ConcurrentWritesShareCommits() throws Exception {
+        final DBI dbi = new DBI("jdbc:h2:mem:test");
+        final DbTable grouped = new DbTableBuilder(dbi)
+                .withGroupCommit(50, TimeUnit.MILLISECONDS)
+                .build(DATABASE_NAME);
+
+        final AtomicInteger replaces = new AtomicInteger();
+        dbi.setTimingCollector(new TimingCollector() {
+            @Override
+            public void collect(long elapsedTime, StatementContext ctx) {
+                if (ctx.getRawSql().startsWith("REPLACE")) {
+                    replaces.incrementAndGet();
+                }
+            }
+        });
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        try {
+            final List<Future<byte[]>> futures = Lists.newArrayList();
+            for (int i = 0; i < THREAD_COUNT; i++) {
+                final byte[] row = bytes("row" + i);
+                futures.add(executor.submit(new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() throws InterruptedException {
+                        start.await();
+                        return grouped.put(row, bytes(TEST_COLUMN), bytes(TEST_VALUE));
+                    }
+                }));
+            }
+
+            start.countDown();
+            for (Future<byte[]> future : futures) {
+                assertNull(future.get());
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+
+        assertEquals(THREAD_COUNT, table.size());
+        assertTrue(replaces.get() < THREAD_COUNT);
+    }
+
+    @Test
+    public void testGroupCommit_CountsSharedRowsAndColumnsWithoutRecounting() throws Exception {
+        final DBI dbi = new DBI("jdbc:h2:mem:test");
+        final DbTable grouped = new DbTableBuilder(dbi)
+                .withGroupCommit(50, TimeUnit.MILLISECONDS)
+                .withSizeMode(SizeMode.COUNTER)
+                .build(DATABASE_NAME);
+
+        final AtomicInteger recounts = new AtomicInteger();
+        dbi.setTimingCollector(new TimingCollector() {
+            @Override
+            public void collect(long elapsedTime, StatementContext ctx) {
+                if (ctx.getRawSql().contains("SET cell_count = (SELECT")) {
+                    recounts.incrementAndGet();
+                }
+            }
+        });
+
+        final Table<String, String, String> counted = createTable(grouped);
+        counted.put("row0", TEST_COLUMN, TEST_VALUE);
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        try {
+            final List<Future<?>> futures = Lists.newArrayList();
+            for (int i = 0; i < THREAD_COUNT; i++) {
+                final String row = "row" + (i % 2);
+                final String column = "column" + (i % 4);
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws InterruptedException {
+                        start.await();
+                        counted.put(row, column, TEST_VALUE);
+                        counted.remove("row0", TEST_COLUMN);
+                        return null;
+                    }
+                }));
+            }
+
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+
+        assertSizes(counted, 4, 2, 4);
+        assertEquals(0, recounts.get());
+    }
+
+    @Test
+    public void testGroupCommit_WritesInCallerTransactionAreNotGrouped() {
+        final DbTable grouped = new DbTableBuilder(handle)
+                .withGroupCommit(0, TimeUnit.MILLISECONDS)
+                .build(DATABASE_NAME);
+
+        handle.begin();
+        grouped.put(bytes(TEST_ROW), bytes(TEST_COLUMN), bytes(TEST_VALUE));
+        handle.rollback();
+
+        assertTrue(table.isEmpty());
+    }
+
+    // Test partitions
+
+    private static final int PARTITION_COUNT = 4;
+
+    private int partitionCells(int partition) {
+        return handle.createQuery(String.format("SELECT COUNT(*) FROM %s_p%d", DATABASE_NAME, partition))
+                .map(IntegerMapper.FIRST)
+                .first();
+    }
+
+    private void dropPartitions() {
+        for (int i = 0; i < PARTITION_COUNT; i++) {
+            dropTable(String.format("%s_p%d", DATABASE_NAME, i));
+        }
+    }
+
+    @Test
+    public void testPartitions_SpreadRowsOverPartitionTables() {
+        final Table<String, String, String> partitioned = createPooledTable(new DbTableBuilder(handle).buildPartitioned(DATABASE_NAME, PARTITION_COUNT));
+        try {
+            partitioned.putAll(createCells(20));
+            partitioned.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
+
+            int cells = 0;
+            for (int i = 0; i < PARTITION_COUNT; i++) {
+                assertTrue(partitionCells(i) > 0);
+                cells += partitionCells(i);
+            }
+
+            assertEquals(21, cells);
+            assertEquals(21, partitioned.size());
+            assertEquals(TEST_VALUE, partitioned.get(TEST_ROW, TEST_COLUMN));
+            assertEquals(21, Iterables.size(partitioned.cellSet()));
+            assertEquals(21, partitioned.column(TEST_COLUMN).size());
+            assertTrue(table.isEmpty());
+        }
+        finally {
+            dropPartitions();
+        }
+    }
+
+    @Test
+    public void testPartitions_ClearTruncatesEveryPartition() {
+        final Table<String, String, String> partitioned = createPooledTable(new DbTableBuilder(handle).buildPartitioned(DATABASE_NAME, PARTITION_COUNT));
+        try {
+            partitioned.putAll(createCells(20));
+            partitioned.clear();
+
+            assertTrue(partitioned.isEmpty());
+            for (int i = 0; i < PARTITION_COUNT; i++) {
+                assertEquals(0, partitionCells(i));
+            }
+        }
+        finally {
+            dropPartitions();
+        }
+    }
+
+    @Test
+    public void testPartitions_PooledScansRunConcurrently() {
+        final ShardedDbTable partitioned = new DbTableBuilder(new DBI("jdbc:h2:mem:test")).buildPartitioned(DATABASE_NAME, PARTITION_COUNT);
+        try {
+            createPooledTable(partitioned).putAll(createCells(20));
+
+            assertEquals(20, Iterables.size(partitioned.rowKeySet()));
+            assertEquals(20, partitioned.rowMap().size());
+        }
+        finally {
+            partitioned.close();
+            dropPartitions();
+        }
+    }
+
+    // Test index profiles
+
+    private String columnQueryPlan() {
+        return handle.createQuery(String.format("EXPLAIN SELECT row_field FROM %s WHERE column_field = X'00'", DATABASE_NAME))
+                .map(StringMapper.FIRST)
+                .first();
+    }
+
+    private int indexCount() {
+        return handle.createQuery("SELECT COUNT(DISTINCT index_name) FROM information_schema.indexes WHERE table_name = :table_name")
+                .bind("table_name", DATABASE_NAME.toUpperCase())
+                .map(IntegerMapper.FIRST)
+                .first();
+    }
+
+    @Test
+    public void testIndexProfile_PrimaryKeyScansColumns() {
+        assertFalse(columnQueryPlan().contains("COLUMN_INDEX"));
+    }
+
+    @Test
+    public void testIndexProfile_ColumnIndexedSeeksColumns() {
+        dropTable(DATABASE_NAME);
+
+        final Table<String, String, String> indexed = createTable(new DbTableBuilder(handle).withIndexProfile(IndexProfile.COLUMN_INDEXED));
+        indexed.putAll(createCells(5));
+
+        assertTrue(columnQueryPlan().contains("COLUMN_INDEX"));
+        assertEquals(5, indexed.column(TEST_COLUMN).size());
+        assertTrue(indexed.containsColumn(TEST_COLUMN));
+    }
+
+    @Test
+    public void testIndexProfile_MigratesExistingTable() {
+        table.putAll(createCells(5));
+        final int indexes = indexCount();
+
+        final Table<String, String, String> indexed = createTable(new DbTableBuilder(handle).withIndexProfile(IndexProfile.COLUMN_INDEXED));
+
+        assertEquals(indexes + 1, indexCount());
+        assertTrue(columnQueryPlan().contains("COLUMN_INDEX"));
+        assertEquals(5, indexed.size());
+    }
+
+    @Test
+    public void testIndexProfile_ReusesExistingColumnIndex() {
+        handle.execute(String.format("CREATE INDEX %1$s_by_column ON %1$s (column_field, row_field)", DATABASE_NAME));
+        final int indexes = indexCount();
+
+        createTable(new DbTableBuilder(handle).withIndexProfile(IndexProfile.COLUMN_INDEXED));
+        createTable(new DbTableBuilder(handle).withIndexProfile(IndexProfile.COLUMN_INDEXED));
+
+        assertEquals(indexes, indexCount());
+    }
+
+    // Test value compression
+
+    private static final int COMPRESSION_THRESHOLD = 100;
+
+    private static String repetitiveValue(int length) {
+        return Strings.repeat("{\"key\":\"value\"}", length / 15 + 1).substring(0, length);
+    }
+
+    private byte[] storedValue(String row, String column) {
+        return handle.createQuery(String.format("SELECT value_field FROM %s WHERE row_field = :row_field AND column_field = :column_field", DATABASE_NAME))
+                .bind("row_field", bytes(row))
+                .bind("column_field", bytes(column))
+                .map(ByteArrayMapper.FIRST)
+                .first();
+    }
+
+    @Test
+    public void testCompression_LargeValuesStoredDeflated() {
+        final Table<String, String, String> compressed = createTable(new DbTableBuilder(handle).withValueCompression(COMPRESSION_THRESHOLD));
+        final String value = repetitiveValue(COMPRESSION_THRESHOLD * 10);
+
+        assertNull(compressed.put(TEST_ROW, TEST_COLUMN, value));
+        assertEquals(value, compressed.put(TEST_ROW, TEST_COLUMN, value));
+        assertEquals(value, compressed.get(TEST_ROW, TEST_COLUMN));
+        assertTrue(storedValue(TEST_ROW, TEST_COLUMN).length < value.length() / 2);
+    }
+
+    @Test
+    public void testCompression_SmallAndIncompressibleValuesStoredWithHeader() {
+        final DbTable compressed = new DbTableBuilder(handle).withValueCompression(COMPRESSION_THRESHOLD).build(DATABASE_NAME);
+        final byte[] random = new byte[COMPRESSION_THRESHOLD * 2];
+        new Random().nextBytes(random);
+
+        compressed.put(bytes(TEST_ROW), bytes(TEST_COLUMN), bytes(TEST_VALUE));
+        compressed.put(bytes(TEST_ROW), bytes("column1"), random);
+        compressed.put(bytes(TEST_ROW), bytes("column2"), bytes(repetitiveValue(COMPRESSION_THRESHOLD * 10)));
+
+        assertEquals(TEST_VALUE.length() + 1, storedValue(TEST_ROW, TEST_COLUMN).length);
+        assertEquals(random.length + 1, storedValue(TEST_ROW, "column1").length);
+        assertArrayEquals(bytes(TEST_VALUE), compressed.get(bytes(TEST_ROW), bytes(TEST_COLUMN)));
+        assertArrayEquals(random, compressed.get(bytes(TEST_ROW), bytes("column1")));
+        assertArrayEquals(bytes(repetitiveValue(COMPRESSION_THRESHOLD * 10)), compressed.get(bytes(TEST_ROW), bytes("column2")));
+    }
+
+    @Test
+    public void testCompression_BulkAndViewWrites() {
+        final Table<String, String, String> compressed = createTable(new DbTableBuilder(handle).withValueCompression(COMPRESSION_THRESHOLD));
+        final String value = repetitiveValue(COMPRESSION_THRESHOLD * 10);
+
+        compressed.putAll(ImmutableTable.of(TEST_ROW, TEST_COLUMN, value));
+        compressed.row(TEST_ROW).put("column1", value);
+        compressed.row(TEST_ROW).putAll(ImmutableMap.of("column2", value));
+
+        assertEquals(3, compressed.size());
+        for (String storedValue : compressed.values()) {
+            assertEquals(value, storedValue);
+        }
+    }
+
+    @Test
+    public void testCompression_ValuesMatchedInStoredForm() {
+        final Table<String, String, String> compressed = createTable(new DbTableBuilder(handle).withValueCompression(COMPRESSION_THRESHOLD));
+        final String value = repetitiveValue(COMPRESSION_THRESHOLD * 10);
+        compressed.put(TEST_ROW, TEST_COLUMN, value);
+        compressed.put(TEST_ROW, "column1", TEST_VALUE);
+
+        assertTrue(compressed.containsValue(value));
+        assertTrue(compressed.values().contains(value));
+        assertTrue(compressed.cellSet().contains(Tables.immutableCell(TEST_ROW, TEST_COLUMN, value)));
+        assertTrue(compressed.row(TEST_ROW).entrySet().contains(Maps.immutableEntry(TEST_COLUMN, value)));
+        assertTrue(compressed.row(TEST_ROW).containsValue(value));
+        assertTrue(compressed.row(TEST_ROW).containsValue(TEST_VALUE));
+        assertTrue(compressed.column(TEST_COLUMN).containsValue(value));
+        assertFalse(compressed.column(TEST_COLUMN).containsValue(TEST_VALUE));
+
+        assertTrue(compressed.values().remove(value));
+        assertTrue(compressed.cellSet().remove(Tables.immutableCell(TEST_ROW, "column1", TEST_VALUE)));
+        assertTrue(compressed.isEmpty());
+    }
+
+    @Test
+    public void testCompression_GroupCommittedWrites() {
+        final Table<String, String, String> compressed = createTable(new DbTableBuilder(handle)
+                .withValueCompression(COMPRESSION_THRESHOLD)
+                .withGroupCommit(0, TimeUnit.MILLISECONDS));
+        final String value = repetitiveValue(COMPRESSION_THRESHOLD * 10);
+
+        assertNull(compressed.put(TEST_ROW, TEST_COLUMN, value));
+        assertEquals(value, compressed.put(TEST_ROW, TEST_COLUMN, TEST_VALUE));
+        assertEquals(TEST_VALUE, compressed.get(TEST_ROW, TEST_COLUMN));
+    }
+
+    // Test streaming values
+
+    private static final int STREAMED_VALUE_LENGTH = 1024 * 1024;
+
+    private static byte[] read(InputStream in) throws IOException {
+        try {
+            return ByteStreams.toByteArray(in);
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testStreaming_RoundTripsLargeValue() throws IOException {
+        final DbTable raw = new DbTable(DATABASE_NAME, handle);
+        final byte[] value = new byte[STREAMED_VALUE_LENGTH];
+        new Random().nextBytes(value);
+
+        raw.putStream(bytes(TEST_ROW), bytes(TEST_COLUMN), new ByteArrayInputStream(value), value.length);
+
+        assertArrayEquals(value, read(raw.openValue(bytes(TEST_ROW), bytes(TEST_COLUMN))));
+        assertArrayEquals(value, raw.get(bytes(TEST_ROW), bytes(TEST_COLUMN)));
+    }
+
+    @Test
+    public void testStreaming_OpensValuesWrittenByPut() throws IOException {
+        final DbTable raw = new DbTable(DATABASE_NAME, handle);
+        table.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
+
+        assertArrayEquals(bytes(TEST_VALUE), read(raw.openValue(bytes(TEST_ROW), bytes(TEST_COLUMN))));
+    }
+
+    @Test
+    public void testStreaming_MissingCellReturnsNull() {
+        assertNull(new DbTable(DATABASE_NAME, handle).openValue(bytes(TEST_ROW), bytes(TEST_COLUMN)));
+    }
+
+    @Test
+    public void testStreaming_WritesOnlyGivenLength() throws IOException {
+        final DbTable raw = new DbTable(DATABASE_NAME, handle);
+        raw.putStream(bytes(TEST_ROW), bytes(TEST_COLUMN), new ByteArrayInputStream(bytes(TEST_VALUE + TEST_VALUE)), TEST_VALUE.length());
+
+        assertArrayEquals(bytes(TEST_VALUE), read(raw.openValue(bytes(TEST_ROW), bytes(TEST_COLUMN))));
+    }
+
+    @Test
+    public void testStreaming_CompressedValues() throws IOException {
+        final DbTable compressed = new DbTableBuilder(handle).withValueCompression(COMPRESSION_THRESHOLD).build(DATABASE_NAME);
+        final byte[] large = bytes(repetitiveValue(STREAMED_VALUE_LENGTH));
+
+        compressed.putStream(bytes(TEST_ROW), bytes(TEST_COLUMN), new ByteArrayInputStream(large), large.length);
+        compressed.putStream(bytes(TEST_ROW), bytes("column1"), new ByteArrayInputStream(bytes(TEST_VALUE)), TEST_VALUE.length());
+        compressed.put(bytes(TEST_ROW), bytes("column2"), large);
+
+        assertTrue(storedValue(TEST_ROW, TEST_COLUMN).length < large.length / 2);
+        assertEquals(TEST_VALUE.length() + 1, storedValue(TEST_ROW, "column1").length);
+        assertArrayEquals(large, read(compressed.openValue(bytes(TEST_ROW), bytes(TEST_COLUMN))));
+        assertArrayEquals(large, compressed.get(bytes(TEST_ROW), bytes(TEST_COLUMN)));
+        assertArrayEquals(bytes(TEST_VALUE), read(compressed.openValue(bytes(TEST_ROW), bytes("column1"))));
+        assertArrayEquals(bytes(TEST_VALUE), compressed.get(bytes(TEST_ROW), bytes("column1")));
+        assertArrayEquals(large, read(compressed.openValue(bytes(TEST_ROW), bytes("column2"))));
+    }
+
+    @Test
+    public void testStreaming_CompressedValuesStoredAsPutStoresThem() {
+        final DbTable compressed = new DbTableBuilder(handle).withValueCompression(COMPRESSION_THRESHOLD).build(DATABASE_NAME);
+        final byte[] random = new byte[COMPRESSION_THRESHOLD * 2];
+        new Random().nextBytes(random);
+
+        for (byte[] value : ImmutableList.of(bytes(TEST_VALUE), random, bytes(repetitiveValue(COMPRESSION_THRESHOLD * 10)))) {
+            compressed.put(bytes(TEST_ROW), bytes(TEST_COLUMN), value);
+            compressed.putStream(bytes(TEST_ROW), bytes("column1"), new ByteArrayInputStream(value), value.length);
+
+            assertArrayEquals(storedValue(TEST_ROW, TEST_COLUMN), storedValue(TEST_ROW, "column1"));
+            assertTrue(compressed.containsValue(value));
+            assertTrue(compressed.cellSet().remove(Tables.immutableCell(bytes(TEST_ROW), bytes(TEST_COLUMN), value)));
+            assertTrue(compressed.containsValue(value));
+            assertTrue(compressed.cellSet().remove(Tables.immutableCell(bytes(TEST_ROW), bytes("column1"), value)));
+            assertFalse(compressed.containsValue(value));
+        }
+    }
+
+    @Test
+    public void testStreaming_MaintainsCountedSize() {
+        final DbTable counted = new DbTableBuilder(handle).withSizeMode(SizeMode.COUNTER).build(DATABASE_NAME);
+
+        counted.putStream(bytes(TEST_ROW), bytes(TEST_COLUMN), new ByteArrayInputStream(bytes(TEST_VALUE)), TEST_VALUE.length());
+        counted.putStream(bytes(TEST_ROW), bytes(TEST_COLUMN), new ByteArrayInputStream(bytes(TEST_VALUE)), TEST_VALUE.length());
+        counted.putStream(bytes(TEST_ROW), bytes("column1"), new ByteArrayInputStream(bytes(TEST_VALUE)), TEST_VALUE.length());
+
+        assertEquals(2, counted.size());
+        assertEquals(1, counted.rowKeySet().size());
+        assertEquals(2, counted.columnKeySet().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testStreaming_NegativeLength() {
+        new DbTable(DATABASE_NAME, handle).putStream(bytes(TEST_ROW), bytes(TEST_COLUMN), new ByteArrayInputStream(bytes(TEST_VALUE)), -1);
+    }
+
+    // Test dialects
+
+    private static final String MYSQL_URL = "jdbc:h2:mem:mysql;MODE=MySQL";
+
+    private Table<String, String, String> createTable(DbTable table) {
+        return TransformingTable.create(
+                table,
+                StringCodec.ENCODER, StringCodec.DECODER,
+                StringCodec.ENCODER, StringCodec.DECODER,
+                StringCodec.ENCODER, StringCodec.DECODER
+        );
+    }
+
+    @Test
+    public void testMySqlDialect_PointWrites() {
+        try (Handle mysql = DBI.open(MYSQL_URL)) {
+            final Table<String, String, String> dialectTable = createTable(new DbTableBuilder(mysql)
+                    .withDialect(SqlDialect.MYSQL)
+                    .withLockingWrites(true)
+                    .withSizeMode(SizeMode.COUNTER)
+                    .build(DATABASE_NAME));
+
+            assertNull(dialectTable.put(TEST_ROW, TEST_COLUMN, TEST_VALUE));
+            assertEquals(TEST_VALUE, dialectTable.put(TEST_ROW, TEST_COLUMN, "value1"));
+            dialectTable.row(TEST_ROW).put("column1", TEST_VALUE);
+
+            assertEquals("value1", dialectTable.get(TEST_ROW, TEST_COLUMN));
+            assertEquals(2, dialectTable.size());
+            assertEquals(1, dialectTable.rowKeySet().size());
+
+            assertEquals("value1", dialectTable.remove(TEST_ROW, TEST_COLUMN));
+            assertEquals(1, dialectTable.size());
+        }
+    }
+
+    @Test
+    public void testMySqlDialect_MultiRowUpserts() {
+        try (Handle mysql = DBI.open(MYSQL_URL)) {
+            final Table<String, String, String> dialectTable = createTable(new DbTableBuilder(mysql)
+                    .withDialect(SqlDialect.MYSQL)
+                    .withBatchSize(3)
+                    .withMultiRowInserts(true)
+                    .build(DATABASE_NAME));
+
+            dialectTable.putAll(createCells(10));
+            dialectTable.putAll(ImmutableTable.of("row1", TEST_COLUMN, "value1"));
+
+            assertEquals(10, dialectTable.size());
+            assertEquals("value1", dialectTable.get("row1", TEST_COLUMN));
+        }
+    }
+
+    @Test
+    public void testMySqlDialect_LargeSelectionsAreInlined() {
+        try (Handle mysql = DBI.open(MYSQL_URL)) {
+            final DbTable raw = new DbTableBuilder(mysql).withDialect(SqlDialect.MYSQL).build(DATABASE_NAME);
+            final Table<String, String, String> dialectTable = createTable(raw);
+            dialectTable.putAll(createCells(SelectionMap.MAX_INLINE_VALUES * 2));
+
+            final ImmutableList.Builder<byte[]> rows = ImmutableList.builder();
+            final ImmutableList.Builder<Map.Entry<byte[], byte[]>> keys = ImmutableList.builder();
+            for (int i = 0; i < SelectionMap.MAX_INLINE_VALUES * 2; i++) {
+                rows.add(bytes("row" + i));
+                keys.add(Maps.immutableEntry(bytes("row" + i), bytes(TEST_COLUMN)));
+            }
+
+            assertEquals(SelectionMap.MAX_INLINE_VALUES * 2, raw.getAll(rows.build(), ImmutableList.of(bytes(TEST_COLUMN))).size());
+            assertEquals(SelectionMap.MAX_INLINE_VALUES * 2, raw.getAll(keys.build()).size());
+
+            assertTrue(dialectTable.rowKeySet().removeAll(createCells(SelectionMap.MAX_INLINE_VALUES + 1).rowKeySet()));
+            assertEquals(SelectionMap.MAX_INLINE_VALUES - 1, dialectTable.size());
+        }
+    }
+
+    @Test
+    public void testMySqlDialect_PagedScans() {
+        try (Handle mysql = DBI.open(MYSQL_URL)) {
+            final Table<String, String, String> dialectTable = createTable(new DbTableBuilder(mysql)
+                    .withDialect(SqlDialect.MYSQL)
+                    .withPageSize(2)
+                    .build(DATABASE_NAME));
+            dialectTable.putAll(createCells(5));
+
+            assertEquals(createCells(5), HashBasedTable.create(dialectTable));
+        }
+    }
+
+    @Test
+    public void testMySqlDialect_ColumnIndexCreatedOnce() {
+        try (Handle mysql = DBI.open(MYSQL_URL)) {
+            final DbTableBuilder builder = new DbTableBuilder(mysql)
+                    .withDialect(SqlDialect.MYSQL)
+                    .withIndexProfile(IndexProfile.COLUMN_INDEXED);
+
+            builder.build(DATABASE_NAME);
+            final Table<String, String, String> dialectTable = createTable(builder.build(DATABASE_NAME));
+            dialectTable.putAll(createCells(5));
+
+            assertEquals(5, dialectTable.column(TEST_COLUMN).size());
+        }
+    }
+
+    // Test typed tables
+
+    private TypedDbTable<Long, String, String> createTypedTable(DbTableBuilder builder) {
+        return builder.build("typed", new LongFieldMapperFactory(), new StringFieldMapperFactory(), new StringFieldMapperFactory());
+    }
+
+    private String columnType(String tableName, String columnName) {
+        return handle.createQuery("SELECT TYPE_NAME FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_NAME = :table AND COLUMN_NAME = :column")
+                .bind("table", tableName.toUpperCase())
+                .bind("column", columnName.toUpperCase())
+                .map(StringMapper.FIRST)
+                .first();
+    }
+
+    @Test
+    public void testTyped_NativeColumnTypes() {
+        createTypedTable(new DbTableBuilder(handle));
+
+        assertEquals("BIGINT", columnType("typed", "row_field"));
+        assertEquals("VARCHAR", columnType("typed", "column_field"));
+        assertEquals("VARCHAR", columnType("typed", "value_field"));
+        dropTable("typed");
+    }
+
+    @Test
+    public void testTyped_ReturnsExpectedValues() {
+        final TypedDbTable<Long, String, String> typed = createTypedTable(new DbTableBuilder(handle));
+        typed.put(1L, TEST_COLUMN, TEST_VALUE);
+        typed.put(2L, TEST_COLUMN, "value2");
+        typed.put(2L, "column2", "value3");
+
+        assertEquals(TEST_VALUE, typed.get(1L, TEST_COLUMN));
+        assertNull(typed.get(3L, TEST_COLUMN));
+        assertTrue(typed.contains(2L, "column2"));
+        assertEquals(ImmutableMap.of(TEST_COLUMN, "value2", "column2", "value3"), typed.row(2L));
+        assertEquals(ImmutableMap.of(1L, TEST_VALUE, 2L, "value2"), typed.column(TEST_COLUMN));
+        assertEquals(ImmutableSet.of(1L, 2L), typed.rowMap().keySet());
+        assertEquals(ImmutableSet.of(TEST_COLUMN, "column2"), typed.columnMap().keySet());
+        assertEquals("value3", typed.remove(2L, "column2"));
+        assertEquals(2, typed.size());
+        dropTable("typed");
+    }
+
+    @Test
+    public void testTyped_StringKeysAreCaseSensitive() {
+        final TypedDbTable<Long, String, String> typed = createTypedTable(new DbTableBuilder(handle));
+        typed.put(1L, "a", TEST_VALUE);
+        typed.put(1L, "A", "value1");
+
+        assertEquals(2, typed.size());
+        assertEquals(TEST_VALUE, typed.get(1L, "a"));
+        assertEquals("value1", typed.get(1L, "A"));
+        dropTable("typed");
+    }
+
+    @Test
+    public void testTyped_OrderedByNativeValue() {
+        final TypedDbTable<Long, String, String> typed = createTypedTable(new DbTableBuilder(handle));
+        for (long row : new long[] { 100L, -5L, 20L, 3L }) {
+            typed.put(row, TEST_COLUMN, TEST_VALUE);
+        }
+
+        final List<Long> rows = handle.createQuery("SELECT row_field FROM typed ORDER BY row_field")
+                .map(new LongFieldMapperFactory().build("row_field"))
+                .list();
+        assertEquals(ImmutableList.of(-5L, 3L, 20L, 100L), rows);
+        dropTable("typed");
+    }
+
+    @Test
+    public void testTyped_ManyKeysBoundAsArray() {
+        final TypedDbTable<Long, String, String> typed = createTypedTable(new DbTableBuilder(handle));
+        final Set<Long> rows = Sets.newHashSet();
+        for (long i = 0; i < SelectionMap.MAX_INLINE_VALUES * 2; i++) {
+            typed.put(i, TEST_COLUMN, TEST_VALUE);
+            rows.add(i);
+        }
+
+        assertEquals(rows.size(), typed.getAll(rows, ImmutableSet.of(TEST_COLUMN)).size());
+
+        final Set<Long> retained = ImmutableSet.copyOf(Iterables.limit(rows, SelectionMap.MAX_INLINE_VALUES + 1));
+        typed.rowKeySet().retainAll(retained);
+        assertEquals(retained, typed.rowKeySet());
+        dropTable("typed");
+    }
+
+    @Test
+    public void testTyped_CustomFieldMapperStoredAsBinary() {
+        final TypedDbTable<String, String, String> typed = new DbTableBuilder(handle).build("typed", new FieldMapperFactory<String>() {
+            @Override
+            public FieldMapper<String> build(String fieldName) {
+                return new FieldMapper<String>(fieldName) {
+                    @Override
+                    public String map(int index, ResultSet r, StatementContext ctx) throws SQLException {
+                        return StringCodec.DECODER.apply(r.getBytes(getFieldName()));
+                    }
+
+                    @Override
+                    public Object encode(String value) {
+                        return StringCodec.ENCODER.apply(value);
+                    }
+                };
+            }
+        }, new StringFieldMapperFactory(), new StringFieldMapperFactory());
+
+        typed.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
+        assertEquals(TEST_VALUE, typed.get(TEST_ROW, TEST_COLUMN));
+        assertEquals("VARBINARY", columnType("typed", "row_field"));
+        dropTable("typed");
+    }
+
+    @Test
+    public void testSelection_ManyValuesBoundAsValueArray() {
+        for (int i = 0; i < SelectionMap.MAX_INLINE_VALUES * 2; i++) {
+            table.put(TEST_ROW, "column" + i, "value" + i);
+        }
+
+        final Set<String> removed = Sets.newHashSet();
+        for (int i = 0; i <= SelectionMap.MAX_INLINE_VALUES; i++) {
+            removed.add("value" + i);
+        }
+
+        assertTrue(table.row(TEST_ROW).values().removeAll(removed));
+        assertEquals(SelectionMap.MAX_INLINE_VALUES - 1, table.size());
+    }
+
+    @Test
+    public void testSelection_EmptyListMatchesNothing() {
+        table.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
+
+        final SelectionMap selection = new SelectionMap(ImmutableMap.<String, Object>of("row_field", ImmutableList.of()));
+        assertEquals(0, (int) handle.createQuery(String.format("SELECT COUNT(*) FROM %s WHERE %s", DATABASE_NAME, selection.asSql()))
+                .bindFromMap(selection.asMap())
+                .map(IntegerMapper.FIRST)
+                .first());
+    }
+
+    @Test
+    public void testTyped_CountedSizes() {
+        final TypedDbTable<Long, String, String> typed = createTypedTable(new DbTableBuilder(handle).withSizeMode(SizeMode.COUNTER));
+        typed.put(1L, TEST_COLUMN, TEST_VALUE);
+        typed.put(1L, TEST_COLUMN, "value1");
+        typed.put(2L, "column1", TEST_VALUE);
+        assertEquals(2, typed.size());
+        assertEquals(2, typed.rowKeySet().size());
+
+        typed.remove(1L, TEST_COLUMN);
+        assertEquals(1, typed.size());
+        dropTable("typed");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testTyped_NoGroupCommit() {
+        createTypedTable(new DbTableBuilder(handle).withGroupCommit(10, TimeUnit.MILLISECONDS));
+    }
+
+    // Test sorted views
+
+    private static final BaseEncoding HEX = BaseEncoding.base16();
+
+    private static byte[] hex(String key) {
+        return HEX.decode(key);
+    }
+
+    private static List<String> hex(Iterable<byte[]> keys) {
+        final List<String> result = Lists.newArrayList();
+        for (byte[] key : keys) {
+            result.add(HEX.encode(key));
+        }
+
+        return result;
+    }
+
+    private DbTable createSortedTable(String... rows) {
+        final DbTable raw = new DbTable(DATABASE_NAME, handle);
+        for (String row : rows) {
+            raw.put(hex(row), hex("01"), bytes(TEST_VALUE));
+            raw.put(hex(row), hex("02"), bytes(TEST_VALUE));
+        }
+
+        return raw;
+    }
+
+    @Test
+    public void testSortedRowMap_UnsignedOrder() {
+        final DbTable raw = createSortedTable("FF", "80", "7F", "01", "0100", "00");
+        final SortedMap<byte[], Map<byte[], byte[]>> rows = raw.sortedRowMap();
+
+        assertEquals(ImmutableList.of("00", "01", "0100", "7F", "80", "FF"), hex(rows.keySet()));
+        assertEquals("00", HEX.encode(rows.firstKey()));
+        assertEquals("FF", HEX.encode(rows.lastKey()));
+        assertEquals(6, rows.values().size());
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testSortedRowMap_NoFirstKeyWhenEmpty() {
+        new DbTable(DATABASE_NAME, handle).sortedRowMap().firstKey();
+    }
+
+    @Test
+    public void testRowRange_OnlyRowsInRange() {
+        final DbTable raw = createSortedTable("00", "01", "0100", "7F", "80", "FF");
+        final SortedMap<byte[], Map<byte[], byte[]>> range = raw.rowRange(hex("01"), hex("80"));
+
+        assertEquals(ImmutableList.of("01", "0100", "7F"), hex(range.keySet()));
+        assertEquals(3, range.size());
+        assertEquals(3, range.values().size());
+        assertEquals("01", HEX.encode(range.firstKey()));
+        assertEquals("7F", HEX.encode(range.lastKey()));
+        assertTrue(range.containsKey(hex("7F")));
+        assertFalse(range.containsKey(hex("80")));
+        assertNull(range.get(hex("00")));
+        assertEquals(ImmutableList.of("01", "02"), hex(range.get(hex("0100")).keySet()));
+
+        final List<String> entries = Lists.newArrayList();
+        for (Map.Entry<byte[], Map<byte[], byte[]>> entry : range.entrySet()) {
+            entries.add(HEX.encode(entry.getKey()));
+        }
+        assertEquals(ImmutableList.of("01", "0100", "7F"), entries);
+    }
+
+    @Test
+    public void testRowRange_NestedRanges() {
+        final DbTable raw = createSortedTable("00", "01", "0100", "7F", "80", "FF");
+        final SortedMap<byte[], Map<byte[], byte[]>> range = raw.rowRange(hex("01"), hex("FF"));
+
+        assertEquals(ImmutableList.of("01", "0100"), hex(range.headMap(hex("7F")).keySet()));
+        assertEquals(ImmutableList.of("7F", "80"), hex(range.tailMap(hex("7F")).keySet()));
+        assertEquals(ImmutableList.of("0100", "7F"), hex(range.subMap(hex("0100"), hex("80")).keySet()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRowRange_SubMapOutOfRange() {
+        createSortedTable().rowRange(hex("01"), hex("80")).subMap(hex("00"), hex("7F"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRowRange_FromAfterTo() {
+        createSortedTable().rowRange(hex("80"), hex("01"));
+    }
+
+    @Test
+    public void testRowRange_ClearOnlyRowsInRange() {
+        final DbTable raw = createSortedTable("00", "01", "7F", "80");
+        raw.rowRange(hex("01"), hex("80")).clear();
+
+        assertEquals(ImmutableList.of("00", "80"), hex(raw.rowKeySet()));
+        assertEquals(4, raw.size());
+    }
+
+    @Test
+    public void testRowsWithPrefix_OnlyRowsWithPrefix() {
+        final DbTable raw = createSortedTable("00", "01", "0100", "01FF", "02", "FF", "FF00", "FFFF");
+
+        assertEquals(ImmutableList.of("01", "0100", "01FF"), hex(raw.rowsWithPrefix(hex("01")).keySet()));
+        assertEquals(ImmutableList.of("01FF"), hex(raw.rowsWithPrefix(hex("01FF")).keySet()));
+        assertEquals(ImmutableList.of("FF", "FF00", "FFFF"), hex(raw.rowsWithPrefix(hex("FF")).keySet()));
+        assertEquals(ImmutableList.of("FFFF"), hex(raw.rowsWithPrefix(hex("FFFF")).keySet()));
+        assertEquals(8, raw.rowsWithPrefix(new byte[0]).size());
+    }
+
+    @Test
+    public void testPrefixEnd() {
+        assertEquals("02", HEX.encode(DbTable.prefixEnd(hex("01"))));
+        assertEquals("02", HEX.encode(DbTable.prefixEnd(hex("01FF"))));
+        assertEquals("0180", HEX.encode(DbTable.prefixEnd(hex("017F"))));
+        assertNull(DbTable.prefixEnd(hex("FFFF")));
+        assertNull(DbTable.prefixEnd(new byte[0]));
+    }
+
+    @Test
+    public void testRowSubMap_OnlyColumnsInRange() {
+        final DbTable raw = new DbTable(DATABASE_NAME, handle);
+        for (String column : new String[] { "FF", "80", "7F", "01", "00" }) {
+            raw.put(hex("01"), hex(column), hex(column));
+        }
+        raw.put(hex("02"), hex("7F"), hex("7F"));
+
+        final SortedMap<byte[], byte[]> row = raw.row(hex("01"));
+        assertEquals(ImmutableList.of("00", "01", "7F", "80", "FF"), hex(row.keySet()));
+        assertEquals(ImmutableList.of("00", "01", "7F", "80", "FF"), hex(row.values()));
+
+        final SortedMap<byte[], byte[]> columns = row.subMap(hex("01"), hex("FF"));
+        assertEquals(ImmutableList.of("01", "7F", "80"), hex(columns.keySet()));
+        assertEquals("01", HEX.encode(columns.firstKey()));
+        assertEquals("80", HEX.encode(columns.lastKey()));
+        assertEquals(3, columns.size());
+
+        columns.put(hex("02"), hex("02"));
+        assertArrayEquals(hex("02"), raw.get(hex("01"), hex("02")));
+        columns.remove(hex("7F"));
+        assertFalse(raw.contains(hex("01"), hex("7F")));
+        assertTrue(raw.contains(hex("02"), hex("7F")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRowSubMap_PutOutOfRange() {
+        new DbTable(DATABASE_NAME, handle).row(hex("01")).subMap(hex("01"), hex("80")).put(hex("80"), hex("80"));
+    }
+
     // Test load
 
     private static final int TEST_ROW_COUNT = 1000;
@@ -0,0 +1,226 @@
+package com.jamierf.dbtable.core.async;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Table;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.jamierf.dbtable.core.DbTable;
+import com.jamierf.dbtable.core.util.StringCodec;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AsyncDbTableTest {
+
+    private static final String DATABASE_NAME = "test";
+    private static final byte[] TEST_ROW = StringCodec.ENCODER.apply("row");
+    private static final byte[] TEST_COLUMN = StringCodec.ENCODER.apply("column");
+    private static final byte[] TEST_VALUE = StringCodec.ENCODER.apply("value");
+
+    private Handle handle;
+    private DbTable table;
+    private AsyncDbTable asyncTable;
+
+    @Before
+    public void setUp() {
+        // Keeps the in-memory database open between pooled handles
+        handle = DBI.open("jdbc:h2:mem:test");
+        table = new DbTable(DATABASE_NAME, new DBI("jdbc:h2:mem:test"));
+        asyncTable = AsyncDbTable.create(table, 4, 16);
+    }
+
+    @After
+    public void tearDown() {
+        asyncTable.close();
+
+        handle.execute(String.format("DROP TABLE %s", DATABASE_NAME));
+        handle.close();
+    }
+
+    @Test
+    public void testPutThenGet() throws Exception {
+        assertNull(asyncTable.put(TEST_ROW, TEST_COLUMN, TEST_VALUE).get());
+
+        assertArrayEquals(TEST_VALUE, asyncTable.get(TEST_ROW, TEST_COLUMN).get());
+        assertTrue(asyncTable.contains(TEST_ROW, TEST_COLUMN).get());
+        assertArrayEquals(TEST_VALUE, table.get(TEST_ROW, TEST_COLUMN));
+    }
+
+    @Test
+    public void testRemove() throws Exception {
+        table.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
+
+        assertArrayEquals(TEST_VALUE, asyncTable.remove(TEST_ROW, TEST_COLUMN).get());
+        assertFalse(asyncTable.contains(TEST_ROW, TEST_COLUMN).get());
+    }
+
+    @Test
+    public void testGetAll() throws Exception {
+        table.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
+        table.put(TEST_COLUMN, TEST_ROW, TEST_VALUE);
+
+        final Table<byte[], byte[], byte[]> result = asyncTable.getAll(ImmutableList.of(Maps.immutableEntry(TEST_ROW, TEST_COLUMN))).get();
+        assertEquals(1, result.size());
+
+        assertEquals(2, asyncTable.getAll(ImmutableList.of(TEST_ROW, TEST_COLUMN), ImmutableList.of(TEST_ROW, TEST_COLUMN)).get().size());
+    }
+
+    @Test
+    public void testGetRowIsDetachedFromTable() throws Exception {
+        table.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
+
+        final SortedMap<byte[], byte[]> row = asyncTable.getRow(TEST_ROW).get();
+        table.remove(TEST_ROW, TEST_COLUMN);
+
+        assertEquals(1, row.size());
+        assertArrayEquals(TEST_VALUE, row.get(TEST_COLUMN));
+        assertTrue(asyncTable.getColumn(TEST_COLUMN).get().isEmpty());
+    }
+
+    @Test
+    public void testSharedHandleTableUsesOneThread() throws Exception {
+        final DbTable sharedTable = new DbTable(DATABASE_NAME, handle);
+        assertTrue(sharedTable.isSharedHandle());
+        assertFalse(table.isSharedHandle());
+
+        final AsyncDbTable sharedAsyncTable = AsyncDbTable.create(sharedTable);
+        try {
+            assertNull(sharedAsyncTable.put(TEST_ROW, TEST_COLUMN, TEST_VALUE).get());
+            assertArrayEquals(TEST_VALUE, sharedAsyncTable.get(TEST_ROW, TEST_COLUMN).get());
+        }
+        finally {
+            sharedAsyncTable.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSharedHandleTableRejectsSeveralThreads() {
+        AsyncDbTable.create(new DbTable(DATABASE_NAME, handle), 4, 16);
+    }
+
+    @Test
+    public void testFailuresArePropagated() throws Exception {
+        handle.execute(String.format("DROP TABLE %s", DATABASE_NAME));
+
+        try {
+            asyncTable.get(TEST_ROW, TEST_COLUMN).get();
+            fail("Expected the lookup to fail");
+        }
+        catch (ExecutionException e) {
+            assertNotNull(e.getCause());
+        }
+        finally {
+            handle.execute(String.format("CREATE TABLE %s (id INT)", DATABASE_NAME));
+        }
+    }
+
+    @Test
+    public void testRejectsOperationsOverInFlightLimit() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        final AsyncDbTable limitedTable = new AsyncDbTable(table, executor, 2);
+        try {
+            final List<ListenableFuture<byte[]>> accepted = ImmutableList.of(
+                    limitedTable.get(TEST_ROW, TEST_COLUMN),
+                    limitedTable.get(TEST_ROW, TEST_COLUMN)
+            );
+            assertEquals(2, limitedTable.getInFlight());
+
+            try {
+                limitedTable.get(TEST_ROW, TEST_COLUMN).get();
+                fail("Expected the operation to be rejected");
+            }
+            catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+
+            release.countDown();
+            for (ListenableFuture<byte[]> future : accepted) {
+                assertNull(future.get());
+            }
+
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+            assertEquals(0, limitedTable.getInFlight());
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testWaitsForOperationsInFlightUpToMaxWait() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        final AsyncDbTable waitingTable = new AsyncDbTable(table, executor, 1, 500, TimeUnit.MILLISECONDS);
+        try {
+            final ListenableFuture<byte[]> accepted = waitingTable.get(TEST_ROW, TEST_COLUMN);
+
+            final long start = System.nanoTime();
+            try {
+                waitingTable.get(TEST_ROW, TEST_COLUMN).get();
+                fail("Expected the operation to be rejected");
+            }
+            catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(500));
+
+            // Frees the permit while the next caller is waiting for it
+            final ScheduledExecutorService releaser = Executors.newSingleThreadScheduledExecutor();
+            releaser.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    release.countDown();
+                }
+            }, 20, TimeUnit.MILLISECONDS);
+            releaser.shutdown();
+
+            assertNull(waitingTable.get(TEST_ROW, TEST_COLUMN).get());
+            assertNull(accepted.get());
+        }
+        finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+}
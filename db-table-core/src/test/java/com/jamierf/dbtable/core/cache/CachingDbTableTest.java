@@ -0,0 +1,177 @@
+package com.jamierf.dbtable.core.cache;
+
+import com.google.common.collect.ForwardingTable;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Table;
+import com.google.common.collect.Tables;
+import com.jamierf.dbtable.core.DbTable;
+import com.jamierf.dbtable.core.util.StringCodec;
+import com.yammer.collections.transforming.TransformingTable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+
+import static org.junit.Assert.*;
+
+public class CachingDbTableTest {
+
+    private static final String DATABASE_NAME = "test";
+    private static final String TEST_ROW = "row";
+    private static final String TEST_COLUMN = "column";
+    private static final String TEST_VALUE = "value";
+
+    private Handle handle;
+    private CachingDbTable cachingTable;
+    private Table<String, String, String> table;
+
+    @Before
+    public void setUp() {
+        handle = DBI.open("jdbc:h2:mem:test");
+        cachingTable = CachingDbTable.withMaximumSize(new DbTable(DATABASE_NAME, handle), 2);
+        table = TransformingTable.create(
+                cachingTable,
+                StringCodec.ENCODER, StringCodec.DECODER,
+                StringCodec.ENCODER, StringCodec.DECODER,
+                StringCodec.ENCODER, StringCodec.DECODER
+        );
+    }
+
+    @After
+    public void tearDown() {
+        handle.execute(String.format("DROP TABLE %s", DATABASE_NAME));
+        handle.close();
+    }
+
+    @Test
+    public void testGet_RepeatedGetIsServedFromCache() {
+        table.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
+
+        assertEquals(TEST_VALUE, table.get(TEST_ROW, TEST_COLUMN));
+        assertEquals(TEST_VALUE, table.get(TEST_ROW, TEST_COLUMN));
+
+        assertEquals(1, cachingTable.stats().missCount());
+        assertEquals(1, cachingTable.stats().hitCount());
+    }
+
+    @Test
+    public void testGet_MissingCellIsCached() {
+        assertNull(table.get(TEST_ROW, TEST_COLUMN));
+        assertFalse(table.contains(TEST_ROW, TEST_COLUMN));
+
+        assertEquals(1, cachingTable.stats().missCount());
+        assertEquals(1, cachingTable.stats().hitCount());
+    }
+
+    @Test
+    public void testPut_InvalidatesCachedCell() {
+        assertNull(table.get(TEST_ROW, TEST_COLUMN));
+
+        table.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
+        assertEquals(TEST_VALUE, table.get(TEST_ROW, TEST_COLUMN));
+    }
+
+    @Test
+    public void testRemove_InvalidatesCachedCell() {
+        table.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
+        assertEquals(TEST_VALUE, table.get(TEST_ROW, TEST_COLUMN));
+
+        table.remove(TEST_ROW, TEST_COLUMN);
+        assertNull(table.get(TEST_ROW, TEST_COLUMN));
+    }
+
+    @Test
+    public void testClear_InvalidatesCachedCells() {
+        table.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
+        assertEquals(TEST_VALUE, table.get(TEST_ROW, TEST_COLUMN));
+
+        table.clear();
+        assertNull(table.get(TEST_ROW, TEST_COLUMN));
+    }
+
+    @Test
+    public void testRow_PutAllInvalidatesCachedCells() {
+        assertNull(table.get(TEST_ROW, TEST_COLUMN));
+
+        table.row(TEST_ROW).putAll(ImmutableMap.of(TEST_COLUMN, TEST_VALUE));
+        assertEquals(TEST_VALUE, table.get(TEST_ROW, TEST_COLUMN));
+    }
+
+    @Test
+    public void testColumn_ClearInvalidatesCachedCells() {
+        table.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
+        assertEquals(TEST_VALUE, table.get(TEST_ROW, TEST_COLUMN));
+
+        table.column(TEST_COLUMN).clear();
+        assertNull(table.get(TEST_ROW, TEST_COLUMN));
+    }
+
+    @Test
+    public void testCellSet_RemoveAllInvalidatesCachedCells() {
+        table.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
+        assertEquals(TEST_VALUE, table.get(TEST_ROW, TEST_COLUMN));
+
+        table.cellSet().removeAll(ImmutableSet.of(Tables.immutableCell(TEST_ROW, TEST_COLUMN, TEST_VALUE)));
+        assertNull(table.get(TEST_ROW, TEST_COLUMN));
+    }
+
+    @Test
+    public void testRowKeySet_RemoveAllInvalidatesCachedCells() {
+        table.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
+        assertEquals(TEST_VALUE, table.get(TEST_ROW, TEST_COLUMN));
+
+        table.rowKeySet().removeAll(ImmutableSet.of(TEST_ROW));
+        assertNull(table.get(TEST_ROW, TEST_COLUMN));
+    }
+
+    @Test
+    public void testRowMap_RemoveInvalidatesCachedCells() {
+        table.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
+        assertEquals(TEST_VALUE, table.get(TEST_ROW, TEST_COLUMN));
+
+        table.rowMap().get(TEST_ROW).remove(TEST_COLUMN);
+        assertNull(table.get(TEST_ROW, TEST_COLUMN));
+    }
+
+    @Test
+    public void testGet_WriteDuringLoadIsNotCachedOver() {
+        final byte[] row = StringCodec.ENCODER.apply(TEST_ROW);
+        final byte[] column = StringCodec.ENCODER.apply(TEST_COLUMN);
+        final byte[] value = StringCodec.ENCODER.apply(TEST_VALUE);
+
+        final DbTable dbTable = new DbTable(DATABASE_NAME, handle);
+        final CachingDbTable[] racingTable = new CachingDbTable[1];
+
+        // Writes through the cache after reading the old value, as another thread could
+        racingTable[0] = CachingDbTable.withMaximumSize(new ForwardingTable<byte[], byte[], byte[]>() {
+            @Override
+            protected Table<byte[], byte[], byte[]> delegate() {
+                return dbTable;
+            }
+
+            @Override
+            public byte[] get(Object row, Object column) {
+                final byte[] stored = super.get(row, column);
+                if (stored == null) {
+                    racingTable[0].put((byte[]) row, (byte[]) column, value);
+                }
+
+                return stored;
+            }
+        }, 2);
+
+        assertNull(racingTable[0].get(row, column));
+        assertArrayEquals(value, racingTable[0].get(row, column));
+    }
+
+    @Test
+    public void testStats_EvictionsAreCounted() {
+        table.get(TEST_ROW, "column1");
+        table.get(TEST_ROW, "column2");
+        table.get(TEST_ROW, "column3");
+
+        assertEquals(1, cachingTable.stats().evictionCount());
+    }
+}
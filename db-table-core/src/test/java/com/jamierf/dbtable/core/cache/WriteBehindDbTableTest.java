@@ -0,0 +1,262 @@
+package com.jamierf.dbtable.core.cache;
+
+import com.google.common.collect.Table;
+import com.jamierf.dbtable.core.DbTable;
+import com.jamierf.dbtable.core.util.StringCodec;
+import com.yammer.collections.transforming.TransformingTable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class WriteBehindDbTableTest {
+
+    private static final String DATABASE_NAME = "test";
+    private static final String TEST_ROW = "row";
+    private static final String TEST_COLUMN = "column";
+    private static final String TEST_VALUE = "value";
+    private static final int MAX_BUFFERED_CELLS = 10;
+
+    private Handle handle;
+    private DbTable dbTable;
+    private WriteBehindDbTable writeBehindTable;
+    private Table<String, String, String> table;
+    private Table<String, String, String> underlying;
+
+    private static Table<String, String, String> transform(Table<byte[], byte[], byte[]> table) {
+        return TransformingTable.create(
+                table,
+                StringCodec.ENCODER, StringCodec.DECODER,
+                StringCodec.ENCODER, StringCodec.DECODER,
+                StringCodec.ENCODER, StringCodec.DECODER
+        );
+    }
+
+    @Before
+    public void setUp() {
+        // Keeps the in-memory database open between pooled handles
+        handle = DBI.open("jdbc:h2:mem:test");
+        dbTable = new DbTable(DATABASE_NAME, new DBI("jdbc:h2:mem:test"));
+        writeBehindTable = WriteBehindDbTable.create(dbTable, 1, TimeUnit.HOURS, MAX_BUFFERED_CELLS);
+
+        table = transform(writeBehindTable);
+        underlying = transform(dbTable);
+    }
+
+    @After
+    public void tearDown() {
+        writeBehindTable.close();
+
+        handle.execute(String.format("DROP TABLE %s", DATABASE_NAME));
+        handle.close();
+    }
+
+    @Test
+    public void testPut_IsBufferedUntilFlush() {
+        assertNull(table.put(TEST_ROW, TEST_COLUMN, TEST_VALUE));
+
+        assertEquals(TEST_VALUE, table.get(TEST_ROW, TEST_COLUMN));
+        assertTrue(table.contains(TEST_ROW, TEST_COLUMN));
+        assertNull(underlying.get(TEST_ROW, TEST_COLUMN));
+        assertEquals(1, writeBehindTable.stats().bufferDepth());
+
+        writeBehindTable.flush();
+
+        assertEquals(TEST_VALUE, underlying.get(TEST_ROW, TEST_COLUMN));
+        assertEquals(0, writeBehindTable.stats().bufferDepth());
+    }
+
+    @Test
+    public void testPut_CoalescesRepeatedWrites() {
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i == 0 ? null : TEST_VALUE + (i - 1), table.put(TEST_ROW, TEST_COLUMN, TEST_VALUE + i));
+        }
+
+        writeBehindTable.flush();
+
+        assertEquals(TEST_VALUE + 4, underlying.get(TEST_ROW, TEST_COLUMN));
+
+        final WriteBehindStats stats = writeBehindTable.stats();
+        assertEquals(5, stats.writeCount());
+        assertEquals(1, stats.flushedCount());
+        assertEquals(1, stats.flushCount());
+        assertEquals(5.0, stats.coalescingRatio(), 0.0);
+        assertTrue(stats.totalFlushTime() > 0);
+    }
+
+    @Test
+    public void testPut_ReturnsPreviousFlushedValue() {
+        underlying.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
+
+        assertEquals(TEST_VALUE, table.put(TEST_ROW, TEST_COLUMN, TEST_VALUE + 1));
+    }
+
+    @Test
+    public void testRemove_HidesFlushedValue() {
+        underlying.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
+
+        assertEquals(TEST_VALUE, table.remove(TEST_ROW, TEST_COLUMN));
+        assertNull(table.get(TEST_ROW, TEST_COLUMN));
+        assertFalse(table.contains(TEST_ROW, TEST_COLUMN));
+        assertEquals(TEST_VALUE, underlying.get(TEST_ROW, TEST_COLUMN));
+
+        writeBehindTable.flush();
+
+        assertFalse(underlying.contains(TEST_ROW, TEST_COLUMN));
+    }
+
+    @Test
+    public void testViews_SeeBufferedWrites() {
+        table.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
+
+        assertEquals(1, table.size());
+        assertEquals(TEST_VALUE, table.row(TEST_ROW).get(TEST_COLUMN));
+        assertEquals(1, table.cellSet().size());
+    }
+
+    @Test
+    public void testFlush_TriggeredWhenBufferIsFull() throws InterruptedException {
+        for (int i = 0; i < MAX_BUFFERED_CELLS; i++) {
+            writeBehindTable.set(StringCodec.ENCODER.apply(TEST_ROW + i), StringCodec.ENCODER.apply(TEST_COLUMN), StringCodec.ENCODER.apply(TEST_VALUE));
+        }
+
+        for (int i = 0; i < 100 && writeBehindTable.stats().flushCount() == 0; i++) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(1, writeBehindTable.stats().flushCount());
+        assertEquals(MAX_BUFFERED_CELLS, underlying.size());
+    }
+
+    @Test
+    public void testClose_FlushesBuffer() {
+        table.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
+
+        writeBehindTable.close();
+
+        assertEquals(TEST_VALUE, underlying.get(TEST_ROW, TEST_COLUMN));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testClose_RejectsLaterWrites() {
+        writeBehindTable.close();
+
+        table.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
+    }
+
+    private void dropTable() {
+        handle.execute(String.format("DROP TABLE %s", DATABASE_NAME));
+    }
+
+    private void recreateTable() {
+        new DbTable(DATABASE_NAME, handle);
+    }
+
+    @Test
+    public void testFlush_FailuresAreCountedAndRetried() {
+        table.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
+        dropTable();
+
+        try {
+            writeBehindTable.flush();
+            fail("flush should fail without a table");
+        }
+        catch (RuntimeException expected) {
+            // The table is gone
+        }
+
+        assertEquals(1, writeBehindTable.stats().failedFlushCount());
+        assertEquals(1, writeBehindTable.stats().bufferDepth());
+
+        recreateTable();
+        writeBehindTable.flush();
+
+        assertEquals(TEST_VALUE, underlying.get(TEST_ROW, TEST_COLUMN));
+        assertEquals(0, writeBehindTable.stats().bufferDepth());
+    }
+
+    @Test
+    public void testFlush_WritesEveryCellOrNone() {
+        underlying.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
+        handle.execute(String.format("ALTER TABLE %s ADD CONSTRAINT short_values CHECK (LENGTH(value_field) < 10)", DATABASE_NAME));
+
+        table.remove(TEST_ROW, TEST_COLUMN);
+        table.put(TEST_ROW + 1, TEST_COLUMN, TEST_VALUE);
+        table.put(TEST_ROW + 2, TEST_COLUMN, "a value too long for the table");
+
+        try {
+            writeBehindTable.flush();
+            fail("flush should fail to write the long value");
+        }
+        catch (RuntimeException expected) {
+            // The long value breaks the constraint
+        }
+
+        // The remove and the other put were rolled back with the failed put
+        assertEquals(TEST_VALUE, underlying.get(TEST_ROW, TEST_COLUMN));
+        assertFalse(underlying.contains(TEST_ROW + 1, TEST_COLUMN));
+        assertEquals(3, writeBehindTable.stats().bufferDepth());
+
+        handle.execute(String.format("ALTER TABLE %s DROP CONSTRAINT short_values", DATABASE_NAME));
+        writeBehindTable.flush();
+
+        assertFalse(underlying.contains(TEST_ROW, TEST_COLUMN));
+        assertEquals(TEST_VALUE, underlying.get(TEST_ROW + 1, TEST_COLUMN));
+        assertEquals(2, underlying.size());
+    }
+
+    @Test
+    public void testWrite_CopiesArrays() {
+        final byte[] row = StringCodec.ENCODER.apply(TEST_ROW);
+        final byte[] column = StringCodec.ENCODER.apply(TEST_COLUMN);
+        final byte[] value = StringCodec.ENCODER.apply(TEST_VALUE);
+        writeBehindTable.set(row, column, value);
+
+        row[0] = 'x';
+        column[0] = 'x';
+        value[0] = 'x';
+        writeBehindTable.get(StringCodec.ENCODER.apply(TEST_ROW), StringCodec.ENCODER.apply(TEST_COLUMN))[0] = 'x';
+        writeBehindTable.flush();
+
+        assertEquals(TEST_VALUE, underlying.get(TEST_ROW, TEST_COLUMN));
+        assertEquals(1, underlying.size());
+    }
+
+    @Test
+    public void testWrite_FullBufferFlushesOnWriter() {
+        final WriteBehindDbTable capped = WriteBehindDbTable.create(dbTable, 1, TimeUnit.HOURS, 2, 2);
+        try {
+            capped.set(StringCodec.ENCODER.apply(TEST_ROW + 0), StringCodec.ENCODER.apply(TEST_COLUMN), StringCodec.ENCODER.apply(TEST_VALUE));
+            dropTable();
+            capped.set(StringCodec.ENCODER.apply(TEST_ROW + 1), StringCodec.ENCODER.apply(TEST_COLUMN), StringCodec.ENCODER.apply(TEST_VALUE));
+
+            // Cells already buffered may still be written to
+            capped.set(StringCodec.ENCODER.apply(TEST_ROW + 1), StringCodec.ENCODER.apply(TEST_COLUMN), StringCodec.ENCODER.apply(TEST_VALUE + 1));
+
+            try {
+                capped.set(StringCodec.ENCODER.apply(TEST_ROW + 2), StringCodec.ENCODER.apply(TEST_COLUMN), StringCodec.ENCODER.apply(TEST_VALUE));
+                fail("write to a full buffer should fail while flushes fail");
+            }
+            catch (RuntimeException expected) {
+                // The table is gone
+            }
+
+            assertEquals(2, capped.stats().bufferDepth());
+            assertTrue(capped.stats().failedFlushCount() > 0);
+
+            recreateTable();
+            capped.set(StringCodec.ENCODER.apply(TEST_ROW + 2), StringCodec.ENCODER.apply(TEST_COLUMN), StringCodec.ENCODER.apply(TEST_VALUE));
+        }
+        finally {
+            capped.close();
+        }
+
+        assertEquals(3, underlying.size());
+        assertEquals(TEST_VALUE + 1, underlying.get(TEST_ROW + 1, TEST_COLUMN));
+    }
+}
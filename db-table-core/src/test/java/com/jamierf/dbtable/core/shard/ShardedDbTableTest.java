@@ -0,0 +1,331 @@
+package com.jamierf.dbtable.core.shard;
+
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.collect.Table;
+import com.google.common.collect.Tables;
+import com.jamierf.dbtable.core.CloseableIterator;
+import com.jamierf.dbtable.core.DbTable;
+import com.jamierf.dbtable.core.util.StringCodec;
+import com.yammer.collections.transforming.TransformingTable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class ShardedDbTableTest {
+
+    private static final String DATABASE_NAME = "test";
+    private static final int SHARD_COUNT = 3;
+    private static final int ROW_COUNT = 30;
+    private static final String TEST_COLUMN = "column";
+    private static final String TEST_VALUE = "value";
+
+    private List<Handle> handles;
+    private List<DbTable> shards;
+    private ShardedDbTable shardedTable;
+    private Table<String, String, String> table;
+
+    private static Table<String, String, String> transform(Table<byte[], byte[], byte[]> table) {
+        return TransformingTable.create(
+                table,
+                StringCodec.ENCODER, StringCodec.DECODER,
+                StringCodec.ENCODER, StringCodec.DECODER,
+                StringCodec.ENCODER, StringCodec.DECODER
+        );
+    }
+
+    @Before
+    public void setUp() {
+        handles = Lists.newArrayList();
+        shards = Lists.newArrayList();
+
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            final String url = "jdbc:h2:mem:shard" + i;
+            // Keeps each in-memory database open between pooled handles
+            handles.add(DBI.open(url));
+            shards.add(new DbTable(DATABASE_NAME, new DBI(url)));
+        }
+
+        shardedTable = ShardedDbTable.create(shards);
+        table = transform(shardedTable);
+
+        final Table<String, String, String> cells = HashBasedTable.create();
+        for (int i = 0; i < ROW_COUNT; i++) {
+            cells.put("row" + i, TEST_COLUMN, TEST_VALUE + i);
+            cells.put("row" + i, "column" + (i % 2), TEST_VALUE);
+        }
+
+        table.putAll(cells);
+    }
+
+    @After
+    public void tearDown() {
+        shardedTable.close();
+
+        for (Handle handle : handles) {
+            handle.execute(String.format("DROP TABLE %s", DATABASE_NAME));
+            handle.close();
+        }
+    }
+
+    @Test
+    public void testRowsAreSpreadOverShards() {
+        int total = 0;
+        for (DbTable shard : shards) {
+            assertFalse(shard.isEmpty());
+            total += shard.rowKeySet().size();
+        }
+
+        assertEquals(ROW_COUNT, total);
+    }
+
+    @Test
+    public void testRowLivesInOneShard() {
+        int holding = 0;
+        for (DbTable shard : shards) {
+            if (transform(shard).containsRow("row0")) {
+                holding++;
+                assertEquals(2, transform(shard).row("row0").size());
+            }
+        }
+
+        assertEquals(1, holding);
+    }
+
+    @Test
+    public void testPointOperations() {
+        assertEquals(TEST_VALUE + 5, table.get("row5", TEST_COLUMN));
+        assertTrue(table.contains("row5", TEST_COLUMN));
+        assertEquals(TEST_VALUE + 5, table.put("row5", TEST_COLUMN, TEST_VALUE));
+        assertEquals(TEST_VALUE, table.remove("row5", TEST_COLUMN));
+        assertFalse(table.contains("row5", TEST_COLUMN));
+        assertEquals(ImmutableMap.of("column1", TEST_VALUE), ImmutableMap.copyOf(table.row("row5")));
+    }
+
+    @Test
+    public void testSizes() {
+        assertEquals(ROW_COUNT * 2, table.size());
+        assertEquals(ROW_COUNT * 2, table.cellSet().size());
+        assertEquals(ROW_COUNT, table.rowKeySet().size());
+        assertEquals(ROW_COUNT, table.column(TEST_COLUMN).size());
+        assertEquals(ROW_COUNT / 2, table.column("column0").size());
+        assertFalse(table.isEmpty());
+    }
+
+    @Test
+    public void testCellSetIteratesEveryShard() {
+        final Set<String> rows = Sets.newHashSet();
+        for (Table.Cell<String, String, String> cell : table.cellSet()) {
+            rows.add(cell.getRowKey());
+        }
+
+        assertEquals(ROW_COUNT, rows.size());
+        assertEquals(ROW_COUNT * 2, Iterables.size(table.values()));
+    }
+
+    private int openSessions(int shard) {
+        return handles.get(shard).createQuery("SELECT COUNT(*) FROM INFORMATION_SCHEMA.SESSIONS").mapTo(Integer.class).first();
+    }
+
+    private void awaitOpenSessions(int shard, int sessions) throws InterruptedException {
+        for (int i = 0; i < 100 && openSessions(shard) != sessions; i++) {
+            Thread.sleep(50);
+        }
+
+        assertEquals(sessions, openSessions(shard));
+    }
+
+    @Test
+    public void testCellSetOpensNextShardAheadAndCloses() throws InterruptedException {
+        final CloseableIterator<Table.Cell<byte[], byte[], byte[]>> iterator = (CloseableIterator<Table.Cell<byte[], byte[], byte[]>>) shardedTable.cellSet().iterator();
+        assertTrue(iterator.hasNext());
+        iterator.next();
+
+        // The first shard's cursor is open and the second's is opened ahead of it, alongside the handle each test keeps
+        assertEquals(2, openSessions(0));
+        awaitOpenSessions(1, 2);
+        for (int i = 2; i < SHARD_COUNT; i++) {
+            assertEquals(1, openSessions(i));
+        }
+
+        iterator.close();
+
+        assertFalse(iterator.hasNext());
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            assertEquals(1, openSessions(i));
+        }
+    }
+
+    @Test
+    public void testCellSetClosesEachShardOnceRead() throws InterruptedException {
+        final CloseableIterator<Table.Cell<byte[], byte[], byte[]>> iterator = (CloseableIterator<Table.Cell<byte[], byte[], byte[]>>) shardedTable.cellSet().iterator();
+        final int firstShardCells = shards.get(0).size();
+        for (int i = 0; i <= firstShardCells; i++) {
+            iterator.next();
+        }
+
+        // Reading into the second shard closes the first and opens the third
+        assertEquals(1, openSessions(0));
+        assertEquals(2, openSessions(1));
+        awaitOpenSessions(2, 2);
+
+        iterator.close();
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            assertEquals(1, openSessions(i));
+        }
+    }
+
+    @Test
+    public void testColumnMergesShards() {
+        final Map<String, String> column = ImmutableMap.copyOf(table.column(TEST_COLUMN));
+
+        assertEquals(ROW_COUNT, column.size());
+        assertEquals(TEST_VALUE + 7, column.get("row7"));
+        assertEquals(TEST_VALUE + 7, table.column(TEST_COLUMN).get("row7"));
+    }
+
+    @Test
+    public void testColumnKeySetIsDistinct() {
+        assertEquals(ImmutableSet.of(TEST_COLUMN, "column0", "column1"), ImmutableSet.copyOf(table.columnKeySet()));
+        assertTrue(table.containsColumn("column0"));
+        assertFalse(table.containsColumn("invalid"));
+        assertEquals(3, table.columnMap().size());
+        assertEquals(ROW_COUNT, table.columnMap().get(TEST_COLUMN).size());
+    }
+
+    @Test
+    public void testRowMap() {
+        assertEquals(ROW_COUNT, table.rowMap().size());
+        assertEquals(ROW_COUNT, Iterables.size(table.rowMap().entrySet()));
+        assertEquals(2, table.rowMap().get("row3").size());
+    }
+
+    @Test
+    public void testCellSetRemoveAllAndRetainAll() {
+        assertTrue(table.cellSet().removeAll(ImmutableSet.of(
+                Tables.immutableCell("row1", TEST_COLUMN, TEST_VALUE + 1),
+                Tables.immutableCell("row2", TEST_COLUMN, TEST_VALUE + 2),
+                Tables.immutableCell("row3", TEST_COLUMN, "invalid"))));
+        assertFalse(table.contains("row1", TEST_COLUMN));
+        assertFalse(table.contains("row2", TEST_COLUMN));
+        assertTrue(table.contains("row3", TEST_COLUMN));
+
+        assertTrue(table.cellSet().retainAll(ImmutableSet.of(
+                Tables.immutableCell("row3", TEST_COLUMN, TEST_VALUE + 3),
+                Tables.immutableCell("row4", "column0", TEST_VALUE))));
+        assertEquals(2, table.size());
+        assertTrue(table.contains("row3", TEST_COLUMN));
+        assertTrue(table.contains("row4", "column0"));
+    }
+
+    @Test
+    public void testRowKeySetRemoveAllAndRetainAll() {
+        assertTrue(table.rowKeySet().removeAll(ImmutableSet.of("row1", "row2", "invalid")));
+        assertEquals(ROW_COUNT - 2, table.rowKeySet().size());
+        assertFalse(table.containsRow("row1"));
+
+        assertTrue(table.rowKeySet().retainAll(ImmutableSet.of("row3", "row4")));
+        assertEquals(ImmutableSet.of("row3", "row4"), ImmutableSet.copyOf(table.rowKeySet()));
+    }
+
+    @Test
+    public void testValuesRemove() {
+        assertTrue(table.values().remove(TEST_VALUE + 5));
+        assertFalse(table.contains("row5", TEST_COLUMN));
+        assertFalse(table.values().remove("invalid"));
+
+        assertTrue(table.values().removeAll(ImmutableSet.of(TEST_VALUE)));
+        assertEquals(ROW_COUNT - 1, table.size());
+
+        assertTrue(table.values().retainAll(ImmutableSet.of(TEST_VALUE + 6)));
+        assertEquals(ImmutableSet.of(TEST_VALUE + 6), ImmutableSet.copyOf(table.values()));
+    }
+
+    @Test
+    public void testColumnViews() {
+        assertTrue(table.column(TEST_COLUMN).keySet().removeAll(ImmutableSet.of("row1", "row2")));
+        assertFalse(table.contains("row1", TEST_COLUMN));
+        assertTrue(table.contains("row1", "column1"));
+
+        assertTrue(table.column(TEST_COLUMN).values().remove(TEST_VALUE + 3));
+        assertFalse(table.contains("row3", TEST_COLUMN));
+
+        assertTrue(table.column(TEST_COLUMN).entrySet().retainAll(ImmutableSet.of(Maps.immutableEntry("row4", TEST_VALUE + 4))));
+        assertEquals(ImmutableMap.of("row4", TEST_VALUE + 4), ImmutableMap.copyOf(table.column(TEST_COLUMN)));
+
+        table.column("column0").clear();
+        assertFalse(table.containsColumn("column0"));
+        assertEquals(ROW_COUNT / 2 + 1, table.size());
+    }
+
+    @Test
+    public void testRowMapViews() {
+        assertTrue(table.rowMap().keySet().removeAll(ImmutableSet.of("row1", "row2")));
+        assertFalse(table.containsRow("row1"));
+
+        assertTrue(table.rowMap().entrySet().removeAll(ImmutableSet.of(Maps.immutableEntry("row3", table.row("row3")))));
+        assertFalse(table.containsRow("row3"));
+
+        assertTrue(table.rowMap().values().remove(table.row("row4")));
+        assertFalse(table.containsRow("row4"));
+        assertEquals(ROW_COUNT - 4, table.rowMap().size());
+
+        assertTrue(table.rowMap().values().retainAll(ImmutableSet.of(ImmutableMap.copyOf(table.row("row5")))));
+        assertEquals(ImmutableSet.of("row5"), ImmutableSet.copyOf(table.rowKeySet()));
+
+        table.rowMap().clear();
+        assertTrue(table.isEmpty());
+    }
+
+    @Test
+    public void testColumnKeySetAndColumnMapAreLive() {
+        final Set<String> columns = table.columnKeySet();
+        final Map<String, Map<String, String>> columnMap = table.columnMap();
+
+        table.put("row0", "column2", TEST_VALUE);
+        assertTrue(columns.contains("column2"));
+        assertEquals(4, columns.size());
+        assertEquals(ImmutableMap.of("row0", TEST_VALUE), ImmutableMap.copyOf(columnMap.get("column2")));
+
+        assertTrue(columns.remove("column0"));
+        assertFalse(table.containsColumn("column0"));
+        assertEquals(ROW_COUNT / 2, columnMap.remove("column1").size());
+        assertFalse(table.containsColumn("column1"));
+        assertEquals(ImmutableSet.of(TEST_COLUMN, "column2"), ImmutableSet.copyOf(columnMap.keySet()));
+
+        final Iterator<String> iterator = columns.iterator();
+        assertEquals("column", iterator.next());
+        iterator.remove();
+        assertEquals(ImmutableSet.of("column2"), ImmutableSet.copyOf(columns));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCreateRejectsShardsBuiltFromOneHandle() {
+        ShardedDbTable.create(ImmutableList.of(new DbTable(DATABASE_NAME, handles.get(0))));
+    }
+
+    @Test
+    public void testClear() {
+        table.clear();
+
+        assertTrue(table.isEmpty());
+        for (DbTable shard : shards) {
+            assertTrue(shard.isEmpty());
+        }
+    }
+}
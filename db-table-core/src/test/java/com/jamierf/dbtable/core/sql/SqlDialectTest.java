@@ -0,0 +1,95 @@
+package com.jamierf.dbtable.core.sql;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class SqlDialectTest {
+
+    private static final String TABLE_NAME = "test";
+    private static final String VALUES_SQL = "(?, ?, ?), (?, ?, ?)";
+
+    @Test
+    public void testH2_MergesOnKey() {
+        assertEquals("MERGE INTO test (row_field, column_field, value_field) KEY (row_field, column_field) VALUES (?, ?, ?), (?, ?, ?)",
+                SqlDialect.H2.upsert(TABLE_NAME, VALUES_SQL));
+    }
+
+    @Test
+    public void testMySql_UpdatesOnDuplicateKey() {
+        assertEquals("INSERT INTO test (row_field, column_field, value_field) VALUES (?, ?, ?), (?, ?, ?) ON DUPLICATE KEY UPDATE value_field = VALUES(value_field)",
+                SqlDialect.MYSQL.upsert(TABLE_NAME, VALUES_SQL));
+    }
+
+    @Test
+    public void testPostgreSql_UpdatesOnConflict() {
+        assertEquals("INSERT INTO test (row_field, column_field, value_field) VALUES (?, ?, ?), (?, ?, ?) ON CONFLICT (row_field, column_field) DO UPDATE SET value_field = EXCLUDED.value_field",
+                SqlDialect.POSTGRESQL.upsert(TABLE_NAME, VALUES_SQL));
+        assertTrue(SqlDialect.POSTGRESQL.createTable(TABLE_NAME).contains("value_field BYTEA NOT NULL"));
+    }
+
+    @Test
+    public void testSqlite_HasNoTruncateOrRowLocks() {
+        assertEquals("DELETE FROM test", SqlDialect.SQLITE.truncate(TABLE_NAME));
+        assertEquals("SELECT 1 FROM test", SqlDialect.SQLITE.forUpdate("SELECT 1 FROM test"));
+        assertTrue(SqlDialect.SQLITE.upsert(TABLE_NAME, VALUES_SQL).endsWith("ON CONFLICT (row_field, column_field) DO UPDATE SET value_field = excluded.value_field"));
+    }
+
+    @Test
+    public void testSelectKeys_RowValueInList() {
+        assertEquals("SELECT row_field, column_field, value_field FROM test WHERE (row_field, column_field) IN ((?, ?), (?, ?))",
+                SqlDialect.POSTGRESQL.selectKeys(TABLE_NAME, 2));
+    }
+
+    @Test
+    public void testInArray_PostgreSqlBindsTypedArrays() {
+        assertEquals("row_field = ANY(CAST(:row_field AS BYTEA[]))", SqlDialect.POSTGRESQL.inArray("row_field", FieldType.BINARY, true));
+        assertEquals("column_field = ANY(CAST(:column_field AS UUID[]))", SqlDialect.POSTGRESQL.inArray("column_field", FieldType.UUID, true));
+        assertEquals("value_field = ANY(CAST(:value_field AS TEXT[]))", SqlDialect.POSTGRESQL.inArray("value_field", FieldType.VARCHAR, false));
+
+        final byte[][] binary = (byte[][]) SqlDialect.POSTGRESQL.arrayParameter(Arrays.asList(new byte[] { 1 }, new byte[] { 2 }), FieldType.BINARY);
+        assertArrayEquals(new byte[] { 2 }, binary[1]);
+        assertArrayEquals(new Long[] { 1L, 2L }, (Long[]) SqlDialect.POSTGRESQL.arrayParameter(Arrays.asList(1, 2L), FieldType.BIGINT));
+
+        final UUID uuid = UUID.randomUUID();
+        assertArrayEquals(new String[] { uuid.toString() }, (String[]) SqlDialect.POSTGRESQL.arrayParameter(Arrays.asList(uuid), FieldType.UUID));
+    }
+
+    @Test
+    public void testInArray_NullWithoutArrayParameters() {
+        assertNull(SqlDialect.MYSQL.inArray("row_field", FieldType.BINARY, true));
+        assertNull(SqlDialect.SQLITE.inArray("row_field", FieldType.BINARY, true));
+    }
+
+    @Test
+    public void testCreateTable_NativeColumnTypes() {
+        assertEquals("CREATE TABLE IF NOT EXISTS test (row_field BIGINT NOT NULL, column_field VARCHAR NOT NULL, value_field BLOB NOT NULL, PRIMARY KEY (row_field, column_field))",
+                SqlDialect.H2.createTable(TABLE_NAME, FieldType.BIGINT, FieldType.VARCHAR, FieldType.BINARY));
+        assertTrue(SqlDialect.MYSQL.createTable(TABLE_NAME, FieldType.VARCHAR, FieldType.BIGINT, FieldType.VARCHAR).contains("row_field VARCHAR(191) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin NOT NULL, column_field BIGINT NOT NULL, value_field LONGTEXT NOT NULL"));
+        assertTrue(SqlDialect.POSTGRESQL.createTable(TABLE_NAME, FieldType.UUID, FieldType.BINARY, FieldType.VARCHAR).contains("row_field UUID NOT NULL, column_field BYTEA NOT NULL, value_field TEXT NOT NULL"));
+    }
+
+    // Keys differing only in case must be distinct keys
+    @Test
+    public void testCreateTable_MySqlStringKeysAreCaseSensitive() {
+        final String sql = SqlDialect.MYSQL.createTable(TABLE_NAME, FieldType.VARCHAR, FieldType.VARCHAR, FieldType.VARCHAR);
+        assertTrue(sql.contains("row_field VARCHAR(191) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin NOT NULL"));
+        assertTrue(sql.contains("column_field VARCHAR(191) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin NOT NULL"));
+        assertTrue(sql.contains("value_field LONGTEXT NOT NULL"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testCreateTable_NoUuidTypeInMySql() {
+        SqlDialect.MYSQL.createTable(TABLE_NAME, FieldType.UUID, FieldType.BINARY, FieldType.BINARY);
+    }
+
+    @Test
+    public void testH2_ArrayParametersTypedByField() {
+        assertEquals("row_field IN (SELECT v FROM TABLE(v BIGINT = :row_field))", SqlDialect.H2.inArray("row_field", FieldType.BIGINT, true));
+        assertEquals("value_field IN (SELECT v FROM TABLE(v BLOB = :value_field))", SqlDialect.H2.inArray("value_field", FieldType.BINARY, false));
+        assertTrue(SqlDialect.H2.selectKeys(TABLE_NAME, 2, FieldType.VARCHAR, FieldType.UUID).contains("TABLE(row_field VARCHAR = :row_field, column_field UUID = :column_field)"));
+    }
+}
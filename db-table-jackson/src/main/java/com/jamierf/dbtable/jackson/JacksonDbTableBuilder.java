@@ -2,22 +2,36 @@ package com.jamierf.dbtable.jackson;
 
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
 import com.google.common.collect.Table;
-import com.jamierf.dbtable.core.DbTable;
+import com.jamierf.dbtable.core.DbTableBuilder;
+import com.jamierf.dbtable.core.mapper.result.field.FieldMapperFactory;
+import com.jamierf.dbtable.core.mapper.result.field.LongFieldMapperFactory;
+import com.jamierf.dbtable.core.mapper.result.field.StringFieldMapperFactory;
+import com.jamierf.dbtable.core.mapper.result.field.UuidFieldMapperFactory;
 import com.jamierf.dbtable.jackson.codec.ObjectMapperCodec;
-import com.yammer.collections.transforming.TransformingTable;
+import com.jamierf.dbtable.jackson.codec.ObjectMapperFieldMapperFactory;
 import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.IDBI;
+
+import java.util.UUID;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
 public final class JacksonDbTableBuilder {
 
-    private final Handle handle;
+    private final DbTableBuilder tableBuilder;
 
     private ObjectMapper mapper = new ObjectMapper();
+    private boolean afterburner = false;
 
     public JacksonDbTableBuilder(Handle handle) {
-        this.handle = checkNotNull(handle);
+        this.tableBuilder = new DbTableBuilder(handle);
+    }
+
+    public JacksonDbTableBuilder(IDBI dbi) {
+        this.tableBuilder = new DbTableBuilder(dbi);
     }
 
     public JacksonDbTableBuilder using(ObjectMapper mapper) {
@@ -29,12 +43,39 @@ public final class JacksonDbTableBuilder {
         return using(new ObjectMapper(jsonFactory));
     }
 
+    // Smile is a binary equivalent of JSON, smaller and quicker to parse. Tables must always be read in the format
+    // they were written with.
+    public JacksonDbTableBuilder usingSmile() {
+        return using(new SmileFactory());
+    }
+
+    // Generates bytecode accessors in place of reflection. The mapper in use is copied rather than modified.
+    public JacksonDbTableBuilder withAfterburner() {
+        this.afterburner = true;
+        return this;
+    }
+
+    // Long, String and UUID keys are stored in native columns, so they sort and index as themselves. Other keys,
+    // and all values, are serialized by the mapper.
     public <R, C, V> Table<R, C, V> build(String tableName, Class<R> rowType, Class<C> columnType, Class<V> valueType) {
-        final ObjectMapperCodec codec = new ObjectMapperCodec(mapper);
-        return TransformingTable.create(new DbTable(tableName, handle),
-                codec.<R>newEncoder(), codec.newDecoder(rowType),
-                codec.<C>newEncoder(), codec.newDecoder(columnType),
-                codec.<V>newEncoder(), codec.newDecoder(valueType)
-        );
+        final ObjectMapperCodec codec = new ObjectMapperCodec(afterburner ? mapper.copy().registerModule(new AfterburnerModule()) : mapper);
+        return tableBuilder.build(tableName, keyMapperFactory(codec, rowType), keyMapperFactory(codec, columnType), new ObjectMapperFieldMapperFactory<>(codec, valueType));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> FieldMapperFactory<T> keyMapperFactory(ObjectMapperCodec codec, Class<T> type) {
+        if (type == Long.class) {
+            return (FieldMapperFactory<T>) new LongFieldMapperFactory();
+        }
+
+        if (type == String.class) {
+            return (FieldMapperFactory<T>) new StringFieldMapperFactory();
+        }
+
+        if (type == UUID.class) {
+            return (FieldMapperFactory<T>) new UuidFieldMapperFactory();
+        }
+
+        return new ObjectMapperFieldMapperFactory<>(codec, type);
     }
 }
@@ -2,8 +2,13 @@ package com.jamierf.dbtable.jackson.codec;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.google.common.base.Function;
 import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
@@ -12,8 +17,28 @@ public class ObjectMapperCodec {
 
     private final ObjectMapper mapper;
 
-    public ObjectMapperCodec(ObjectMapper mapper) {
+    // Readers and writers bound to a type resolve their root (de)serializer once, rather than on every call.
+    // Writers are bound to the runtime class of each value, so subtypes keep the properties only they declare.
+    private final LoadingCache<Class<?>, ObjectReader> readers;
+    private final LoadingCache<Class<?>, ObjectWriter> writers;
+
+    public ObjectMapperCodec(final ObjectMapper mapper) {
         this.mapper = mapper;
+
+        readers = CacheBuilder.newBuilder()
+                .build(new CacheLoader<Class<?>, ObjectReader>() {
+                    @Override
+                    public ObjectReader load(Class<?> type) {
+                        return mapper.reader(type);
+                    }
+                });
+        writers = CacheBuilder.newBuilder()
+                .build(new CacheLoader<Class<?>, ObjectWriter>() {
+                    @Override
+                    public ObjectWriter load(Class<?> type) {
+                        return mapper.writerWithType(type);
+                    }
+                });
     }
 
     public <T> Function<T, byte[]> newEncoder() {
@@ -22,7 +47,8 @@ public class ObjectMapperCodec {
             @Override
             public byte[] apply(@Nullable T input) {
                 try {
-                    return mapper.writeValueAsBytes(input);
+                    final ObjectWriter writer = input == null ? mapper.writer() : writers.getUnchecked(input.getClass());
+                    return writer.writeValueAsBytes(input);
                 } catch (JsonProcessingException e) {
                     throw Throwables.propagate(e);
                 }
@@ -30,13 +56,14 @@ public class ObjectMapperCodec {
         };
     }
 
-    public <T> Function<byte[], T> newDecoder(final Class<T> type) {
+    public <T> Function<byte[], T> newDecoder(Class<T> type) {
+        final ObjectReader reader = readers.getUnchecked(type);
         return new Function<byte[], T>() {
             @Nullable
             @Override
             public T apply(@Nullable byte[] input) {
                 try {
-                    return mapper.readValue(input, type);
+                    return reader.readValue(input);
                 } catch (IOException e) {
                     throw Throwables.propagate(e);
                 }
@@ -0,0 +1,38 @@
+package com.jamierf.dbtable.jackson.codec;
+
+import com.google.common.base.Function;
+import com.jamierf.dbtable.core.mapper.result.field.FieldMapper;
+import com.jamierf.dbtable.core.sql.FieldType;
+import org.skife.jdbi.v2.StatementContext;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+public class ObjectMapperFieldMapper<T> extends FieldMapper<T> {
+
+    private final Function<T, byte[]> encoder;
+    private final Function<byte[], T> decoder;
+
+    public ObjectMapperFieldMapper(String fieldName, ObjectMapperCodec codec, Class<T> type) {
+        super (fieldName);
+
+        encoder = codec.newEncoder();
+        decoder = codec.newDecoder(type);
+    }
+
+    @Override
+    public T map(int index, ResultSet r, StatementContext ctx) throws SQLException {
+        final byte[] bytes = r.getBytes(getFieldName());
+        return bytes == null ? null : decoder.apply(bytes);
+    }
+
+    @Override
+    public Object encode(T value) {
+        return value == null ? null : encoder.apply(value);
+    }
+
+    @Override
+    public FieldType getFieldType() {
+        return FieldType.BINARY;
+    }
+}
@@ -0,0 +1,19 @@
+package com.jamierf.dbtable.jackson.codec;
+
+import com.jamierf.dbtable.core.mapper.result.field.FieldMapperFactory;
+
+public class ObjectMapperFieldMapperFactory<T> implements FieldMapperFactory<T> {
+
+    private final ObjectMapperCodec codec;
+    private final Class<T> type;
+
+    public ObjectMapperFieldMapperFactory(ObjectMapperCodec codec, Class<T> type) {
+        this.codec = codec;
+        this.type = type;
+    }
+
+    @Override
+    public ObjectMapperFieldMapper<T> build(String fieldName) {
+        return new ObjectMapperFieldMapper<>(fieldName, codec, type);
+    }
+}
@@ -1,19 +1,28 @@
 package com.jamierf.dbtable.jackson;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.fasterxml.jackson.datatype.guava.GuavaModule;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Table;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.skife.jdbi.v2.DBI;
 import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.util.ByteArrayMapper;
+import org.skife.jdbi.v2.util.LongMapper;
+import org.skife.jdbi.v2.util.StringMapper;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Date;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 
@@ -44,6 +53,12 @@ public class JacksonDbTableTest {
                 .build(tableName, String.class, Integer.class, TestValue.class);
     }
 
+    private byte[] storedValue(String tableName) {
+        return handle.createQuery(String.format("SELECT value_field FROM %s", tableName))
+                .map(ByteArrayMapper.FIRST)
+                .first();
+    }
+
     private void dropTable(String name) {
         handle.execute(String.format("DROP TABLE %s", name));
     }
@@ -65,4 +80,78 @@ public class JacksonDbTableTest {
         table.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
         assertEquals(TEST_VALUE, table.get(TEST_ROW, TEST_COLUMN));
     }
+
+    @Test
+    public void testDefaultFormat_StoresJson() {
+        final Table<String, Integer, String> json = new JacksonDbTableBuilder(handle).build("json", String.class, Integer.class, String.class);
+        json.put(TEST_ROW, TEST_COLUMN, "value");
+
+        assertEquals("value", json.get(TEST_ROW, TEST_COLUMN));
+        assertArrayEquals("\"value\"".getBytes(StandardCharsets.UTF_8), storedValue("json"));
+        dropTable("json");
+    }
+
+    @Test
+    public void testUsingSmile_StoresSmile() {
+        final Table<String, Integer, String> smile = new JacksonDbTableBuilder(handle).usingSmile().build("smile", String.class, Integer.class, String.class);
+        smile.put(TEST_ROW, TEST_COLUMN, "value");
+
+        assertEquals("value", smile.get(TEST_ROW, TEST_COLUMN));
+        // Every Smile document starts with the ":)\n" header
+        assertArrayEquals(":)\n".getBytes(StandardCharsets.UTF_8), Arrays.copyOf(storedValue("smile"), 3));
+        dropTable("smile");
+    }
+
+    @Test
+    public void testWithAfterburner_ReturnsExpectedValue() {
+        final Table<String, Integer, TestValue> afterburner = new JacksonDbTableBuilder(handle)
+                .using(OBJECT_MAPPER)
+                .withAfterburner()
+                .build("afterburner", String.class, Integer.class, TestValue.class);
+        afterburner.put(TEST_ROW, TEST_COLUMN, TEST_VALUE);
+
+        assertEquals(TEST_VALUE, afterburner.get(TEST_ROW, TEST_COLUMN));
+        assertEquals(TEST_VALUE, afterburner.row(TEST_ROW).get(TEST_COLUMN));
+        dropTable("afterburner");
+    }
+
+    @Test
+    public void testNativeKeys_StoredInNativeColumns() {
+        final Table<Long, String, TestValue> typed = new JacksonDbTableBuilder(handle)
+                .using(OBJECT_MAPPER)
+                .build("typed", Long.class, String.class, TestValue.class);
+        typed.put(42L, TEST_ROW, TEST_VALUE);
+
+        assertEquals(TEST_VALUE, typed.get(42L, TEST_ROW));
+        assertEquals(TEST_VALUE, typed.row(42L).get(TEST_ROW));
+        assertEquals(ImmutableSet.of(42L), typed.column(TEST_ROW).keySet());
+        assertEquals(Long.valueOf(42L), handle.createQuery("SELECT row_field FROM typed").map(LongMapper.FIRST).first());
+        assertEquals(TEST_ROW, handle.createQuery("SELECT column_field FROM typed").map(StringMapper.FIRST).first());
+        dropTable("typed");
+    }
+
+    @JsonTypeInfo(use = JsonTypeInfo.Id.CLASS)
+    public static class BaseValue {
+        @JsonProperty
+        public String name;
+    }
+
+    public static class DerivedValue extends BaseValue {
+        @JsonProperty
+        public String extra;
+    }
+
+    @Test
+    public void testSubtypeValues_KeepSubtypeProperties() {
+        final Table<String, Integer, BaseValue> subtyped = new JacksonDbTableBuilder(handle).build("subtyped", String.class, Integer.class, BaseValue.class);
+        final DerivedValue value = new DerivedValue();
+        value.name = "name";
+        value.extra = "extra";
+        subtyped.put(TEST_ROW, TEST_COLUMN, value);
+
+        final DerivedValue read = (DerivedValue) subtyped.get(TEST_ROW, TEST_COLUMN);
+        assertEquals("name", read.name);
+        assertEquals("extra", read.extra);
+        dropTable("subtyped");
+    }
 }